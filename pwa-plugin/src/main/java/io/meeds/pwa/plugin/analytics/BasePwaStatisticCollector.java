@@ -20,28 +20,31 @@ package io.meeds.pwa.plugin.analytics;
 
 import org.springframework.beans.factory.annotation.Autowired;
 
-import org.exoplatform.social.core.manager.IdentityManager;
-
 import io.meeds.analytics.model.StatisticData;
 import io.meeds.pwa.model.UserPushSubscription;
 
 public abstract class BasePwaStatisticCollector {
 
   @Autowired
-  private IdentityManager identityManager;
+  private PwaStatisticBuffer pwaStatisticBuffer;
 
-  protected StatisticData addSubscriptionDetails(UserPushSubscription subscription, String username) {
+  protected StatisticData addSubscriptionDetails(UserPushSubscription subscription) {
     StatisticData statisticData = new StatisticData();
     statisticData.setModule("PWA");
-    statisticData.setUserId(Long.parseLong(getIdentityId(username)));
     statisticData.addParameter("pwaDeviceType", subscription.getDeviceType());
     statisticData.addParameter("pwaSubscriptionId", subscription.getId());
     statisticData.addParameter("pwaSubscriptionSite", getSubscriptionDomain(subscription.getEndpoint()));
     return statisticData;
   }
 
-  private String getIdentityId(String username) {
-    return identityManager.getOrCreateUserIdentity(username).getId();
+  /**
+   * Buffers the statistic, the user identity is set when flushed
+   *
+   * @param statisticData {@link StatisticData}
+   * @param username user name
+   */
+  protected void addStatisticData(StatisticData statisticData, String username) {
+    pwaStatisticBuffer.add(statisticData, username);
   }
 
   private String getSubscriptionDomain(String endpoint) {
@@ -18,7 +18,6 @@
  */
 package io.meeds.pwa.plugin.analytics;
 
-import static io.meeds.analytics.utils.AnalyticsUtils.addStatisticData;
 import static io.meeds.pwa.service.PwaNotificationService.EVENT_ACTION_PARAM_NAME;
 import static io.meeds.pwa.service.PwaNotificationService.EVENT_DURATION_PARAM_NAME;
 import static io.meeds.pwa.service.PwaNotificationService.EVENT_ERROR_PARAM_NAME;
@@ -36,13 +35,12 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import org.exoplatform.services.listener.Asynchronous;
 import org.exoplatform.services.listener.Event;
 import org.exoplatform.services.listener.ListenerBase;
 import org.exoplatform.services.listener.ListenerService;
@@ -55,7 +53,11 @@ import io.meeds.pwa.model.UserPushSubscription;
 
 import jakarta.annotation.PostConstruct;
 
-@Asynchronous
+/**
+ * Collects the Push messages sending statistics. The listener is triggered
+ * synchronously since the statistics are only buffered, which avoids
+ * submitting an asynchronous task for each sent Push message.
+ */
 @Component
 public class PwaNotificationListener extends BasePwaStatisticCollector implements ListenerBase<String, Map<String, Object>> {
 
@@ -69,6 +71,13 @@ public class PwaNotificationListener extends BasePwaStatisticCollector implement
   @Autowired
   private ListenerService           listenerService;
 
+  /**
+   * Maximum size of the stored error messages, since the Push Services can
+   * respond with whole HTML pages
+   */
+  @Value("${pwa.analytics.errorMessage.maxLength:1000}")
+  private int                       errorMessageMaxLength;
+
   @PostConstruct
   public void init() {
     EVENT_NAMES.forEach(e -> listenerService.addListener(e, this));
@@ -81,7 +90,7 @@ public class PwaNotificationListener extends BasePwaStatisticCollector implement
     Map<String, Object> params = event.getData();
 
     UserPushSubscription subscription = (UserPushSubscription) params.get(EVENT_SUBSCRIPTION_PARAM_NAME);
-    StatisticData statisticData = addSubscriptionDetails(subscription, username);
+    StatisticData statisticData = addSubscriptionDetails(subscription);
     statisticData.setSubModule("pwaNotification");
     statisticData.setOperation(getOperation(eventName));
     statisticData.setStatus(EVENT_NOTIFICATION_SENT.equals(eventName) ? StatisticStatus.OK : StatisticStatus.KO);
@@ -93,7 +102,7 @@ public class PwaNotificationListener extends BasePwaStatisticCollector implement
     addHttpResponseCode(statisticData, httpResponse);
     addNotificationAction(statisticData, (String) params.get(EVENT_ACTION_PARAM_NAME));
     addNotificationId(statisticData, (Long) params.get(EVENT_NOTIFICATION_ID_PARAM_NAME));
-    addStatisticData(statisticData);
+    addStatisticData(statisticData, username);
   }
 
   private void addHttpResponseCode(StatisticData statisticData, HttpResponse httpResponse) {
@@ -119,14 +128,14 @@ public class PwaNotificationListener extends BasePwaStatisticCollector implement
       errorMessage = getErrorMessage(httpResponse);
     }
     if (StringUtils.isNotBlank(errorMessage)) {
-      statisticData.addParameter("pwaErrorMessage", errorMessage);
+      statisticData.addParameter("pwaErrorMessage", StringUtils.truncate(errorMessage, errorMessageMaxLength));
     }
   }
 
   private String getErrorMessage(HttpResponse httpResponse) {
     if (httpResponse.getEntity() != null) {
       try (InputStream inputStream = httpResponse.getEntity().getContent()) {
-        return IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+        return new String(inputStream.readNBytes(errorMessageMaxLength), StandardCharsets.UTF_8);
       } catch (Exception e) {
         LOG.warn("Error while retrieving HTTP Response content", e);
       }
@@ -0,0 +1,190 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.plugin.analytics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+import io.meeds.analytics.model.StatisticData;
+import io.meeds.analytics.model.StatisticData.StatisticStatus;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Buffers the PWA statistics in a bounded queue, which is flushed by a
+ * dedicated thread each flush interval or as soon as it holds a batch of
+ * statistics. The batches are written by {@link PwaStatisticWriter}, which
+ * resolves the user identities, so that adding a statistic never accesses the
+ * storage. When the buffer fills up, the successful operations statistics are
+ * sampled, then the statistics are dropped when it's full, rather than
+ * blocking the Push Notifications sending.
+ */
+@Component
+public class PwaStatisticBuffer {
+
+  public static final String              SAMPLING_RATE_PARAM_NAME = "pwaSamplingRate";
+
+  private static final Log                LOG                      = ExoLogger.getLogger(PwaStatisticBuffer.class);
+
+  @Autowired
+  private PwaStatisticWriter              pwaStatisticWriter;
+
+  @Value("${pwa.analytics.bufferSize:10000}")
+  private int                             bufferSize;
+
+  @Value("${pwa.analytics.batchSize:500}")
+  private int                             batchSize;
+
+  /**
+   * Interval, in milliseconds, of flushing the buffered statistics
+   */
+  @Value("${pwa.analytics.flushInterval:5000}")
+  private long                            flushInterval;
+
+  /**
+   * Ratio of the buffer capacity beyond which the successful operations
+   * statistics are sampled
+   */
+  @Value("${pwa.analytics.sampling.threshold:0.8}")
+  private double                          samplingThreshold;
+
+  /**
+   * One successful operation statistic is kept out of this number when
+   * sampling
+   */
+  @Value("${pwa.analytics.sampling.rate:10}")
+  private int                             samplingRate;
+
+  private BlockingQueue<PendingStatistic> buffer;
+
+  private ScheduledExecutorService        scheduler;
+
+  private AtomicBoolean                   flushScheduled           = new AtomicBoolean();
+
+  private AtomicLong                      samplingCounter          = new AtomicLong();
+
+  private LongAdder                       sampledStatistics        = new LongAdder();
+
+  private LongAdder                       droppedStatistics        = new LongAdder();
+
+  @PostConstruct
+  public void init() {
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("pwa.analytics.bufferSize must be positive: " + bufferSize);
+    }
+    if (batchSize <= 0 || batchSize > bufferSize) {
+      throw new IllegalArgumentException("pwa.analytics.batchSize must be positive and not exceed the buffer size: " +
+          batchSize);
+    }
+    if (samplingRate <= 0) {
+      throw new IllegalArgumentException("pwa.analytics.sampling.rate must be positive: " + samplingRate);
+    }
+    if (flushInterval <= 0) {
+      throw new IllegalArgumentException("pwa.analytics.flushInterval must be positive: " + flushInterval);
+    }
+    buffer = new ArrayBlockingQueue<>(bufferSize);
+    scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("PWA-Analytics-%d")
+                                                                                     .build());
+    scheduler.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void destroy() {
+    scheduler.shutdownNow();
+    flush();
+  }
+
+  /**
+   * Adds a statistic to the buffer without blocking
+   *
+   * @param statisticData {@link StatisticData} to add
+   * @param username user name which identity is set on statistic at flush
+   *          time
+   * @return true if the statistic was buffered, else false if it was sampled
+   *         out or dropped
+   */
+  public boolean add(StatisticData statisticData, String username) {
+    if (statisticData.getStatus() == StatisticStatus.OK && buffer.size() >= bufferSize * samplingThreshold) {
+      if (samplingCounter.incrementAndGet() % samplingRate != 0) {
+        sampledStatistics.increment();
+        return false;
+      }
+      statisticData.addParameter(SAMPLING_RATE_PARAM_NAME, samplingRate);
+    }
+    if (!buffer.offer(new PendingStatistic(statisticData, username))) {
+      droppedStatistics.increment();
+      return false;
+    }
+    if (buffer.size() >= batchSize && flushScheduled.compareAndSet(false, true)) {
+      try {
+        scheduler.execute(this::flush);
+      } catch (Exception e) {
+        // The buffer is flushed when stopping
+        flushScheduled.set(false);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Flushes all the buffered statistics by batches, each batch is written in
+   * its own transaction
+   */
+  public void flush() {
+    flushScheduled.set(false);
+    List<PendingStatistic> statistics = new ArrayList<>();
+    while (buffer.drainTo(statistics, batchSize) > 0) {
+      try {
+        pwaStatisticWriter.write(statistics);
+      } catch (Exception e) {
+        LOG.warn("Error while writing a batch of {} PWA statistics", statistics.size(), e);
+      }
+      statistics = new ArrayList<>();
+    }
+    long sampled = sampledStatistics.sumThenReset();
+    long dropped = droppedStatistics.sumThenReset();
+    if (sampled > 0 || dropped > 0) {
+      LOG.warn("PWA statistics buffer overloaded, {} statistics sampled out and {} dropped since last flush",
+               sampled,
+               dropped);
+    }
+  }
+
+  record PendingStatistic(StatisticData statisticData, String username) {
+  }
+
+}
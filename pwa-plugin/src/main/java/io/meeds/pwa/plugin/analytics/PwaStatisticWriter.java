@@ -0,0 +1,102 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.plugin.analytics;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.manager.IdentityManager;
+
+import io.meeds.analytics.utils.AnalyticsUtils;
+import io.meeds.common.ContainerTransactional;
+import io.meeds.pwa.plugin.analytics.PwaStatisticBuffer.PendingStatistic;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Adds the batches of statistics flushed by {@link PwaStatisticBuffer}. It's
+ * a distinct bean so that the flushing thread calls it through its proxy,
+ * which opens the container transaction.
+ */
+@Component
+public class PwaStatisticWriter {
+
+  private static final Log      LOG = ExoLogger.getLogger(PwaStatisticWriter.class);
+
+  @Autowired
+  private IdentityManager       identityManager;
+
+  @Value("${pwa.analytics.identityCache.maxSize:10000}")
+  private int                   identityCacheMaxSize;
+
+  private Cache<String, String> identityIds;
+
+  @PostConstruct
+  public void init() {
+    identityIds = CacheBuilder.newBuilder()
+                              .maximumSize(identityCacheMaxSize)
+                              .expireAfterAccess(1, TimeUnit.HOURS)
+                              .build();
+  }
+
+  /**
+   * Adds a batch of statistics after setting their user identity
+   *
+   * @param statistics buffered statistics
+   */
+  @ContainerTransactional
+  public void write(List<PendingStatistic> statistics) {
+    statistics.forEach(this::addStatisticData);
+  }
+
+  private void addStatisticData(PendingStatistic statistic) {
+    try {
+      String identityId = getIdentityId(statistic.username());
+      if (identityId != null) {
+        statistic.statisticData().setUserId(Long.parseLong(identityId));
+      }
+      AnalyticsUtils.addStatisticData(statistic.statisticData());
+    } catch (Exception e) {
+      LOG.warn("Error while adding PWA statistic {}", statistic.statisticData().getOperation(), e);
+    }
+  }
+
+  private String getIdentityId(String username) {
+    String identityId = identityIds.getIfPresent(username);
+    if (identityId == null) {
+      Identity identity = identityManager.getOrCreateUserIdentity(username);
+      if (identity != null) {
+        identityId = identity.getId();
+        identityIds.put(username, identityId);
+      }
+    }
+    return identityId;
+  }
+
+}
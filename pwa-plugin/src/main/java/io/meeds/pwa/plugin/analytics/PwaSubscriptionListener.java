@@ -18,7 +18,6 @@
  */
 package io.meeds.pwa.plugin.analytics;
 
-import static io.meeds.analytics.utils.AnalyticsUtils.addStatisticData;
 import static io.meeds.pwa.service.PwaSubscriptionService.PWA_INSTALLED;
 import static io.meeds.pwa.service.PwaSubscriptionService.PWA_UNINSTALLED;
 
@@ -59,11 +58,11 @@ public class PwaSubscriptionListener extends BasePwaStatisticCollector implement
   public void onEvent(Event<String, UserPushSubscription> event) throws Exception {
     String username = event.getSource();
     UserPushSubscription subscription = event.getData();
-    StatisticData statisticData = addSubscriptionDetails(subscription, username);
+    StatisticData statisticData = addSubscriptionDetails(subscription);
     statisticData.setSubModule("pwaInstallation");
     statisticData.setOperation(getOperation(event.getEventName()));
     statisticData.setStatus(StatisticStatus.OK);
-    addStatisticData(statisticData);
+    addStatisticData(statisticData, username);
   }
 
   private String getOperation(String eventName) {
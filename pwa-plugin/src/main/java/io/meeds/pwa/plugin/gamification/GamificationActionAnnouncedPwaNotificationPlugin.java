@@ -18,10 +18,9 @@
  */
 package io.meeds.pwa.plugin.gamification;
 
-import static io.meeds.gamification.plugin.RuleTranslationPlugin.RULE_OBJECT_TYPE;
-import static io.meeds.gamification.plugin.RuleTranslationPlugin.RULE_TITLE_FIELD_NAME;
+import static io.meeds.pwa.plugin.gamification.GamificationPwaNotificationUtils.getRealization;
+import static io.meeds.pwa.plugin.gamification.GamificationPwaNotificationUtils.getRuleTitle;
 
-import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
@@ -65,18 +64,12 @@ public class GamificationActionAnnouncedPwaNotificationPlugin extends BaseActivi
   public PwaNotificationMessage process(NotificationInfo notification, LocaleConfig localeConfig) {
     PwaNotificationMessage notificationMessage = new PwaNotificationMessage();
     long realizationId = Long.parseLong(notification.getValueOwnerParameter(Utils.ANNOUNCEMENT_ID_NOTIFICATION_PARAM));
-    RealizationDTO realization = realizationService.getRealizationById(realizationId);
-    Identity earner = identityManager.getIdentity(realization.getEarnerId());
+    RealizationDTO realization = getRealization(realizationService, realizationId);
+    Identity earner = getIdentity(realization.getEarnerId());
     notificationMessage.setTitle(resourceBundleService.getSharedString(TITLE_LABEL_KEY, localeConfig.getLocale())
                                                       .replace("{0}", earner.getProfile().getFullName()));
 
-    String ruleTitle = translationService.getTranslationLabel(RULE_OBJECT_TYPE,
-                                                              realization.getRuleId(),
-                                                              RULE_TITLE_FIELD_NAME,
-                                                              localeConfig.getLocale());
-    if (StringUtils.isBlank(ruleTitle)) {
-      ruleTitle = ruleService.findRuleById(realization.getRuleId()).getTitle();
-    }
+    String ruleTitle = getRuleTitle(translationService, ruleService, realization.getRuleId(), localeConfig.getLocale());
     notificationMessage.setBody(ruleTitle);
     String activityId = notification.getValueOwnerParameter(SocialNotificationUtils.ACTIVITY_ID.getKey());
     notificationMessage.setUrl(permanentLinkService.getPermanentLink(new PermanentLinkObject(ActivityPermanentLinkPlugin.OBJECT_TYPE,
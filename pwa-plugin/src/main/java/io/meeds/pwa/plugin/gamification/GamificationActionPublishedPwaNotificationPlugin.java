@@ -18,10 +18,8 @@
  */
 package io.meeds.pwa.plugin.gamification;
 
-import static io.meeds.gamification.plugin.RuleTranslationPlugin.RULE_OBJECT_TYPE;
-import static io.meeds.gamification.plugin.RuleTranslationPlugin.RULE_TITLE_FIELD_NAME;
+import static io.meeds.pwa.plugin.gamification.GamificationPwaNotificationUtils.getRuleTitle;
 
-import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
@@ -67,13 +65,7 @@ public class GamificationActionPublishedPwaNotificationPlugin implements PwaNoti
     PwaNotificationMessage notificationMessage = new PwaNotificationMessage();
     notificationMessage.setTitle(resourceBundleService.getSharedString(TITLE_LABEL_KEY, localeConfig.getLocale()));
     long ruleId = Long.parseLong(notification.getValueOwnerParameter(Utils.RULE_ID_NOTIFICATION_PARAM));
-    String ruleTitle = translationService.getTranslationLabel(RULE_OBJECT_TYPE,
-                                                              ruleId,
-                                                              RULE_TITLE_FIELD_NAME,
-                                                              localeConfig.getLocale());
-    if (StringUtils.isBlank(ruleTitle)) {
-      ruleTitle = ruleService.findRuleById(ruleId).getTitle();
-    }
+    String ruleTitle = getRuleTitle(translationService, ruleService, ruleId, localeConfig.getLocale());
     notificationMessage.setBody(ruleTitle);
     String activityId = notification.getValueOwnerParameter(SocialNotificationUtils.ACTIVITY_ID.getKey());
     notificationMessage.setUrl(permanentLinkService.getPermanentLink(new PermanentLinkObject(ActivityPermanentLinkPlugin.OBJECT_TYPE,
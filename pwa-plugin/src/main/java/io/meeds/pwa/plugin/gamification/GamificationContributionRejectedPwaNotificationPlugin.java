@@ -18,10 +18,9 @@
  */
 package io.meeds.pwa.plugin.gamification;
 
-import static io.meeds.gamification.plugin.RuleTranslationPlugin.RULE_OBJECT_TYPE;
-import static io.meeds.gamification.plugin.RuleTranslationPlugin.RULE_TITLE_FIELD_NAME;
+import static io.meeds.pwa.plugin.gamification.GamificationPwaNotificationUtils.getRealization;
+import static io.meeds.pwa.plugin.gamification.GamificationPwaNotificationUtils.getRuleTitle;
 
-import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
@@ -72,14 +71,8 @@ public class GamificationContributionRejectedPwaNotificationPlugin implements Pw
     PwaNotificationMessage notificationMessage = new PwaNotificationMessage();
     notificationMessage.setTitle(resourceBundleService.getSharedString(TITLE_LABEL_KEY, localeConfig.getLocale()));
     long realizationId = Long.parseLong(notification.getValueOwnerParameter(Utils.REALIZATION_ID_NOTIFICATION_PARAM));
-    RealizationDTO realization = realizationService.getRealizationById(realizationId);
-    String ruleTitle = translationService.getTranslationLabel(RULE_OBJECT_TYPE,
-                                                              realization.getRuleId(),
-                                                              RULE_TITLE_FIELD_NAME,
-                                                              localeConfig.getLocale());
-    if (StringUtils.isBlank(ruleTitle)) {
-      ruleTitle = ruleService.findRuleById(realization.getRuleId()).getTitle();
-    }
+    RealizationDTO realization = getRealization(realizationService, realizationId);
+    String ruleTitle = getRuleTitle(translationService, ruleService, realization.getRuleId(), localeConfig.getLocale());
     notificationMessage.setBody(ruleTitle);
     String activityId = notification.getValueOwnerParameter(SocialNotificationUtils.ACTIVITY_ID.getKey());
     notificationMessage.setUrl(permanentLinkService.getPermanentLink(new PermanentLinkObject(ActivityPermanentLinkPlugin.OBJECT_TYPE,
@@ -0,0 +1,73 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.plugin.gamification;
+
+import static io.meeds.gamification.plugin.RuleTranslationPlugin.RULE_OBJECT_TYPE;
+import static io.meeds.gamification.plugin.RuleTranslationPlugin.RULE_TITLE_FIELD_NAME;
+
+import java.util.Locale;
+
+import org.apache.commons.lang3.StringUtils;
+
+import io.meeds.gamification.model.RealizationDTO;
+import io.meeds.gamification.model.RuleDTO;
+import io.meeds.gamification.service.RealizationService;
+import io.meeds.gamification.service.RuleService;
+import io.meeds.pwa.plugin.PwaNotificationRenderContext;
+import io.meeds.social.translation.service.TranslationService;
+
+/**
+ * Gamification entities retrieval shared by gamification plugins, memoized in
+ * the current {@link PwaNotificationRenderContext}, so that the realizations
+ * and rules shared by a batch of notifications are retrieved once.
+ */
+public class GamificationPwaNotificationUtils {
+
+  private GamificationPwaNotificationUtils() {
+    // Utils class, thus private constructor
+  }
+
+  public static RealizationDTO getRealization(RealizationService realizationService, long realizationId) {
+    return PwaNotificationRenderContext.get("realization",
+                                            String.valueOf(realizationId),
+                                            id -> realizationService.getRealizationById(Long.parseLong(id)));
+  }
+
+  public static String getRuleTitle(TranslationService translationService,
+                                    RuleService ruleService,
+                                    long ruleId,
+                                    Locale locale) {
+    return PwaNotificationRenderContext.get("ruleTitle",
+                                            ruleId + "-" + locale.toLanguageTag(),
+                                            key -> {
+                                              String ruleTitle = translationService.getTranslationLabel(RULE_OBJECT_TYPE,
+                                                                                                        ruleId,
+                                                                                                        RULE_TITLE_FIELD_NAME,
+                                                                                                        locale);
+                                              if (StringUtils.isBlank(ruleTitle)) {
+                                                RuleDTO rule = PwaNotificationRenderContext.get("rule",
+                                                                                                String.valueOf(ruleId),
+                                                                                                id -> ruleService.findRuleById(ruleId));
+                                                ruleTitle = rule.getTitle();
+                                              }
+                                              return ruleTitle;
+                                            });
+  }
+
+}
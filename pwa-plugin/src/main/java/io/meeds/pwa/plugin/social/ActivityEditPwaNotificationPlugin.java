@@ -37,6 +37,12 @@ public class ActivityEditPwaNotificationPlugin extends BaseActivityPwaNotificati
     return "EditActivityPlugin";
   }
 
+  @Override
+  public String getTopic(NotificationInfo notification) {
+    String postId = getPostId(notification);
+    return postId == null ? null : getId() + "-" + postId;
+  }
+
   @Override
   public PwaNotificationMessage process(NotificationInfo notification, LocaleConfig localeConfig) {
     PwaNotificationMessage notificationMessage = new PwaNotificationMessage();
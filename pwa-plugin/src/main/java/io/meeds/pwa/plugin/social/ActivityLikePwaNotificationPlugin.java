@@ -25,6 +25,7 @@ import org.exoplatform.services.resources.LocaleConfig;
 
 import io.meeds.portal.permlink.model.PermanentLinkObject;
 import io.meeds.pwa.model.PwaNotificationMessage;
+import io.meeds.pwa.model.PwaNotificationPriority;
 import io.meeds.social.permlink.plugin.ActivityPermanentLinkPlugin;
 
 @Component
@@ -37,6 +38,11 @@ public class ActivityLikePwaNotificationPlugin extends BaseActivityPwaNotificati
     return "LikePlugin";
   }
 
+  @Override
+  public PwaNotificationPriority getPriority() {
+    return PwaNotificationPriority.LOW;
+  }
+
   @Override
   public PwaNotificationMessage process(NotificationInfo notification, LocaleConfig localeConfig) {
     PwaNotificationMessage notificationMessage = new PwaNotificationMessage();
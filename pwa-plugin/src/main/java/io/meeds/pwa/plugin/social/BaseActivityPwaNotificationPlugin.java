@@ -41,6 +41,7 @@ import io.meeds.portal.permlink.service.PermanentLinkService;
 import io.meeds.pwa.model.PwaNotificationAction;
 import io.meeds.pwa.model.PwaNotificationMessage;
 import io.meeds.pwa.plugin.PwaNotificationPlugin;
+import io.meeds.pwa.plugin.PwaNotificationRenderContext;
 
 import lombok.Getter;
 
@@ -81,10 +82,9 @@ public abstract class BaseActivityPwaNotificationPlugin implements PwaNotificati
     if (CollectionUtils.isEmpty(notificationMessage.getActions())
         || notificationActions.stream()
                               .noneMatch(a -> StringUtils.equals(a.getAction(), PWA_NOTIFICATION_MARK_LIKE_ACTION))) {
-      String activityId = getPostId(notification);
-      ExoSocialActivity activity = activityManager.getActivity(activityId);
+      ExoSocialActivity activity = getActivity(getPostId(notification));
       String username = notification.getTo();
-      String identityId = StringUtils.isBlank(username) ? null : identityManager.getOrCreateUserIdentity(username).getId();
+      String identityId = StringUtils.isBlank(username) ? null : getUserIdentity(username).getId();
       if (StringUtils.isNotBlank(identityId)
           && !StringUtils.equals(activity.getPosterId(), identityId)
           && (activity.getLikeIdentityIds() == null
@@ -106,7 +106,7 @@ public abstract class BaseActivityPwaNotificationPlugin implements PwaNotificati
   }
 
   public String getPostContent(NotificationInfo notification) {
-    ExoSocialActivity post = getActivityManager().getActivity(getPostId(notification));
+    ExoSocialActivity post = getActivity(getPostId(notification));
     return post == null ? "" : getActivityContent(post);
   }
 
@@ -121,24 +121,34 @@ public abstract class BaseActivityPwaNotificationPlugin implements PwaNotificati
   }
 
   private String getActivityContent(ExoSocialActivity activity) {
-    String html = getActivityManager().getActivityTitle(activity);
-    return htmlToText(html);
+    return PwaNotificationRenderContext.get("activityContent",
+                                            activity.getId(),
+                                            id -> htmlToText(getActivityManager().getActivityTitle(activity)));
   }
 
   public ExoSocialActivity getActivity(NotificationInfo notification) {
     String activityId = notification.getValueOwnerParameter(SocialNotificationUtils.ACTIVITY_ID.getKey());
-    ExoSocialActivity activity = getActivityManager().getActivity(activityId);
+    ExoSocialActivity activity = getActivity(activityId);
     if (activity.isComment()) {
       // we need to build the content of activity by type, so if it's a comment,
       // we will get the parent activity
-      activity = getActivityManager().getParentActivity(activity);
+      activity = getActivity(activity.getParentId());
     }
     return activity;
   }
 
   public ExoSocialActivity getComment(NotificationInfo notification) {
     String commentId = notification.getValueOwnerParameter(SocialNotificationUtils.COMMENT_ID.getKey());
-    return commentId == null ? null : getActivityManager().getActivity(commentId);
+    return commentId == null ? null : getActivity(commentId);
+  }
+
+  /**
+   * @param activityId activity or comment identifier
+   * @return {@link ExoSocialActivity}, memoized in the current
+   *         {@link PwaNotificationRenderContext}
+   */
+  public ExoSocialActivity getActivity(String activityId) {
+    return PwaNotificationRenderContext.get("activity", activityId, getActivityManager()::getActivity);
   }
 
   protected String getSender(NotificationInfo notification) {
@@ -179,13 +189,13 @@ public abstract class BaseActivityPwaNotificationPlugin implements PwaNotificati
     if (StringUtils.isBlank(username)) {
       return null;
     } else {
-      Identity identity = identityManager.getOrCreateUserIdentity(username);
+      Identity identity = getUserIdentity(username);
       if (identity != null) {
         return identity.getRemoteId();
       }
     }
     if (StringUtils.isNumeric(username)) {
-      Identity identity = identityManager.getIdentity(username);
+      Identity identity = getIdentity(username);
       if (identity != null) {
         return identity.getRemoteId();
       }
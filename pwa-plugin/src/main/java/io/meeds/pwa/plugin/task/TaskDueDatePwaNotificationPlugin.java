@@ -29,12 +29,15 @@ import org.exoplatform.services.resources.ResourceBundleService;
 import io.meeds.portal.permlink.model.PermanentLinkObject;
 import io.meeds.portal.permlink.service.PermanentLinkService;
 import io.meeds.pwa.model.PwaNotificationMessage;
+import io.meeds.pwa.model.PwaNotificationPriority;
 import io.meeds.pwa.plugin.PwaNotificationPlugin;
 
 @Profile("task")
 @Component
 public class TaskDueDatePwaNotificationPlugin implements PwaNotificationPlugin {
-  private static final String   TITLE_LABEL_KEY = "pwa.notification.TaskDueDatePlugin.title";
+  private static final String   TITLE_LABEL_KEY   = "pwa.notification.TaskDueDatePlugin.title";
+
+  private static final int      TASK_DUE_DATE_TTL = 86400;
 
   @Autowired
   private ResourceBundleService resourceBundleService;
@@ -47,6 +50,17 @@ public class TaskDueDatePwaNotificationPlugin implements PwaNotificationPlugin {
     return "TaskDueDatePlugin";
   }
 
+  @Override
+  public PwaNotificationPriority getPriority() {
+    return PwaNotificationPriority.HIGH;
+  }
+
+  @Override
+  public int getTtl() {
+    // The reminder is useless once the due date is passed
+    return TASK_DUE_DATE_TTL;
+  }
+
   @Override
   public PwaNotificationMessage process(NotificationInfo notification, LocaleConfig localeConfig) {
     PwaNotificationMessage notificationMessage = new PwaNotificationMessage();
@@ -47,6 +47,12 @@ public class TaskEditedPwaNotificationPlugin implements PwaNotificationPlugin {
     return "TaskEditionPlugin";
   }
 
+  @Override
+  public String getTopic(NotificationInfo notification) {
+    String taskId = notification.getValueOwnerParameter("taskId");
+    return taskId == null ? null : getId() + "-" + taskId;
+  }
+
   @Override
   public PwaNotificationMessage process(NotificationInfo notification, LocaleConfig localeConfig) {
     PwaNotificationMessage notificationMessage = new PwaNotificationMessage();
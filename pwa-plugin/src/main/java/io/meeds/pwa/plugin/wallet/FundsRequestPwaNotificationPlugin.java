@@ -29,6 +29,7 @@ import org.exoplatform.services.resources.ResourceBundleService;
 import io.meeds.portal.permlink.model.PermanentLinkObject;
 import io.meeds.portal.permlink.service.PermanentLinkService;
 import io.meeds.pwa.model.PwaNotificationMessage;
+import io.meeds.pwa.model.PwaNotificationPriority;
 import io.meeds.pwa.plugin.PwaNotificationPlugin;
 
 @Profile("wallet")
@@ -47,6 +48,11 @@ public class FundsRequestPwaNotificationPlugin implements PwaNotificationPlugin
     return "FundsRequestNotificationPlugin";
   }
 
+  @Override
+  public PwaNotificationPriority getPriority() {
+    return PwaNotificationPriority.HIGH;
+  }
+
   @Override
   public PwaNotificationMessage process(NotificationInfo notification, LocaleConfig localeConfig) {
     PwaNotificationMessage notificationMessage = new PwaNotificationMessage();
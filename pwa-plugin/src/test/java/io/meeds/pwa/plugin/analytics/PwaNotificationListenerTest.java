@@ -0,0 +1,157 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.plugin.analytics;
+
+import static io.meeds.pwa.service.PwaNotificationService.EVENT_ACTION_PARAM_NAME;
+import static io.meeds.pwa.service.PwaNotificationService.EVENT_DURATION_PARAM_NAME;
+import static io.meeds.pwa.service.PwaNotificationService.EVENT_ERROR_PARAM_NAME;
+import static io.meeds.pwa.service.PwaNotificationService.EVENT_HTTP_RESPONSE_PARAM_NAME;
+import static io.meeds.pwa.service.PwaNotificationService.EVENT_NOTIFICATION_ID_PARAM_NAME;
+import static io.meeds.pwa.service.PwaNotificationService.EVENT_NOTIFICATION_RESPONSE_ERROR;
+import static io.meeds.pwa.service.PwaNotificationService.EVENT_NOTIFICATION_SENDING_ERROR;
+import static io.meeds.pwa.service.PwaNotificationService.EVENT_NOTIFICATION_SENT;
+import static io.meeds.pwa.service.PwaNotificationService.EVENT_SUBSCRIPTION_PARAM_NAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.TestPropertySource;
+
+import org.exoplatform.services.listener.Event;
+import org.exoplatform.services.listener.ListenerService;
+
+import io.meeds.analytics.model.StatisticData;
+import io.meeds.analytics.model.StatisticData.StatisticStatus;
+import io.meeds.pwa.model.UserPushSubscription;
+
+@SpringBootTest(classes = {
+                            PwaNotificationListener.class,
+})
+@TestPropertySource(
+                    properties = {
+                                   "pwa.analytics.errorMessage.maxLength=10",
+                    })
+public class PwaNotificationListenerTest {
+
+  private static final String     TEST_USER       = "testuser";
+
+  private static final long       NOTIFICATION_ID = 12l;
+
+  @MockBean
+  private PwaStatisticBuffer      pwaStatisticBuffer;
+
+  @MockBean
+  private ListenerService         listenerService;
+
+  @Autowired
+  private PwaNotificationListener pwaNotificationListener;
+
+  @Test
+  public void init() {
+    pwaNotificationListener.init();
+    verify(listenerService, atLeastOnce()).addListener(EVENT_NOTIFICATION_SENT, pwaNotificationListener);
+    verify(listenerService, atLeastOnce()).addListener(EVENT_NOTIFICATION_RESPONSE_ERROR, pwaNotificationListener);
+  }
+
+  @Test
+  public void onNotificationSent() throws Exception {
+    Map<String, Object> params = newParams();
+    params.put(EVENT_NOTIFICATION_ID_PARAM_NAME, NOTIFICATION_ID);
+    params.put(EVENT_ACTION_PARAM_NAME, "open");
+
+    StatisticData statisticData = onEvent(EVENT_NOTIFICATION_SENT, params);
+    assertEquals("PWA", statisticData.getModule());
+    assertEquals("pwaNotification", statisticData.getSubModule());
+    assertEquals("pwaNotificationSent", statisticData.getOperation());
+    assertEquals(StatisticStatus.OK, statisticData.getStatus());
+    assertEquals(150l, statisticData.getDuration());
+    assertEquals("https://fcm.googleapis.com", String.valueOf(statisticData.getParameters().get("pwaSubscriptionSite")));
+    assertEquals(String.valueOf(NOTIFICATION_ID), String.valueOf(statisticData.getParameters().get("pwaNotificationId")));
+    assertEquals("open", String.valueOf(statisticData.getParameters().get("pwaAction")));
+    assertFalse(statisticData.getParameters().containsKey("pwaErrorMessage"));
+  }
+
+  @Test
+  public void onNotificationResponseError() throws Exception {
+    HttpResponse httpResponse = mock(HttpResponse.class);
+    StatusLine statusLine = mock(StatusLine.class);
+    HttpEntity httpEntity = mock(HttpEntity.class);
+    when(httpResponse.getStatusLine()).thenReturn(statusLine);
+    when(statusLine.getStatusCode()).thenReturn(503);
+    when(httpResponse.getEntity()).thenReturn(httpEntity);
+    byte[] content = "<html>Service Unavailable</html>".getBytes(StandardCharsets.UTF_8);
+    when(httpEntity.getContent()).thenReturn(new ByteArrayInputStream(content));
+    Map<String, Object> params = newParams();
+    params.put(EVENT_HTTP_RESPONSE_PARAM_NAME, httpResponse);
+
+    StatisticData statisticData = onEvent(EVENT_NOTIFICATION_RESPONSE_ERROR, params);
+    assertEquals("pwaNotificationPushServerError", statisticData.getOperation());
+    assertEquals(StatisticStatus.KO, statisticData.getStatus());
+    assertEquals("503", String.valueOf(statisticData.getParameters().get("pwaHttpResponseCode")));
+    // The error message is truncated to the configured maximum length
+    assertEquals("<html>Serv", String.valueOf(statisticData.getParameters().get("pwaErrorMessage")));
+  }
+
+  @Test
+  public void onNotificationSendingError() throws Exception {
+    Map<String, Object> params = newParams();
+    params.put(EVENT_ERROR_PARAM_NAME, "Connection refused");
+
+    StatisticData statisticData = onEvent(EVENT_NOTIFICATION_SENDING_ERROR, params);
+    assertEquals("pwaNotificationInternalError", statisticData.getOperation());
+    assertEquals(StatisticStatus.KO, statisticData.getStatus());
+    assertEquals("Connection", String.valueOf(statisticData.getParameters().get("pwaErrorMessage")));
+  }
+
+  private StatisticData onEvent(String eventName, Map<String, Object> params) throws Exception {
+    pwaNotificationListener.onEvent(new Event<>(eventName, TEST_USER, params));
+    ArgumentCaptor<StatisticData> statisticData = ArgumentCaptor.forClass(StatisticData.class);
+    verify(pwaStatisticBuffer).add(statisticData.capture(), eq(TEST_USER));
+    return statisticData.getValue();
+  }
+
+  private Map<String, Object> newParams() {
+    UserPushSubscription subscription = new UserPushSubscription();
+    subscription.setId("subscriptionId");
+    subscription.setEndpoint("https://fcm.googleapis.com/fcm/send/endpoint");
+    subscription.setDeviceType("android");
+    Map<String, Object> params = new HashMap<>();
+    params.put(EVENT_SUBSCRIPTION_PARAM_NAME, subscription);
+    params.put(EVENT_DURATION_PARAM_NAME, 150l);
+    return params;
+  }
+
+}
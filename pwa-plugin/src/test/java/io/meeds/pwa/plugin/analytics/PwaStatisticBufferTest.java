@@ -0,0 +1,171 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.plugin.analytics;
+
+import static io.meeds.pwa.plugin.analytics.PwaStatisticBuffer.SAMPLING_RATE_PARAM_NAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.meeds.analytics.model.StatisticData;
+import io.meeds.analytics.model.StatisticData.StatisticStatus;
+import io.meeds.pwa.plugin.analytics.PwaStatisticBuffer.PendingStatistic;
+
+@SpringBootTest(classes = {
+                            PwaStatisticBuffer.class,
+})
+@TestPropertySource(
+                    properties = {
+                                   "pwa.analytics.bufferSize=10",
+                                   "pwa.analytics.batchSize=4",
+                                   "pwa.analytics.flushInterval=3600000",
+                                   "pwa.analytics.sampling.threshold=0.5",
+                                   "pwa.analytics.sampling.rate=3",
+                    })
+public class PwaStatisticBufferTest {
+
+  private static final String TEST_USER  = "testuser";
+
+  private static final int    BATCH_SIZE = 4;
+
+  @MockBean
+  private PwaStatisticWriter  pwaStatisticWriter;
+
+  @Autowired
+  private PwaStatisticBuffer  pwaStatisticBuffer;
+
+  @BeforeEach
+  public void setup() {
+    ReflectionTestUtils.setField(pwaStatisticBuffer, "samplingCounter", new AtomicLong());
+  }
+
+  @AfterEach
+  public void teardown() {
+    pwaStatisticBuffer.flush();
+    ReflectionTestUtils.setField(pwaStatisticBuffer, "batchSize", BATCH_SIZE);
+  }
+
+  @Test
+  public void flushWhenBatchSizeReached() {
+    for (int i = 0; i < BATCH_SIZE - 1; i++) {
+      assertTrue(pwaStatisticBuffer.add(newStatistic(StatisticStatus.OK), TEST_USER));
+    }
+    verify(pwaStatisticWriter, never()).write(any());
+
+    assertTrue(pwaStatisticBuffer.add(newStatistic(StatisticStatus.OK), TEST_USER));
+    verify(pwaStatisticWriter, timeout(5000)).write(argThat(statistics -> statistics.size() == BATCH_SIZE));
+  }
+
+  @Test
+  public void flushByBatches() {
+    disableBatchFlush();
+    for (int i = 0; i < 10; i++) {
+      assertTrue(pwaStatisticBuffer.add(newStatistic(StatisticStatus.KO), TEST_USER));
+    }
+    ReflectionTestUtils.setField(pwaStatisticBuffer, "batchSize", BATCH_SIZE);
+
+    pwaStatisticBuffer.flush();
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<List<PendingStatistic>> batches = ArgumentCaptor.forClass(List.class);
+    verify(pwaStatisticWriter, times(3)).write(batches.capture());
+    assertEquals(Arrays.asList(4, 4, 2), batches.getAllValues().stream().map(List::size).toList());
+    assertEquals(TEST_USER, batches.getValue().get(0).username());
+  }
+
+  @Test
+  public void sampleSuccessfulStatistics() {
+    disableBatchFlush();
+    for (int i = 0; i < 5; i++) {
+      assertTrue(pwaStatisticBuffer.add(newStatistic(StatisticStatus.KO), TEST_USER));
+    }
+    // One successful operation statistic out of 3 is kept beyond the
+    // threshold
+    assertFalse(pwaStatisticBuffer.add(newStatistic(StatisticStatus.OK), TEST_USER));
+    assertFalse(pwaStatisticBuffer.add(newStatistic(StatisticStatus.OK), TEST_USER));
+    StatisticData sampledStatistic = newStatistic(StatisticStatus.OK);
+    assertTrue(pwaStatisticBuffer.add(sampledStatistic, TEST_USER));
+    assertEquals("3", String.valueOf(sampledStatistic.getParameters().get(SAMPLING_RATE_PARAM_NAME)));
+    // Failures are never sampled
+    assertTrue(pwaStatisticBuffer.add(newStatistic(StatisticStatus.KO), TEST_USER));
+
+    pwaStatisticBuffer.flush();
+    verify(pwaStatisticWriter).write(argThat(statistics -> statistics.size() == 7));
+  }
+
+  @Test
+  public void dropWhenBufferFull() {
+    disableBatchFlush();
+    for (int i = 0; i < 10; i++) {
+      assertTrue(pwaStatisticBuffer.add(newStatistic(StatisticStatus.KO), TEST_USER));
+    }
+    assertFalse(pwaStatisticBuffer.add(newStatistic(StatisticStatus.KO), TEST_USER));
+
+    pwaStatisticBuffer.flush();
+    verify(pwaStatisticWriter).write(argThat(statistics -> statistics.size() == 10));
+    assertTrue(pwaStatisticBuffer.add(newStatistic(StatisticStatus.KO), TEST_USER));
+  }
+
+  @Test
+  public void initWithInvalidParameters() {
+    ReflectionTestUtils.setField(pwaStatisticBuffer, "samplingRate", 0);
+    try {
+      assertThrows(IllegalArgumentException.class, pwaStatisticBuffer::init);
+    } finally {
+      ReflectionTestUtils.setField(pwaStatisticBuffer, "samplingRate", 3);
+    }
+    ReflectionTestUtils.setField(pwaStatisticBuffer, "batchSize", 11);
+    assertThrows(IllegalArgumentException.class, pwaStatisticBuffer::init);
+    ReflectionTestUtils.setField(pwaStatisticBuffer, "batchSize", 0);
+    assertThrows(IllegalArgumentException.class, pwaStatisticBuffer::init);
+  }
+
+  private void disableBatchFlush() {
+    ReflectionTestUtils.setField(pwaStatisticBuffer, "batchSize", Integer.MAX_VALUE);
+  }
+
+  private StatisticData newStatistic(StatisticStatus status) {
+    StatisticData statisticData = new StatisticData();
+    statisticData.setModule("PWA");
+    statisticData.setOperation("pwaNotificationSent");
+    statisticData.setStatus(status);
+    return statisticData;
+  }
+
+}
@@ -0,0 +1,115 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.plugin.analytics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import org.exoplatform.social.core.identity.model.Identity;
+import org.exoplatform.social.core.manager.IdentityManager;
+
+import io.meeds.analytics.model.StatisticData;
+import io.meeds.analytics.utils.AnalyticsUtils;
+import io.meeds.pwa.plugin.analytics.PwaStatisticBuffer.PendingStatistic;
+
+@SpringBootTest(classes = {
+                            PwaStatisticWriter.class,
+})
+public class PwaStatisticWriterTest {
+
+  private static final String IDENTITY_ID = "2";
+
+  @MockBean
+  private IdentityManager     identityManager;
+
+  @Autowired
+  private PwaStatisticWriter  pwaStatisticWriter;
+
+  @Test
+  public void write() {
+    String username = "writeUser";
+    mockIdentity(username);
+    StatisticData firstStatistic = newStatistic();
+    StatisticData secondStatistic = newStatistic();
+
+    try (MockedStatic<AnalyticsUtils> analyticsUtils = mockStatic(AnalyticsUtils.class)) {
+      pwaStatisticWriter.write(Arrays.asList(new PendingStatistic(firstStatistic, username),
+                                             new PendingStatistic(secondStatistic, username)));
+      analyticsUtils.verify(() -> AnalyticsUtils.addStatisticData(firstStatistic));
+      analyticsUtils.verify(() -> AnalyticsUtils.addStatisticData(secondStatistic));
+    }
+    assertEquals(Long.parseLong(IDENTITY_ID), firstStatistic.getUserId());
+    assertEquals(Long.parseLong(IDENTITY_ID), secondStatistic.getUserId());
+    // The user identity identifier is cached
+    verify(identityManager, times(1)).getOrCreateUserIdentity(username);
+  }
+
+  @Test
+  public void writeWhenStatisticFails() {
+    String username = "failingUser";
+    mockIdentity(username);
+    StatisticData failingStatistic = newStatistic();
+    StatisticData statistic = newStatistic();
+
+    try (MockedStatic<AnalyticsUtils> analyticsUtils = mockStatic(AnalyticsUtils.class)) {
+      analyticsUtils.when(() -> AnalyticsUtils.addStatisticData(failingStatistic)).thenThrow(new IllegalStateException());
+      pwaStatisticWriter.write(Arrays.asList(new PendingStatistic(failingStatistic, username),
+                                             new PendingStatistic(statistic, username)));
+      analyticsUtils.verify(() -> AnalyticsUtils.addStatisticData(statistic));
+    }
+  }
+
+  @Test
+  public void writeWithoutIdentity() {
+    StatisticData statistic = newStatistic();
+
+    try (MockedStatic<AnalyticsUtils> analyticsUtils = mockStatic(AnalyticsUtils.class)) {
+      pwaStatisticWriter.write(Arrays.asList(new PendingStatistic(statistic, "unknownUser")));
+      analyticsUtils.verify(() -> AnalyticsUtils.addStatisticData(any()));
+    }
+    assertEquals(0, statistic.getUserId());
+  }
+
+  private void mockIdentity(String username) {
+    Identity identity = mock(Identity.class);
+    when(identity.getId()).thenReturn(IDENTITY_ID);
+    when(identityManager.getOrCreateUserIdentity(username)).thenReturn(identity);
+  }
+
+  private StatisticData newStatistic() {
+    StatisticData statisticData = new StatisticData();
+    statisticData.setModule("PWA");
+    statisticData.setOperation("pwaNotificationSent");
+    return statisticData;
+  }
+
+}
@@ -0,0 +1,105 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.plugin.analytics;
+
+import static io.meeds.pwa.service.PwaSubscriptionService.PWA_INSTALLED;
+import static io.meeds.pwa.service.PwaSubscriptionService.PWA_UNINSTALLED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import org.exoplatform.services.listener.Event;
+import org.exoplatform.services.listener.ListenerService;
+
+import io.meeds.analytics.model.StatisticData;
+import io.meeds.analytics.model.StatisticData.StatisticStatus;
+import io.meeds.pwa.model.UserPushSubscription;
+
+@SpringBootTest(classes = {
+                            PwaSubscriptionListener.class,
+})
+public class PwaSubscriptionListenerTest {
+
+  private static final String     TEST_USER = "testuser";
+
+  @MockBean
+  private PwaStatisticBuffer      pwaStatisticBuffer;
+
+  @MockBean
+  private ListenerService         listenerService;
+
+  @Autowired
+  private PwaSubscriptionListener pwaSubscriptionListener;
+
+  @Test
+  public void init() {
+    pwaSubscriptionListener.init();
+    verify(listenerService, atLeastOnce()).addListener(PWA_INSTALLED, pwaSubscriptionListener);
+    verify(listenerService, atLeastOnce()).addListener(PWA_UNINSTALLED, pwaSubscriptionListener);
+  }
+
+  @Test
+  public void onInstalled() throws Exception {
+    StatisticData statisticData = onEvent(PWA_INSTALLED);
+    assertEquals("PWA", statisticData.getModule());
+    assertEquals("pwaInstallation", statisticData.getSubModule());
+    assertEquals("pwaInstalled", statisticData.getOperation());
+    assertEquals(StatisticStatus.OK, statisticData.getStatus());
+    assertEquals("subscriptionId", String.valueOf(statisticData.getParameters().get("pwaSubscriptionId")));
+    assertEquals("android", String.valueOf(statisticData.getParameters().get("pwaDeviceType")));
+  }
+
+  @Test
+  public void onUninstalled() throws Exception {
+    assertEquals("pwaUninstalled", onEvent(PWA_UNINSTALLED).getOperation());
+  }
+
+  @Test
+  public void onUnexpectedEvent() {
+    Event<String, UserPushSubscription> event = new Event<>("unexpected", TEST_USER, newSubscription());
+    assertThrows(IllegalArgumentException.class, () -> pwaSubscriptionListener.onEvent(event));
+    verify(pwaStatisticBuffer, never()).add(any(), any());
+  }
+
+  private StatisticData onEvent(String eventName) throws Exception {
+    pwaSubscriptionListener.onEvent(new Event<>(eventName, TEST_USER, newSubscription()));
+    ArgumentCaptor<StatisticData> statisticData = ArgumentCaptor.forClass(StatisticData.class);
+    verify(pwaStatisticBuffer).add(statisticData.capture(), eq(TEST_USER));
+    return statisticData.getValue();
+  }
+
+  private UserPushSubscription newSubscription() {
+    UserPushSubscription subscription = new UserPushSubscription();
+    subscription.setId("subscriptionId");
+    subscription.setEndpoint("https://fcm.googleapis.com/fcm/send/endpoint");
+    subscription.setDeviceType("android");
+    return subscription;
+  }
+
+}
@@ -0,0 +1,143 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.dao;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import io.meeds.pwa.entity.PushOutboxEntity;
+
+public interface PushOutboxDAO extends JpaRepository<PushOutboxEntity, Long> {
+
+  @Query("""
+      SELECT o.id FROM PwaPushOutbox o
+      WHERE o.leaseExpiryDate IS NULL OR o.leaseExpiryDate < :now
+      ORDER BY o.id ASC
+      """)
+  List<Long> findClaimableIds(@Param("now") Date now, Pageable pageable);
+
+  /**
+   * Claims the outbox entries which aren't leased by another worker or which
+   * lease has expired. The conditional update guarantees that concurrent
+   * workers can't claim the same entry.
+   */
+  @Modifying
+  @Transactional
+  @Query("""
+      UPDATE PwaPushOutbox o SET o.leaseToken = :leaseToken, o.leaseExpiryDate = :leaseExpiryDate
+      WHERE o.id IN (:ids) AND (o.leaseExpiryDate IS NULL OR o.leaseExpiryDate < :now)
+      """)
+  int claim(@Param("ids") List<Long> ids,
+            @Param("leaseToken") String leaseToken,
+            @Param("leaseExpiryDate") Date leaseExpiryDate,
+            @Param("now") Date now);
+
+  List<PushOutboxEntity> findByLeaseToken(String leaseToken);
+
+  /**
+   * Releases the lease of an outbox entry, so that it can be claimed
+   * immediately by any worker. The lease token condition guarantees that a
+   * worker which lease expired can't update an entry claimed by another one.
+   */
+  @Modifying
+  @Transactional
+  @Query("""
+      UPDATE PwaPushOutbox o SET o.leaseToken = NULL, o.leaseExpiryDate = NULL
+      WHERE o.notificationId = :notificationId AND o.leaseToken = :leaseToken
+      """)
+  int release(@Param("notificationId") long notificationId, @Param("leaseToken") String leaseToken);
+
+  /**
+   * Releases the lease of an outbox entry and makes it claimable only after
+   * the given date
+   */
+  @Modifying
+  @Transactional
+  @Query("""
+      UPDATE PwaPushOutbox o SET o.leaseToken = NULL, o.leaseExpiryDate = :availableDate
+      WHERE o.notificationId = :notificationId AND o.leaseToken = :leaseToken
+      """)
+  int defer(@Param("notificationId") long notificationId,
+            @Param("leaseToken") String leaseToken,
+            @Param("availableDate") Date availableDate);
+
+  /**
+   * Keeps a notification held by a policy in the outbox, without lease and
+   * claimable by any node after the given date only
+   */
+  @Modifying
+  @Transactional
+  @Query("""
+      UPDATE PwaPushOutbox o SET o.leaseToken = NULL, o.leaseExpiryDate = :availableDate, o.holds = :holds
+      WHERE o.notificationId = :notificationId AND o.leaseToken = :leaseToken
+      """)
+  int hold(@Param("notificationId") long notificationId,
+           @Param("leaseToken") String leaseToken,
+           @Param("holds") int holds,
+           @Param("availableDate") Date availableDate);
+
+  /**
+   * Claims again a notification held by the current node, unless another node
+   * claimed it meanwhile
+   */
+  @Modifying
+  @Transactional
+  @Query("""
+      UPDATE PwaPushOutbox o SET o.leaseToken = :leaseToken, o.leaseExpiryDate = :leaseExpiryDate
+      WHERE o.notificationId = :notificationId AND o.leaseToken IS NULL
+      """)
+  int reclaim(@Param("notificationId") long notificationId,
+              @Param("leaseToken") String leaseToken,
+              @Param("leaseExpiryDate") Date leaseExpiryDate);
+
+  /**
+   * Extends the lease of outbox entries still being processed by the current
+   * node, so that they aren't claimed again by another node meanwhile. The
+   * entries claimed by another node since their lease expired have another
+   * lease token and are left unchanged.
+   */
+  @Modifying
+  @Transactional
+  @Query("""
+      UPDATE PwaPushOutbox o SET o.leaseExpiryDate = :leaseExpiryDate
+      WHERE o.leaseToken IN (:leaseTokens)
+      """)
+  int renew(@Param("leaseTokens") Collection<String> leaseTokens, @Param("leaseExpiryDate") Date leaseExpiryDate);
+
+  /**
+   * Removes a processed outbox entry, unless another worker claimed it since
+   * its lease expired
+   */
+  @Modifying
+  @Transactional
+  @Query("""
+      DELETE FROM PwaPushOutbox o
+      WHERE o.notificationId = :notificationId AND o.leaseToken = :leaseToken
+      """)
+  int remove(@Param("notificationId") long notificationId, @Param("leaseToken") String leaseToken);
+
+}
@@ -0,0 +1,78 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.dao;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import io.meeds.pwa.entity.PushSubscriptionEntity;
+
+import jakarta.persistence.LockModeType;
+
+public interface PushSubscriptionDAO extends JpaRepository<PushSubscriptionEntity, Long> {
+
+  List<PushSubscriptionEntity> findByUsername(String username);
+
+  List<PushSubscriptionEntity> findByUsernameIn(Collection<String> usernames);
+
+  PushSubscriptionEntity findByUsernameAndSubscriptionId(String username, String subscriptionId);
+
+  boolean existsByUsernameAndEndpointHash(String username, String endpointHash);
+
+  List<PushSubscriptionEntity> findByEndpointHash(String endpointHash);
+
+  List<PushSubscriptionEntity> findByIdGreaterThanOrderByIdAsc(long id, Pageable pageable);
+
+  @Query("""
+      SELECT s.endpointHash FROM PwaPushSubscription s
+      WHERE s.endpointHash > :afterEndpointHash
+      GROUP BY s.endpointHash
+      HAVING COUNT(s.id) > 1
+      ORDER BY s.endpointHash ASC
+      """)
+  List<String> findDuplicatedEndpointHashes(@Param("afterEndpointHash") String afterEndpointHash, Pageable pageable);
+
+  @Modifying
+  @Transactional
+  @Query("""
+      UPDATE PwaPushSubscription s SET s.lastSeenDate = :lastSeenDate
+      WHERE s.username = :username AND s.endpointHash = :endpointHash
+      """)
+  int updateLastSeenDate(@Param("username") String username,
+                         @Param("endpointHash") String endpointHash,
+                         @Param("lastSeenDate") Date lastSeenDate);
+
+  /**
+   * Retrieves the subscriptions having the given endpoints, locked until the
+   * end of the current transaction, so that their delivery statistics are
+   * updated atomically by the nodes of the cluster
+   */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  List<PushSubscriptionEntity> findByEndpointHashIn(Collection<String> endpointHashes);
+
+}
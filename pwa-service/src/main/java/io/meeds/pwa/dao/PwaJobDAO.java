@@ -0,0 +1,50 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.dao;
+
+import java.util.Date;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import io.meeds.pwa.entity.PwaJobEntity;
+
+public interface PwaJobDAO extends JpaRepository<PwaJobEntity, String> {
+
+  /**
+   * Locks a job which isn't locked or which lock has expired. The conditional
+   * update guarantees that concurrent nodes can't lock the same job.
+   */
+  @Modifying
+  @Transactional
+  @Query("""
+      UPDATE PwaJob j SET j.lockExpiryDate = :lockExpiryDate
+      WHERE j.name = :name AND (j.lockExpiryDate IS NULL OR j.lockExpiryDate < :now)
+      """)
+  int lock(@Param("name") String name, @Param("lockExpiryDate") Date lockExpiryDate, @Param("now") Date now);
+
+  @Modifying
+  @Transactional
+  @Query("UPDATE PwaJob j SET j.lockExpiryDate = NULL WHERE j.name = :name")
+  int unlock(@Param("name") String name);
+
+}
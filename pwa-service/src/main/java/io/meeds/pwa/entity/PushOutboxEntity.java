@@ -0,0 +1,68 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.entity;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import org.exoplatform.commons.api.persistence.ExoEntity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.Temporal;
+import jakarta.persistence.TemporalType;
+import lombok.Data;
+
+@Entity(name = "PwaPushOutbox")
+@ExoEntity
+@Table(name = "PWA_PUSH_OUTBOX")
+@Data
+public class PushOutboxEntity implements Serializable {
+
+  private static final long serialVersionUID = 2803826164733417426L;
+
+  @Id
+  @SequenceGenerator(name = "SEQ_PWA_PUSH_OUTBOX_ID", sequenceName = "SEQ_PWA_PUSH_OUTBOX_ID", allocationSize = 1)
+  @GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_PWA_PUSH_OUTBOX_ID")
+  @Column(name = "ID")
+  private Long              id;
+
+  @Column(name = "NOTIFICATION_ID", nullable = false)
+  private long              notificationId;
+
+  @Column(name = "LEASE_TOKEN")
+  private String            leaseToken;
+
+  @Temporal(TemporalType.TIMESTAMP)
+  @Column(name = "LEASE_EXPIRY_DATE")
+  private Date              leaseExpiryDate;
+
+  @Temporal(TemporalType.TIMESTAMP)
+  @Column(name = "CREATED_DATE", nullable = false)
+  private Date              createdDate;
+
+  @Column(name = "HOLDS", nullable = false)
+  private int               holds;
+
+}
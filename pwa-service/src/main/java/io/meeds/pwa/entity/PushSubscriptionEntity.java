@@ -0,0 +1,97 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.entity;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import org.exoplatform.commons.api.persistence.ExoEntity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.Temporal;
+import jakarta.persistence.TemporalType;
+import lombok.Data;
+
+@Entity(name = "PwaPushSubscription")
+@ExoEntity
+@Table(name = "PWA_PUSH_SUBSCRIPTIONS")
+@Data
+public class PushSubscriptionEntity implements Serializable {
+
+  private static final long serialVersionUID = -3717066417318386358L;
+
+  @Id
+  @SequenceGenerator(name = "SEQ_PWA_PUSH_SUBSCRIPTION_ID", sequenceName = "SEQ_PWA_PUSH_SUBSCRIPTION_ID", allocationSize = 1)
+  @GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ_PWA_PUSH_SUBSCRIPTION_ID")
+  @Column(name = "ID")
+  private Long              id;
+
+  @Column(name = "SUBSCRIPTION_ID", nullable = false)
+  private String            subscriptionId;
+
+  @Column(name = "USER_NAME", nullable = false)
+  private String            username;
+
+  @Column(name = "ENDPOINT", nullable = false)
+  private String            endpoint;
+
+  @Column(name = "ENDPOINT_HASH", nullable = false)
+  private String            endpointHash;
+
+  @Column(name = "ORIGIN", nullable = false)
+  private String            origin;
+
+  @Column(name = "PUBLIC_KEY", nullable = false)
+  private String            key;
+
+  @Column(name = "AUTH", nullable = false)
+  private String            auth;
+
+  @Column(name = "DEVICE_TYPE")
+  private String            deviceType;
+
+  @Temporal(TemporalType.TIMESTAMP)
+  @Column(name = "CREATED_DATE", nullable = false)
+  private Date              createdDate;
+
+  @Temporal(TemporalType.TIMESTAMP)
+  @Column(name = "LAST_SEEN_DATE")
+  private Date              lastSeenDate;
+
+  @Temporal(TemporalType.TIMESTAMP)
+  @Column(name = "LAST_SUCCESS_DATE")
+  private Date              lastSuccessDate;
+
+  @Temporal(TemporalType.TIMESTAMP)
+  @Column(name = "LAST_FAILURE_DATE")
+  private Date              lastFailureDate;
+
+  @Column(name = "CONSECUTIVE_FAILURES", nullable = false)
+  private int               consecutiveFailures;
+
+  @Column(name = "AVERAGE_LATENCY", nullable = false)
+  private long              averageLatency;
+
+}
@@ -0,0 +1,54 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.listener;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.exoplatform.portal.Constants;
+import org.exoplatform.services.organization.OrganizationService;
+import org.exoplatform.services.organization.UserProfile;
+import org.exoplatform.services.organization.UserProfileEventListener;
+
+import io.meeds.pwa.storage.PwaUserLanguageStorage;
+
+import jakarta.annotation.PostConstruct;
+import lombok.SneakyThrows;
+
+@Component
+public class UserLanguageUpdatedListener extends UserProfileEventListener {
+
+  @Autowired
+  private PwaUserLanguageStorage pwaUserLanguageStorage;
+
+  @Autowired
+  private OrganizationService    organizationService;
+
+  @PostConstruct
+  @SneakyThrows
+  protected void init() {
+    organizationService.addListenerPlugin(this);
+  }
+
+  @Override
+  public void postSave(UserProfile userProfile, boolean isNew) throws Exception {
+    pwaUserLanguageStorage.put(userProfile.getUserName(), userProfile.getAttribute(Constants.USER_LANGUAGE));
+  }
+
+}
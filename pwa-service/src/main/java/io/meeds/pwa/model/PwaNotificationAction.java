@@ -18,12 +18,16 @@
  */
 package io.meeds.pwa.model;
 
+import java.io.Serializable;
+
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Data
 @NoArgsConstructor
-public class PwaNotificationAction {
+public class PwaNotificationAction implements Serializable {
+
+  private static final long serialVersionUID = 1L;
 
   public PwaNotificationAction(String title, String action) {
     this.title = title;
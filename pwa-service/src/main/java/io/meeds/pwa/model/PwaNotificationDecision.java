@@ -0,0 +1,37 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.model;
+
+/**
+ * Decision of a {@link io.meeds.pwa.plugin.PwaNotificationPolicy} about a
+ * Push Notification to send to a user. When multiple policies are registered,
+ * the most restrictive decision applies.
+ */
+public enum PwaNotificationDecision {
+
+  /** Send the Push Notification immediately */
+  SEND,
+
+  /** Postpone the Push Notification and evaluate it again later */
+  HOLD,
+
+  /** Don't send the Push Notification */
+  SKIP;
+
+}
@@ -18,12 +18,15 @@
  */
 package io.meeds.pwa.model;
 
+import java.io.Serializable;
 import java.util.List;
 
 import lombok.Data;
 
 @Data
-public class PwaNotificationMessage {
+public class PwaNotificationMessage implements Serializable {
+
+  private static final long serialVersionUID = 1L;
 
   private String                      tag;
 
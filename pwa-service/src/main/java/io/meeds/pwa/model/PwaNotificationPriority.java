@@ -0,0 +1,41 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.model;
+
+/**
+ * Priority of a Push Notification, used to dispatch the high priority
+ * notifications first and sent to the Push Service as Web Push
+ * {@code Urgency} header, so that the low priority messages are delivered
+ * to devices when they don't drain the battery.
+ */
+public enum PwaNotificationPriority {
+
+  /** Delivered when the device is on power and Wi-Fi */
+  VERY_LOW,
+
+  /** Delivered when the device is on power or Wi-Fi */
+  LOW,
+
+  /** Delivered when the device isn't on low battery */
+  NORMAL,
+
+  /** Delivered immediately, even on low battery */
+  HIGH;
+
+}
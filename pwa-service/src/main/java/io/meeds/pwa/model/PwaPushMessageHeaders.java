@@ -0,0 +1,53 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.model;
+
+import java.io.Serializable;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Web Push headers of a Push message, telling the Push Service how long to
+ * retain it, how urgently to deliver it and which pending message it
+ * replaces.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PwaPushMessageHeaders implements Serializable {
+
+  private static final long       serialVersionUID = 1L;
+
+  /**
+   * Time, in seconds, during which the Push Service retains the message while
+   * the device is offline, else -1 to use the default one
+   */
+  private int                     ttl              = -1;
+
+  private PwaNotificationPriority priority;
+
+  /**
+   * Key of the message replacing the pending messages having the same topic,
+   * else null
+   */
+  private String                  topic;
+
+}
@@ -0,0 +1,87 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Delivery statistics of a Push subscription, telling whether the device
+ * actually receives the Push messages.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PwaSubscriptionDelivery implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Date of the last Push message accepted by the Push Service, else null
+   */
+  private Date              lastSuccessDate;
+
+  /**
+   * Date of the last Push message rejected by the Push Service or which
+   * couldn't be sent, else null
+   */
+  private Date              lastFailureDate;
+
+  /**
+   * Number of failures since the last success
+   */
+  private int               consecutiveFailures;
+
+  /**
+   * Moving average, in milliseconds, of the Push Service response time
+   */
+  private long              averageLatency;
+
+  public PwaSubscriptionDelivery(PwaSubscriptionDelivery delivery) {
+    this(delivery.getLastSuccessDate(),
+         delivery.getLastFailureDate(),
+         delivery.getConsecutiveFailures(),
+         delivery.getAverageLatency());
+  }
+
+  /**
+   * Applies the delivery statistics changes made since the last flush
+   *
+   * @param update {@link PwaSubscriptionDeliveryUpdate} to apply
+   */
+  public void apply(PwaSubscriptionDeliveryUpdate update) {
+    if (update.getLastSuccessDate() != null) {
+      lastSuccessDate = update.getLastSuccessDate();
+      consecutiveFailures = update.getFailures();
+    } else {
+      consecutiveFailures += update.getFailures();
+    }
+    if (update.getLastFailureDate() != null) {
+      lastFailureDate = update.getLastFailureDate();
+    }
+    if (update.getAverageLatency() > 0) {
+      averageLatency = update.getAverageLatency();
+    }
+  }
+
+}
@@ -0,0 +1,62 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.model;
+
+import java.util.Date;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Delivery statistics changes of a Push subscription since the last flush.
+ * They are applied as increments on the stored statistics, so that the
+ * changes made by the other nodes of the cluster aren't overwritten.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PwaSubscriptionDeliveryUpdate {
+
+  /**
+   * Date of the last Push message accepted by the Push Service since the last
+   * flush, else null
+   */
+  private Date lastSuccessDate;
+
+  /**
+   * Date of the last Push message rejected by the Push Service since the last
+   * flush, else null
+   */
+  private Date lastFailureDate;
+
+  /**
+   * Number of failures since the last success when a Push message was
+   * accepted since the last flush, else number of failures since the last
+   * flush
+   */
+  private int  failures;
+
+  /**
+   * Moving average, in milliseconds, of the Push Service response time
+   * computed by the current node, else 0
+   */
+  private long averageLatency;
+
+}
@@ -0,0 +1,62 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.model;
+
+import java.util.Date;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Stored state of a Push subscription, used to maintain the subscriptions
+ * store without loading the subscription keys.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PwaSubscriptionState {
+
+  private long   id;
+
+  private String subscriptionId;
+
+  private String username;
+
+  private String endpointHash;
+
+  private Date   createdDate;
+
+  /**
+   * Date of the last registration of the subscription by the user browser,
+   * else null
+   */
+  private Date   lastSeenDate;
+
+  /**
+   * Date of the last Push message accepted by the Push Service, else null
+   */
+  private Date   lastSuccessDate;
+
+  /**
+   * Number of delivery failures since the last success
+   */
+  private int    consecutiveFailures;
+
+}
@@ -18,23 +18,22 @@
  */
 package io.meeds.pwa.model;
 
-import java.security.KeyFactory;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
+import java.io.Serializable;
+import java.net.URI;
 import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.util.Base64;
 
-import org.bouncycastle.jce.ECNamedCurveTable;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import org.bouncycastle.jce.spec.ECNamedCurveParameterSpec;
-import org.bouncycastle.jce.spec.ECPublicKeySpec;
-import org.bouncycastle.math.ec.ECPoint;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import io.meeds.pwa.utils.VapidKeysUtils;
 
 import lombok.Data;
 
 @Data
-public class UserPushSubscription {
+public class UserPushSubscription implements Serializable {
+
+  private static final long serialVersionUID = 2519530484428005283L;
 
   private String id;
 
@@ -46,6 +45,12 @@ public class UserPushSubscription {
 
   private String deviceType;
 
+  /**
+   * Stored delivery statistics, null for a subscription received from the
+   * device
+   */
+  private PwaSubscriptionDelivery delivery;
+
   public byte[] authAsBytes() {
     return Base64.getDecoder().decode(getAuth());
   }
@@ -54,12 +59,24 @@ public class UserPushSubscription {
     return Base64.getDecoder().decode(getKey());
   }
 
-  public PublicKey userPublicKey() throws NoSuchAlgorithmException, InvalidKeySpecException, NoSuchProviderException {
-    KeyFactory kf = KeyFactory.getInstance("ECDH", BouncyCastleProvider.PROVIDER_NAME);
-    ECNamedCurveParameterSpec ecSpec = ECNamedCurveTable.getParameterSpec("secp256r1");
-    ECPoint point = ecSpec.getCurve().decodePoint(keyAsBytes());
-    ECPublicKeySpec pubSpec = new ECPublicKeySpec(point, ecSpec);
-    return kf.generatePublic(pubSpec);
+  public PublicKey userPublicKey() throws InvalidKeySpecException {
+    return VapidKeysUtils.decodeSubscriptionPublicKey(keyAsBytes());
+  }
+
+  /**
+   * @return the Push Service origin, for example https://fcm.googleapis.com
+   */
+  public String origin() {
+    URI uri = URI.create(getEndpoint());
+    return uri.getScheme() + "://" + uri.getAuthority();
+  }
+
+  /**
+   * @return SHA-256 hex digest of the endpoint, used to lookup an endpoint
+   *         using a fixed length indexed column
+   */
+  public String endpointHash() {
+    return DigestUtils.sha256Hex(getEndpoint());
   }
 
 }
@@ -0,0 +1,49 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.plugin;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import org.exoplatform.commons.api.notification.model.NotificationInfo;
+
+import io.meeds.pwa.model.PwaNotificationDecision;
+import io.meeds.pwa.service.PwaUserPresenceService;
+
+/**
+ * Holds, or skips, the Push Notifications of users seen active in the portal
+ * recently, knowing that the notification is already displayed in the page
+ * notifications badge.
+ */
+@Component
+public class PresencePwaNotificationPolicy implements PwaNotificationPolicy {
+
+  @Autowired
+  private PwaUserPresenceService  pwaUserPresenceService;
+
+  @Value("${pwa.notifications.presence.decision:HOLD}")
+  private PwaNotificationDecision activeUserDecision;
+
+  @Override
+  public PwaNotificationDecision decide(NotificationInfo notification, String username) {
+    return pwaUserPresenceService.isActive(username) ? activeUserDecision : PwaNotificationDecision.SEND;
+  }
+
+}
@@ -18,6 +18,11 @@
  */
 package io.meeds.pwa.plugin;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.jsoup.Jsoup;
 
 import org.exoplatform.commons.api.notification.model.NotificationInfo;
@@ -29,6 +34,7 @@ import org.exoplatform.social.core.space.model.Space;
 import org.exoplatform.social.core.space.spi.SpaceService;
 
 import io.meeds.pwa.model.PwaNotificationMessage;
+import io.meeds.pwa.model.PwaNotificationPriority;
 
 @FunctionalInterface
 public interface PwaNotificationPlugin {
@@ -44,10 +50,66 @@ public interface PwaNotificationPlugin {
    */
   PwaNotificationMessage process(NotificationInfo notification, LocaleConfig localeConfig);
 
+  /**
+   * Converts multiple Web Notifications into Push Notifications using
+   * multiple locales at once, for example when sending a notification to
+   * recipients with different languages. This default implementation renders
+   * the notifications one by one, knowing that the entities retrieved through
+   * {@link PwaNotificationRenderContext} are retrieved once per batch. Plugins
+   * can override it in order to retrieve the entities shared by the
+   * notifications at once.
+   *
+   * @param notifications {@link List} of {@link NotificationInfo}
+   * @param localeConfigs {@link Collection} of {@link LocaleConfig} to use
+   * @return {@link Map} of rendered messages indexed by language, each
+   *         {@link List} having the same order as the notifications
+   */
+  default Map<String, List<PwaNotificationMessage>> process(List<NotificationInfo> notifications,
+                                                             Collection<LocaleConfig> localeConfigs) {
+    Map<String, List<PwaNotificationMessage>> messages = new HashMap<>();
+    localeConfigs.forEach(localeConfig -> messages.put(localeConfig.getLanguage(),
+                                                       notifications.stream()
+                                                                    .map(notification -> process(notification, localeConfig))
+                                                                    .toList()));
+    return messages;
+  }
+
   default String getId() {
     return "default";
   }
 
+  /**
+   * @return {@link PwaNotificationPriority} of the plugin notifications, used
+   *         to dispatch them first and to define the Push message urgency
+   */
+  default PwaNotificationPriority getPriority() {
+    return PwaNotificationPriority.NORMAL;
+  }
+
+  /**
+   * @return time, in seconds, during which the Push Service retains the plugin
+   *         notifications while the user device is offline, else -1 to use the
+   *         default one
+   */
+  default int getTtl() {
+    return -1;
+  }
+
+  /**
+   * Computes the collapse key of a notification, derived from its target
+   * object, for example the edited task or activity. It's sent as Web Push
+   * Topic, so that the Push Service keeps only the latest undelivered message
+   * having the same key, and used as notification tag, so that the device
+   * replaces the displayed notification.
+   *
+   * @param notification {@link NotificationInfo}
+   * @return collapse key, else null when the plugin notifications don't
+   *         supersede each other
+   */
+  default String getTopic(NotificationInfo notification) {
+    return null;
+  }
+
   default IdentityManager getIdentityManager() {
     throw new UnsupportedOperationException();
   }
@@ -57,15 +119,45 @@ public interface PwaNotificationPlugin {
   }
 
   default String getFullName(String username) {
-    Identity poster = getIdentityManager().getOrCreateUserIdentity(username);
+    Identity poster = getUserIdentity(username);
     return poster == null ? "" : poster.getProfile().getFullName();
   }
 
   default String getSpaceName(String id) {
-    Space space = getSpaceService().getSpaceById(id);
+    Space space = getSpace(id);
     return space == null ? "" : space.getDisplayName();
   }
 
+  /**
+   * @param username User name
+   * @return user {@link Identity}, memoized in the current
+   *         {@link PwaNotificationRenderContext}
+   */
+  default Identity getUserIdentity(String username) {
+    IdentityManager identityManager = getIdentityManager();
+    return PwaNotificationRenderContext.get("userIdentity", username, identityManager::getOrCreateUserIdentity);
+  }
+
+  /**
+   * @param identityId {@link Identity} technical identifier
+   * @return {@link Identity}, memoized in the current
+   *         {@link PwaNotificationRenderContext}
+   */
+  default Identity getIdentity(String identityId) {
+    IdentityManager identityManager = getIdentityManager();
+    return PwaNotificationRenderContext.get("identity", identityId, identityManager::getIdentity);
+  }
+
+  /**
+   * @param id {@link Space} technical identifier
+   * @return {@link Space}, memoized in the current
+   *         {@link PwaNotificationRenderContext}
+   */
+  default Space getSpace(String id) {
+    SpaceService spaceService = getSpaceService();
+    return PwaNotificationRenderContext.get("space", id, spaceService::getSpaceById);
+  }
+
   default String htmlToText(String html) {
     return html == null ? "" : Jsoup.parse(html).text();
   }
@@ -0,0 +1,232 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.plugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.exoplatform.commons.api.notification.model.NotificationInfo;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.services.resources.LocaleConfig;
+
+import io.meeds.pwa.model.PwaNotificationMessage;
+import io.meeds.pwa.model.PwaNotificationPriority;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * A registry of {@link PwaNotificationPlugin} indexed by plugin identifier,
+ * built once at startup, which counts the render calls, failures and duration
+ * of each plugin.
+ */
+@Component
+public class PwaNotificationPluginRegistry {
+
+  private static final Log                   LOG         = ExoLogger.getLogger(PwaNotificationPluginRegistry.class);
+
+  @Autowired
+  private DefaultPwaNotificationPlugin       defaultPwaNotificationPlugin;
+
+  @Autowired
+  private List<PwaNotificationPlugin>        plugins;
+
+  private Map<String, PwaNotificationPlugin> pluginsById = Collections.emptyMap();
+
+  private Map<String, PluginCounters>        counters    = Collections.emptyMap();
+
+  @PostConstruct
+  public void init() {
+    Map<String, PwaNotificationPlugin> registeredPlugins = new HashMap<>();
+    Map<String, PluginCounters> pluginCounters = new HashMap<>();
+    for (PwaNotificationPlugin plugin : plugins) {
+      PwaNotificationPlugin registeredPlugin = registeredPlugins.putIfAbsent(plugin.getId(), plugin);
+      if (registeredPlugin == null) {
+        pluginCounters.put(plugin.getId(), new PluginCounters());
+      } else {
+        LOG.warn("Duplicated PWA notification plugin identifier '{}', plugin {} is ignored in favor of {}",
+                 plugin.getId(),
+                 plugin.getClass().getName(),
+                 registeredPlugin.getClass().getName());
+      }
+    }
+    pluginCounters.putIfAbsent(defaultPwaNotificationPlugin.getId(), new PluginCounters());
+    pluginsById = Collections.unmodifiableMap(registeredPlugins);
+    counters = Collections.unmodifiableMap(pluginCounters);
+  }
+
+  /**
+   * @param pluginId Web Notification plugin identifier
+   * @return the {@link PwaNotificationPlugin} having the same identifier, else
+   *         the {@link DefaultPwaNotificationPlugin}
+   */
+  public PwaNotificationPlugin getPlugin(String pluginId) {
+    return pluginsById.getOrDefault(pluginId, defaultPwaNotificationPlugin);
+  }
+
+  /**
+   * @return the sorted list of registered plugin identifiers
+   */
+  public List<String> getPluginIds() {
+    return pluginsById.keySet().stream().sorted().toList();
+  }
+
+  /**
+   * Converts a Web Notification into a Push Notification using the plugin
+   * having the same identifier as the notification, within a
+   * {@link PwaNotificationRenderContext}.
+   *
+   * @param notification {@link NotificationInfo}
+   * @param localeConfig {@link LocaleConfig} of the user's language
+   * @return {@link PwaNotificationMessage}
+   */
+  public PwaNotificationMessage process(NotificationInfo notification, LocaleConfig localeConfig) {
+    PwaNotificationPlugin plugin = getPlugin(notification.getKey().getId());
+    PluginCounters pluginCounters = counters.get(plugin.getId());
+    long start = System.nanoTime();
+    try (PwaNotificationRenderContext context = PwaNotificationRenderContext.open()) {
+      return plugin.process(notification, localeConfig);
+    } catch (RuntimeException e) {
+      pluginCounters.failures.increment();
+      throw e;
+    } finally {
+      pluginCounters.renders.increment();
+      pluginCounters.duration.add(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Converts multiple Web Notifications into Push Notifications using
+   * multiple locales at once. The notifications are grouped by plugin and
+   * each plugin renders its notifications by batch, within a single
+   * {@link PwaNotificationRenderContext}. The messages of a plugin failing to
+   * render its notifications are null.
+   *
+   * @param notifications {@link List} of {@link NotificationInfo}
+   * @param localeConfigs {@link Collection} of {@link LocaleConfig} to use
+   * @return {@link Map} of rendered messages indexed by language, each
+   *         {@link List} having the same order as the notifications
+   */
+  public Map<String, List<PwaNotificationMessage>> process(List<NotificationInfo> notifications,
+                                                           Collection<LocaleConfig> localeConfigs) {
+    Map<PwaNotificationPlugin, List<Integer>> indexesByPlugin = new LinkedHashMap<>();
+    for (int i = 0; i < notifications.size(); i++) {
+      indexesByPlugin.computeIfAbsent(getPlugin(notifications.get(i).getKey().getId()), k -> new ArrayList<>()).add(i);
+    }
+    Map<String, PwaNotificationMessage[]> messages = new HashMap<>();
+    localeConfigs.forEach(localeConfig -> messages.put(localeConfig.getLanguage(),
+                                                       new PwaNotificationMessage[notifications.size()]));
+    try (PwaNotificationRenderContext context = PwaNotificationRenderContext.open()) {
+      indexesByPlugin.forEach((plugin, indexes) -> {
+        PluginCounters pluginCounters = counters.get(plugin.getId());
+        long start = System.nanoTime();
+        try {
+          plugin.process(indexes.stream().map(notifications::get).toList(), localeConfigs)
+                .forEach((language, pluginMessages) -> {
+                  for (int i = 0; i < indexes.size(); i++) {
+                    messages.get(language)[indexes.get(i)] = pluginMessages.get(i);
+                  }
+                });
+        } catch (RuntimeException e) {
+          pluginCounters.failures.increment();
+          LOG.warn("Error while rendering notifications of plugin {} by batch", plugin.getId(), e);
+        } finally {
+          pluginCounters.renders.add((long) indexes.size() * localeConfigs.size());
+          pluginCounters.duration.add(System.nanoTime() - start);
+        }
+      });
+    }
+    Map<String, List<PwaNotificationMessage>> result = new HashMap<>();
+    messages.forEach((language, languageMessages) -> result.put(language, Arrays.asList(languageMessages)));
+    return result;
+  }
+
+  public void handleAction(NotificationInfo notification, String action, String username) {
+    getPlugin(notification.getKey().getId()).handleAction(notification, action, username);
+  }
+
+  /**
+   * @param notification {@link NotificationInfo}
+   * @return {@link PwaNotificationPriority} of the plugin having the same
+   *         identifier as the notification
+   */
+  public PwaNotificationPriority getPriority(NotificationInfo notification) {
+    return getPlugin(notification.getKey().getId()).getPriority();
+  }
+
+  /**
+   * @param notification {@link NotificationInfo}
+   * @return Push message time to live, in seconds, of the plugin having the
+   *         same identifier as the notification, else -1 to use the default
+   *         one
+   */
+  public int getTtl(NotificationInfo notification) {
+    return getPlugin(notification.getKey().getId()).getTtl();
+  }
+
+  /**
+   * @param notification {@link NotificationInfo}
+   * @return collapse key of the notification computed by the plugin having
+   *         the same identifier, else null
+   */
+  public String getTopic(NotificationInfo notification) {
+    return getPlugin(notification.getKey().getId()).getTopic(notification);
+  }
+
+  /**
+   * @return the render statistics of the plugins used at least once, indexed
+   *         by plugin identifier
+   */
+  public Map<String, Object> getStatistics() {
+    Map<String, Object> statistics = new HashMap<>();
+    counters.forEach((pluginId, pluginCounters) -> {
+      long renders = pluginCounters.renders.sum();
+      if (renders > 0) {
+        statistics.put(pluginId,
+                       Map.of("renders", renders,
+                              "failures", pluginCounters.failures.sum(),
+                              "averageRenderTime",
+                              TimeUnit.NANOSECONDS.toMillis(pluginCounters.duration.sum() / renders)));
+      }
+    });
+    return statistics;
+  }
+
+  private static class PluginCounters {
+
+    private final LongAdder renders  = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder duration = new LongAdder();
+
+  }
+
+}
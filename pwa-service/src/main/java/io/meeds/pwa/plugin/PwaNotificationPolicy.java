@@ -0,0 +1,41 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.plugin;
+
+import org.exoplatform.commons.api.notification.model.NotificationInfo;
+
+import io.meeds.pwa.model.PwaNotificationDecision;
+
+/**
+ * A policy deciding whether a Push Notification is sent, postponed or skipped
+ * for a given recipient. Policies are Spring beans implementing this interface
+ * and are all evaluated before sending a notification.
+ */
+@FunctionalInterface
+public interface PwaNotificationPolicy {
+
+  /**
+   * @param notification {@link NotificationInfo} to send
+   * @param username recipient user name
+   * @return {@link PwaNotificationDecision}, null is considered as
+   *         {@link PwaNotificationDecision#SEND}
+   */
+  PwaNotificationDecision decide(NotificationInfo notification, String username);
+
+}
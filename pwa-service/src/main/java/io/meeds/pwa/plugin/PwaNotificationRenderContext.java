@@ -0,0 +1,90 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.plugin;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A context bound to the current thread during the rendering of one or
+ * multiple notifications, which memoizes the entities, such as activities,
+ * identities and spaces, retrieved by plugins. This avoids retrieving the
+ * same entity multiple times while rendering a notification, knowing that the
+ * context is discarded once the rendering finishes.
+ */
+public class PwaNotificationRenderContext implements AutoCloseable {
+
+  private static final ThreadLocal<PwaNotificationRenderContext> CURRENT_CONTEXT = new ThreadLocal<>();
+
+  private final Map<String, Object>                              values          = new HashMap<>();
+
+  private PwaNotificationRenderContext() {
+  }
+
+  /**
+   * Opens a render context for the current thread. When a context is already
+   * opened, a context which doesn't close it is returned, so that nested
+   * renderings share the outer context.
+   *
+   * @return {@link PwaNotificationRenderContext} to close once the rendering
+   *         finishes
+   */
+  public static PwaNotificationRenderContext open() {
+    PwaNotificationRenderContext context = new PwaNotificationRenderContext();
+    if (CURRENT_CONTEXT.get() == null) {
+      CURRENT_CONTEXT.set(context);
+    }
+    return context;
+  }
+
+  /**
+   * Retrieves an entity from the current render context, else loads it and
+   * memoizes it, including null values. When no context is opened, the entity
+   * is simply loaded.
+   *
+   * @param <T> entity type
+   * @param type entity type name, used with its identifier as memoization key
+   * @param id entity identifier
+   * @param loader function retrieving the entity by identifier
+   * @return the entity retrieved by the loader
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> T get(String type, String id, Function<String, T> loader) {
+    PwaNotificationRenderContext context = CURRENT_CONTEXT.get();
+    if (context == null) {
+      return loader.apply(id);
+    }
+    String key = type + "#" + id;
+    if (context.values.containsKey(key)) {
+      return (T) context.values.get(key);
+    }
+    T value = loader.apply(id);
+    context.values.put(key, value);
+    return value;
+  }
+
+  @Override
+  public void close() {
+    if (CURRENT_CONTEXT.get() == this) {
+      CURRENT_CONTEXT.remove();
+    }
+  }
+
+}
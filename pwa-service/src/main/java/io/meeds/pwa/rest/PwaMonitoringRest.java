@@ -0,0 +1,75 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.rest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.security.access.annotation.Secured;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import io.meeds.pwa.service.PwaNotificationService;
+import io.meeds.pwa.service.PwaPushDeliveryService;
+import io.meeds.pwa.service.PwaSubscriptionCleanupService;
+import io.meeds.pwa.service.PwaSubscriptionService;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+@RestController
+@RequestMapping("monitoring")
+@Tag(name = "monitoring", description = "Monitoring PWA Push Notifications sending")
+public class PwaMonitoringRest {
+
+  @Autowired
+  private PwaSubscriptionService        pwaSubscriptionService;
+
+  @Autowired
+  private PwaNotificationService        pwaNotificationService;
+
+  @Autowired
+  private PwaPushDeliveryService        pwaPushDeliveryService;
+
+  @Autowired
+  private PwaSubscriptionCleanupService pwaSubscriptionCleanupService;
+
+  @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+  @Secured("administrators")
+  @Operation(summary = "Retrieves PWA statistics",
+             description = "This will retrieve the PWA caches and Push messages sending statistics",
+             method = "GET")
+  @ApiResponses(value = {
+                          @ApiResponse(responseCode = "200", description = "Request fulfilled"),
+  })
+  public Map<String, Object> getStatistics() {
+    Map<String, Object> statistics = new HashMap<>();
+    statistics.putAll(pwaSubscriptionService.getStatistics());
+    statistics.putAll(pwaNotificationService.getStatistics());
+    statistics.putAll(pwaPushDeliveryService.getStatistics());
+    statistics.putAll(pwaSubscriptionCleanupService.getStatistics());
+    return statistics;
+  }
+
+}
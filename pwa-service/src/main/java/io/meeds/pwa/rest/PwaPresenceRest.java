@@ -0,0 +1,58 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.rest;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.access.annotation.Secured;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import io.meeds.pwa.service.PwaUserPresenceService;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+
+@RestController
+@RequestMapping("presence")
+@Tag(name = "presence", description = "Tracking users presence in the portal")
+public class PwaPresenceRest {
+
+  @Autowired
+  private PwaUserPresenceService pwaUserPresenceService;
+
+  @PutMapping
+  @Secured("users")
+  @ResponseStatus(HttpStatus.NO_CONTENT)
+  @Operation(summary = "Marks the current user as active",
+             description = "This will mark the current user as active in the portal, in order to hold its Push Notifications",
+             method = "PUT")
+  @ApiResponses(value = {
+                          @ApiResponse(responseCode = "204", description = "User presence updated"),
+  })
+  public void markActive(HttpServletRequest request) {
+    pwaUserPresenceService.markActive(request.getRemoteUser());
+  }
+
+}
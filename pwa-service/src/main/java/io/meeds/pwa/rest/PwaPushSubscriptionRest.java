@@ -32,6 +32,7 @@ import org.springframework.web.context.request.WebRequest;
 
 import io.meeds.pwa.model.UserPushSubscription;
 import io.meeds.pwa.service.PwaSubscriptionService;
+import io.meeds.pwa.service.PwaUserPresenceService;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -53,6 +54,9 @@ public class PwaPushSubscriptionRest {
   @Autowired
   private PwaSubscriptionService pwaSubscriptionService;
 
+  @Autowired
+  private PwaUserPresenceService pwaUserPresenceService;
+
   @PostMapping
   @Secured("users")
   @Operation(summary = "Create a new subscription",
@@ -68,6 +72,7 @@ public class PwaPushSubscriptionRest {
     subscription.setDeviceType(getDeviceType(request));
     pwaSubscriptionService.createSubscription(subscription,
                                               request.getRemoteUser());
+    pwaUserPresenceService.markActive(request.getRemoteUser());
   }
 
   @DeleteMapping
@@ -19,13 +19,29 @@
 package io.meeds.pwa.service;
 
 import java.security.KeyPair;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.protocol.HttpContext;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import org.exoplatform.commons.utils.MailUtils;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
 
 import io.meeds.pwa.storage.PwaNotificationStorage;
 
@@ -34,8 +50,30 @@ import nl.martijndwars.webpush.PushService;
 @Configuration
 public class PushServiceConfiguration {
 
+  private static final Log LOG = ExoLogger.getLogger(PushServiceConfiguration.class);
+
   @Value("${pwa.notifications.email:}")
-  private String email;
+  private String           email;
+
+  @Value("${pwa.notifications.http.maxConnectionsPerHost:20}")
+  private int              maxConnectionsPerHost;
+
+  /**
+   * Comma separated list of Push Service origins with their dedicated
+   * connection pool size, for example:
+   * https://fcm.googleapis.com=50,https://web.push.apple.com=20
+   */
+  @Value("${pwa.notifications.http.maxConnectionsPerOrigin:}")
+  private String           maxConnectionsPerOrigin;
+
+  @Value("${pwa.notifications.http.maxConnections:200}")
+  private int              maxConnections;
+
+  @Value("${pwa.notifications.http.keepAlive:60000}")
+  private long             keepAlive;
+
+  @Value("${pwa.notifications.http.timeout:10000}")
+  private int              timeout;
 
   @Bean
   public PushService getPushService(PwaNotificationStorage pwaNotificationStorage) throws Exception { // NOSONAR
@@ -45,6 +83,71 @@ public class PushServiceConfiguration {
     return pushService;
   }
 
+  /**
+   * @return a shared non-blocking HTTP client used to deliver Push messages.
+   *         Connections are pooled per Push Service origin and kept alive
+   *         between messages to avoid a TCP and TLS handshake per Push. The
+   *         number of in-flight requests per origin is capped by its pool
+   *         size, extra requests are queued without holding any thread.
+   * @throws IOReactorException when the I/O reactor can't be started
+   */
+  @Bean(destroyMethod = "close")
+  public CloseableHttpAsyncClient getPushHttpClient() throws IOReactorException {
+    IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                                                     .setConnectTimeout(timeout)
+                                                     .setSoTimeout(timeout)
+                                                     .setSoKeepAlive(true)
+                                                     .build();
+    PoolingNHttpClientConnectionManager connectionManager =
+                                                          new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig));
+    connectionManager.setMaxTotal(maxConnections);
+    connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+    getMaxConnectionsPerOrigin().forEach(connectionManager::setMaxPerRoute);
+
+    RequestConfig requestConfig = RequestConfig.custom()
+                                               .setConnectTimeout(timeout)
+                                               .setSocketTimeout(timeout)
+                                               .build();
+    CloseableHttpAsyncClient httpClient = HttpAsyncClients.custom()
+                                                          .useSystemProperties()
+                                                          .setConnectionManager(connectionManager)
+                                                          .setKeepAliveStrategy(this::getKeepAliveDuration)
+                                                          .setDefaultRequestConfig(requestConfig)
+                                                          .build();
+    httpClient.start();
+    return httpClient;
+  }
+
+  private long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+    long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+    return duration > 0 ? Math.min(duration, keepAlive) : keepAlive;
+  }
+
+  private Map<HttpRoute, Integer> getMaxConnectionsPerOrigin() {
+    Map<HttpRoute, Integer> poolSizes = new HashMap<>();
+    for (String originPoolSize : StringUtils.split(StringUtils.trimToEmpty(maxConnectionsPerOrigin), ',')) {
+      String origin = StringUtils.trim(StringUtils.substringBeforeLast(originPoolSize, "="));
+      String poolSize = StringUtils.trim(StringUtils.substringAfterLast(originPoolSize, "="));
+      if (StringUtils.isBlank(origin) || !StringUtils.isNumeric(poolSize)) {
+        LOG.warn("Ignore wrong Push Service pool size configuration '{}', expected format: https://origin=size",
+                 originPoolSize);
+      } else {
+        poolSizes.put(getRoute(origin), Integer.parseInt(poolSize));
+      }
+    }
+    return poolSizes;
+  }
+
+  private HttpRoute getRoute(String origin) {
+    HttpHost host = HttpHost.create(origin);
+    boolean secure = !StringUtils.equalsIgnoreCase(host.getSchemeName(), "http");
+    if (host.getPort() < 0) {
+      // Routes are computed with an explicit port by the HTTP client
+      host = new HttpHost(host.getHostName(), secure ? 443 : 80, host.getSchemeName());
+    }
+    return new HttpRoute(host, null, secure);
+  }
+
   private String getContactEmail() {
     if (StringUtils.isBlank(email)) {
       email = MailUtils.getSenderEmail();
@@ -18,16 +18,40 @@
  */
 package io.meeds.pwa.service;
 
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Queue;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -35,34 +59,40 @@ import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.exoplatform.commons.api.notification.model.NotificationInfo;
 import org.exoplatform.commons.api.notification.service.WebNotificationService;
 import org.exoplatform.commons.exception.ObjectNotFoundException;
-import org.exoplatform.portal.Constants;
 import org.exoplatform.services.listener.ListenerService;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
-import org.exoplatform.services.organization.OrganizationService;
-import org.exoplatform.services.organization.UserProfile;
 import org.exoplatform.services.resources.LocaleConfig;
 import org.exoplatform.services.resources.LocaleConfigService;
 import org.exoplatform.services.resources.ResourceBundleService;
 
 import io.meeds.pwa.model.PwaNotificationAction;
+import io.meeds.pwa.model.PwaNotificationDecision;
 import io.meeds.pwa.model.PwaNotificationMessage;
+import io.meeds.pwa.model.PwaNotificationPriority;
+import io.meeds.pwa.model.PwaOutboxEntry;
+import io.meeds.pwa.model.PwaPushMessageHeaders;
 import io.meeds.pwa.model.UserPushSubscription;
-import io.meeds.pwa.plugin.DefaultPwaNotificationPlugin;
-import io.meeds.pwa.plugin.PwaNotificationPlugin;
+import io.meeds.pwa.plugin.PwaNotificationPluginRegistry;
+import io.meeds.pwa.plugin.PwaNotificationPolicy;
+import io.meeds.pwa.service.PwaPushDeliveryService.PushServiceUnavailableException;
+import io.meeds.pwa.storage.PwaNotificationMessageStorage;
 import io.meeds.pwa.storage.PwaNotificationStorage;
+import io.meeds.pwa.storage.PwaOutboxStorage;
+import io.meeds.pwa.storage.PwaUserLanguageStorage;
+import io.meeds.social.util.JsonUtils;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
-import nl.martijndwars.webpush.Notification;
-import nl.martijndwars.webpush.PushService;
 
 @Service
 public class PwaNotificationService {
@@ -75,6 +105,12 @@ public class PwaNotificationService {
 
   public static final String           PWA_NOTIFICATION_MARK_READ_ACTION_LABEL = "pwa.notification.action.markAsRead";
 
+  public static final String           PWA_DIGEST_TITLE_LABEL                  = "pwa.notification.digest.title";
+
+  public static final String           PWA_DIGEST_ACTIVITY_TITLE_LABEL         = "pwa.notification.digest.activity.title";
+
+  public static final String           PWA_DIGEST_PLUGIN_TITLE_LABEL           = "pwa.notification.digest.%s.title";
+
   public static final String           EVENT_NOTIFICATION_SENT                 = "pwa.notificationSent";
 
   public static final String           EVENT_NOTIFICATION_RESPONSE_ERROR       = "pwa.notificationResponseError";
@@ -97,6 +133,12 @@ public class PwaNotificationService {
 
   public static final Random           RANDOM                                  = new Random();
 
+  private static final String          ACTIVITY_ID_PARAM                       = "activityId";
+
+  private static final String          PAYLOAD_VERSION_KEY                     = "version";
+
+  private static final int             PAYLOAD_VERSION                         = 2;
+
   private static final Log             LOG                                     =
                                            ExoLogger.getLogger(PwaNotificationService.class);
 
@@ -116,7 +158,7 @@ public class PwaNotificationService {
   private ListenerService              listenerService;
 
   @Autowired
-  private OrganizationService          organizationService;
+  private PwaUserLanguageStorage       pwaUserLanguageStorage;
 
   @Autowired
   private LocaleConfigService          localeConfigService;
@@ -125,10 +167,19 @@ public class PwaNotificationService {
   private ResourceBundleService        resourceBundleService;
 
   @Autowired
-  private DefaultPwaNotificationPlugin defaultPwaNotificationPlugin;
+  private PwaNotificationPluginRegistry pwaNotificationPluginRegistry;
+
+  @Autowired
+  private PwaPushDeliveryService       pwaPushDeliveryService;
+
+  @Autowired
+  private PwaOutboxStorage             pwaOutboxStorage;
+
+  @Autowired
+  private PwaNotificationMessageStorage pwaNotificationMessageStorage;
 
   @Autowired
-  private PushService                  pushService;
+  private List<PwaNotificationPolicy>  notificationPolicies;
 
   @Value("${pwa.notifications.enabled:true}")
   private boolean                      enabled;
@@ -136,6 +187,93 @@ public class PwaNotificationService {
   @Value("${pwa.notifications.pool.size:5}")
   private int                          poolSize;
 
+  @Value("${pwa.notifications.pool.queueCapacity:1000}")
+  private int                          poolQueueCapacity;
+
+  /**
+   * Maximum time, in milliseconds, a task submitted to the Push executor waits
+   * for a room in its queue before being rejected
+   */
+  @Value("${pwa.notifications.pool.offerTimeout:1000}")
+  private long                         poolOfferTimeout;
+
+  /**
+   * Maximum number of notifications waiting to be dispatched, beyond which
+   * the {@link OverflowPolicy} applies
+   */
+  @Value("${pwa.notifications.dispatch.queueCapacity:10000}")
+  private int                          dispatchQueueCapacity;
+
+  @Value("${pwa.notifications.dispatch.overflowPolicy:SPILL}")
+  private OverflowPolicy               dispatchOverflowPolicy;
+
+  /**
+   * Maximum time, in milliseconds, to wait for the queued Push messages to be
+   * sent when the server is stopped
+   */
+  @Value("${pwa.notifications.shutdown.drainTimeout:30000}")
+  private long                         drainTimeout;
+
+  @Value("${pwa.notifications.dispatch.minDelay:200}")
+  private long                         dispatchMinDelay;
+
+  @Value("${pwa.notifications.dispatch.maxDelay:3000}")
+  private long                         dispatchMaxDelay;
+
+  @Value("${pwa.notifications.outbox.pollInterval:5000}")
+  private long                         outboxPollInterval;
+
+  @Value("${pwa.notifications.outbox.batchSize:100}")
+  private int                          outboxBatchSize;
+
+  /**
+   * Interval, in milliseconds, at which the lease of the notifications being
+   * processed by the current node is renewed. It should remain lower than the
+   * outbox lease duration.
+   */
+  @Value("${pwa.notifications.outbox.leaseRenewInterval:20000}")
+  private long                         outboxLeaseRenewInterval;
+
+  /**
+   * Delay, in milliseconds, after which a notification which couldn't be sent
+   * since its Push Service is unavailable is claimed again from the outbox
+   */
+  @Value("${pwa.notifications.outbox.retryDelay:30000}")
+  private long                         outboxRetryDelay;
+
+  @Value("${pwa.notifications.fullPayload.enabled:false}")
+  private boolean                      fullPayloadEnabled;
+
+  @Value("${pwa.notifications.fullPayload.maxSize:3800}")
+  private int                          fullPayloadMaxSize;
+
+  @Value("${pwa.notifications.fanout.batchSize:50}")
+  private int                          fanoutBatchSize;
+
+  /**
+   * Time window, in milliseconds, in which the notifications of a user about
+   * the same activity, or else sent by the same plugin, are merged into a
+   * single summary notification.
+   */
+  @Value("${pwa.notifications.digest.window:30000}")
+  private long                         digestWindow;
+
+  @Value("${pwa.notifications.digest.enabled:false}")
+  private boolean                      digestEnabled;
+
+  /**
+   * Delay, in milliseconds, after which a notification held by a
+   * {@link PwaNotificationPolicy} is evaluated again
+   */
+  @Value("${pwa.notifications.hold.delay:30000}")
+  private long                         holdDelay;
+
+  /**
+   * Maximum number of times a notification is held, after which it's skipped
+   */
+  @Value("${pwa.notifications.hold.maxAttempts:10}")
+  private int                          holdMaxAttempts;
+
   @Value("${pwa.notifications.maxBodyLength:75}")
   private int                          maxBodyLength;
 
@@ -148,21 +286,99 @@ public class PwaNotificationService {
   @Value("${pwa.notifications.silent:false}")
   private boolean                      silent;
 
-  @Autowired
-  private List<PwaNotificationPlugin>  plugins;
+  private ScheduledExecutorService     scheduler;
+
+  private PwaPushExecutor              executor;
+
+  private Queue<PendingNotification>   dispatchQueue                           = new ConcurrentLinkedQueue<>();
+
+  private AtomicInteger                dispatchQueueSize                       = new AtomicInteger();
+
+  private AtomicBoolean                dispatchScheduled                       = new AtomicBoolean();
+
+  private volatile long                dispatchDelay;
+
+  private Set<PendingNotification>     heldNotifications                       = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Lease tokens of the notifications being processed by the current node,
+   * indexed by notification identifier
+   */
+  private Map<Long, String>            leasedNotifications                     = new ConcurrentHashMap<>();
+
+  private Set<CompletableFuture<Integer>> pendingResponses                     = ConcurrentHashMap.newKeySet();
 
-  private ScheduledExecutorService     executorService;
+  private LongAdder                    dispatchQueueOverflows                  = new LongAdder();
+
+  private volatile boolean             stopping;
+
+  private Map<DigestKey, NotificationDigest> notificationDigests = new ConcurrentHashMap<>();
 
   @PostConstruct
   public void init() {
     ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("PWA-Push-Notification-%d")
                                                             .build();
-    executorService = Executors.newScheduledThreadPool(poolSize, threadFactory);
+    executor = new PwaPushExecutor(poolSize, poolQueueCapacity, poolOfferTimeout, threadFactory);
+    scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("PWA-Push-Scheduler-%d")
+                                                                                     .build());
+    dispatchDelay = dispatchMinDelay;
+    scheduler.scheduleWithFixedDelay(() -> execute(this::pollOutbox),
+                                     outboxPollInterval,
+                                     outboxPollInterval,
+                                     TimeUnit.MILLISECONDS);
+    scheduler.scheduleWithFixedDelay(() -> execute(this::renewLeases),
+                                     outboxLeaseRenewInterval,
+                                     outboxLeaseRenewInterval,
+                                     TimeUnit.MILLISECONDS);
   }
 
+  /**
+   * Stops gracefully the Push Notifications sending: the queued notifications
+   * and digests are sent immediately, the held notifications are put back in
+   * the outbox to be sent by another node, then the responses of the Push
+   * messages being sent and the queued tasks are awaited until the drain
+   * timeout. The notifications which responses aren't received meanwhile
+   * remain leased in the outbox and are sent again by any node once their
+   * lease expires.
+   */
   @PreDestroy
   public void destroy() {
-    executorService.shutdown();
+    stopping = true;
+    scheduler.shutdownNow();
+    try {
+      heldNotifications.forEach(this::spill);
+      heldNotifications.clear();
+      flushDigests();
+      dispatch();
+      long deadline = System.currentTimeMillis() + drainTimeout;
+      awaitPendingResponses(drainTimeout);
+      if (!executor.drain(Math.max(0, deadline - System.currentTimeMillis()))) {
+        LOG.warn("Push notifications sending not completed after {}ms, {} tasks are interrupted",
+                 drainTimeout,
+                 executor.shutdownNow().size());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      executor.shutdownNow();
+    } catch (Exception e) {
+      LOG.warn("Error while stopping push notifications sending", e);
+      executor.shutdownNow();
+    }
+  }
+
+  private void awaitPendingResponses(long timeout) throws InterruptedException {
+    try {
+      CompletableFuture.allOf(pendingResponses.stream()
+                                              .map(future -> future.handle((count, error) -> null))
+                                              .toArray(CompletableFuture[]::new))
+                       .get(timeout, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      LOG.warn("{} Push messages responses not received after {}ms, their notifications are kept in outbox",
+               pendingResponses.size(),
+               timeout);
+    } catch (ExecutionException e) {
+      LOG.debug("Error while awaiting Push messages responses", e);
+    }
   }
 
   public PwaNotificationMessage getNotification(long webNotificationId, String username) throws ObjectNotFoundException,
@@ -170,18 +386,10 @@ public class PwaNotificationService {
     NotificationInfo notification = webNotificationService.getNotificationInfo(String.valueOf(webNotificationId));
     if (notification == null) {
       throw new ObjectNotFoundException(String.format("Notification with id %s doesn't exists", webNotificationId));
-    } else if (!StringUtils.equals(notification.getTo(), username)) {
+    } else if (!isRecipient(notification, username)) {
       throw new IllegalAccessException(String.format("Notification with id %s access denied", webNotificationId));
     }
-    String pluginId = notification.getKey().getId();
-    PwaNotificationPlugin notificationPlugin = plugins.stream()
-                                                      .filter(p -> StringUtils.equals(p.getId(), pluginId))
-                                                      .findFirst()
-                                                      .orElse(defaultPwaNotificationPlugin);
-    LocaleConfig localeConfig = getLocaleConfig(username);
-    PwaNotificationMessage notificationMessage = notificationPlugin.process(notification, localeConfig);
-    setDefaultNotificationMessageProperties(notificationMessage, notification, localeConfig);
-    return notificationMessage;
+    return renderNotification(notification, getLocaleConfig(username));
   }
 
   public void updateNotification(long webNotificationId, String action, String username) throws ObjectNotFoundException,
@@ -189,34 +397,79 @@ public class PwaNotificationService {
     NotificationInfo notification = webNotificationService.getNotificationInfo(String.valueOf(webNotificationId));
     if (notification == null) {
       throw new ObjectNotFoundException(String.format("Notification with id %s doesn't exists", webNotificationId));
-    } else if (!StringUtils.equals(notification.getTo(), username)) {
+    } else if (!isRecipient(notification, username)) {
       throw new IllegalAccessException(String.format("Notification with id %s access denied", webNotificationId));
     }
     if (StringUtils.equals(action, PWA_NOTIFICATION_MARK_READ_USER_ACTION)) {
       webNotificationService.markRead(String.valueOf(webNotificationId));
     } else {
-      String pluginId = notification.getKey().getId();
-      PwaNotificationPlugin notificationPlugin = plugins.stream()
-                                                        .filter(p -> StringUtils.equals(p.getId(), pluginId))
-                                                        .findFirst()
-                                                        .orElse(defaultPwaNotificationPlugin);
-      notificationPlugin.handleAction(notification, action, username);
+      pwaNotificationPluginRegistry.handleAction(notification, action, username);
     }
+    pwaNotificationMessageStorage.remove(webNotificationId);
   }
 
   /**
-   * Send a Push Notification to display to user device(s)
+   * Send a Push Notification to display to user device(s). The notification
+   * is stored in the outbox, leased by the current node, then added to a
+   * dispatch queue which coalesces the notifications of the same user,
+   * received in the same time window, into a single Push message. The
+   * notifications which aren't processed before the lease expiry, for example
+   * when the node is stopped, are sent by any node of the cluster.
    * 
    * @param webNotificationId
+   * @return {@link CompletableFuture} completed with the number of devices
+   *         which received the Push Notification, else null if PWA is
+   *         disabled
    */
-  public ScheduledFuture<?> create(long webNotificationId) { // NOSONAR
+  public CompletableFuture<Integer> create(long webNotificationId) {
     if (pwaManifestService.isPwaEnabled()) {
-      return executorService.schedule(() -> this.sendCreateNotification(webNotificationId), 1, TimeUnit.SECONDS);
+      try {
+        leasedNotifications.put(webNotificationId, pwaOutboxStorage.add(webNotificationId));
+      } catch (DataIntegrityViolationException e) {
+        LOG.debug("Push notification {} already in outbox, skip it", webNotificationId);
+        return CompletableFuture.completedFuture(0);
+      } catch (Exception e) {
+        LOG.warn("Error while storing push notification {} in outbox, send it without persisting it", webNotificationId, e);
+      }
+      CompletableFuture<Integer> future = new CompletableFuture<>();
+      enqueue(new PendingNotification(webNotificationId, future, 0, 0, null));
+      return future;
     } else {
       return null;
     }
   }
 
+  /**
+   * @return Push Notifications dispatching statistics
+   */
+  public Map<String, Object> getStatistics() {
+    Map<String, Object> statistics = new HashMap<>();
+    statistics.put("dispatchQueueSize", dispatchQueueSize.get());
+    statistics.put("dispatchDelay", dispatchDelay);
+    statistics.put("outboxSize", pwaOutboxStorage.count());
+    statistics.put("dispatchQueueOverflows", dispatchQueueOverflows.sum());
+    statistics.put("heldNotifications", heldNotifications.size());
+    statistics.put("pushExecutor", executor.getStatistics());
+    statistics.put("notificationMessagesCacheHits", pwaNotificationMessageStorage.getCacheHits());
+    statistics.put("notificationMessagesCacheMisses", pwaNotificationMessageStorage.getCacheMisses());
+    statistics.put("userLanguagesCacheHits", pwaUserLanguageStorage.getCacheHits());
+    statistics.put("userLanguagesCacheMisses", pwaUserLanguageStorage.getCacheMisses());
+    statistics.put("notificationDigests", notificationDigests.size());
+    statistics.put("digestedNotifications",
+                   notificationDigests.values().stream().mapToInt(digest -> digest.pendingNotifications.size()).sum());
+    statistics.put("notificationPluginIds", pwaNotificationPluginRegistry.getPluginIds());
+    statistics.put("notificationPlugins", pwaNotificationPluginRegistry.getStatistics());
+    return statistics;
+  }
+
+  /**
+   * @return true if Push Notifications are waiting to be dispatched or being
+   *         sent by the current node
+   */
+  public boolean isSending() {
+    return dispatchQueueSize.get() > 0 || executor.getActiveCount() > 0;
+  }
+
   /**
    * @return VAPID Public Key encoded using Base64url
    */
@@ -224,105 +477,1031 @@ public class PwaNotificationService {
     return pwaNotificationStorage.getVapidPublicKeyString();
   }
 
-  private int sendCreateNotification(Long webNotificationId) {
-    NotificationInfo notification = webNotificationService.getNotificationInfo(String.valueOf(webNotificationId));
-    int sentCount = sendNotification(notification, PWA_NOTIFICATION_OPEN_UI_ACTION);
-    if (sentCount > 0) {
-      listenerService.broadcast(PWA_NOTIFICATION_CREATED, webNotificationId, null);
+  private void pollOutbox() {
+    try {
+      // Claim only what the dispatch queue can hold, the remaining
+      // notifications are kept in the outbox
+      int limit = Math.min(outboxBatchSize, dispatchQueueCapacity - dispatchQueueSize.get());
+      if (limit > 0 && pwaManifestService.isPwaEnabled()) {
+        List<PwaOutboxEntry> outboxEntries = pwaOutboxStorage.claim(limit);
+        outboxEntries.forEach(outboxEntry -> leasedNotifications.put(outboxEntry.getNotificationId(),
+                                                                     outboxEntry.getLeaseToken()));
+        outboxEntries.forEach(outboxEntry -> enqueue(new PendingNotification(outboxEntry.getNotificationId(),
+                                                                             new CompletableFuture<>(),
+                                                                             0,
+                                                                             outboxEntry.getHolds(),
+                                                                             null)));
+      }
+    } catch (Exception e) {
+      LOG.warn("Error while claiming push notifications from outbox", e);
+    }
+  }
+
+  /**
+   * Renews the lease of the notifications being processed by the current node,
+   * since the dispatch, throttling, reattempt and digest delays can outlast
+   * the lease duration, in which case another node would send them again.
+   */
+  private void renewLeases() {
+    try {
+      pwaOutboxStorage.renew(new HashSet<>(leasedNotifications.values()));
+    } catch (Exception e) {
+      LOG.warn("Error while renewing push notifications outbox leases", e);
+    }
+  }
+
+  private void enqueue(PendingNotification pendingNotification) {
+    if (dispatchQueueSize.get() >= dispatchQueueCapacity) {
+      overflow(pendingNotification);
+    } else {
+      dispatchQueue.add(pendingNotification);
+      dispatchQueueSize.incrementAndGet();
+      scheduleDispatch();
+    }
+  }
+
+  private void overflow(PendingNotification pendingNotification) {
+    dispatchQueueOverflows.increment();
+    LOG.debug("Push notifications dispatch queue is full, apply overflow policy {} to notification {}",
+              dispatchOverflowPolicy,
+              pendingNotification.webNotificationId());
+    switch (dispatchOverflowPolicy) {
+    case CALLER_RUNS -> dispatchSafely(List.of(pendingNotification));
+    case DROP -> drop(pendingNotification);
+    default -> {
+      spill(pendingNotification);
+      pendingNotification.future().complete(0);
+    }
+    }
+  }
+
+  /**
+   * Drops the queued notification having the lowest priority when it's lower
+   * than the received notification one, else drops the received
+   * notification. The notifications which weren't dispatched yet have the
+   * {@link PwaNotificationPriority#NORMAL} priority, knowing that the
+   * priority is resolved once the notification is retrieved.
+   */
+  private void drop(PendingNotification pendingNotification) {
+    PendingNotification droppedNotification = pendingNotification;
+    for (PendingNotification queuedNotification : dispatchQueue) {
+      if (queuedNotification.effectivePriority().compareTo(droppedNotification.effectivePriority()) < 0) {
+        droppedNotification = queuedNotification;
+      }
+    }
+    if (droppedNotification != pendingNotification && dispatchQueue.remove(droppedNotification)) {
+      dispatchQueue.add(pendingNotification);
+      scheduleDispatch();
+    } else {
+      droppedNotification = pendingNotification;
+    }
+    LOG.debug("Push notification {} dropped from dispatch queue", droppedNotification.webNotificationId());
+    complete(List.of(droppedNotification), 0, null);
+  }
+
+  /**
+   * Puts back the notification in the outbox, without lease, in order to be
+   * claimed again once the dispatch queue is drained, by any node
+   */
+  private void spill(PendingNotification pendingNotification) {
+    String leaseToken = leasedNotifications.remove(pendingNotification.webNotificationId());
+    if (leaseToken == null) {
+      return;
+    }
+    try {
+      if (!pwaOutboxStorage.release(pendingNotification.webNotificationId(), leaseToken)) {
+        LOG.debug("Push notification {} claimed by another node meanwhile", pendingNotification.webNotificationId());
+      }
+    } catch (Exception e) {
+      LOG.warn("Error while putting back push notification {} in outbox", pendingNotification.webNotificationId(), e);
+    }
+  }
+
+  /**
+   * Puts back the notification in the outbox, to be claimed again by any node
+   * after the outbox retry delay
+   */
+  private void defer(PendingNotification pendingNotification) {
+    String leaseToken = leasedNotifications.remove(pendingNotification.webNotificationId());
+    try {
+      if (leaseToken != null
+          && !pwaOutboxStorage.defer(pendingNotification.webNotificationId(), leaseToken, outboxRetryDelay)) {
+        LOG.debug("Push notification {} claimed by another node meanwhile", pendingNotification.webNotificationId());
+      }
+    } catch (Exception e) {
+      LOG.warn("Error while putting back push notification {} in outbox", pendingNotification.webNotificationId(), e);
+    }
+    pendingNotification.future().complete(0);
+  }
+
+  private void scheduleDispatch() {
+    if (!stopping && dispatchScheduled.compareAndSet(false, true)) {
+      schedule(this::dispatch, dispatchDelay);
+    }
+  }
+
+  /**
+   * Schedules a task to run in the bounded executor after the given delay. A
+   * task rejected because the executor queue remains full is scheduled again
+   * after the maximum dispatch delay, so that the dispatching slows down
+   * without losing the notifications.
+   */
+  private void schedule(Runnable task, long delay) {
+    scheduler.schedule(() -> {
+      if (!execute(task) && !stopping) {
+        schedule(task, dispatchMaxDelay);
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @return true if the task was submitted to the executor, else false if it
+   *         was rejected
+   */
+  private boolean execute(Runnable task) {
+    try {
+      executor.execute(task);
+      return true;
+    } catch (RejectedExecutionException e) {
+      LOG.debug("Push task rejected by executor", e);
+      return false;
+    }
+  }
+
+  private void dispatch() {
+    List<PendingNotification> pendingNotifications = new ArrayList<>();
+    PendingNotification pendingNotification;
+    while ((pendingNotification = dispatchQueue.poll()) != null) {
+      pendingNotifications.add(pendingNotification);
+      dispatchQueueSize.decrementAndGet();
+    }
+    dispatchScheduled.set(false);
+    // Use a near zero delay when notifications come one by one and increase
+    // it while bursts are received to coalesce more notifications
+    dispatchDelay = pendingNotifications.size() > 1 ? Math.min(dispatchMaxDelay, dispatchDelay * 2) :
+                                                    Math.max(dispatchMinDelay, dispatchDelay / 2);
+    if (!dispatchQueue.isEmpty()) {
+      scheduleDispatch();
+    }
+    dispatchSafely(pendingNotifications);
+  }
+
+  private void dispatchSafely(List<PendingNotification> pendingNotifications) {
+    try {
+      dispatch(pendingNotifications);
+    } catch (Exception e) {
+      LOG.warn("Error while dispatching push notifications {}",
+               pendingNotifications.stream().map(PendingNotification::webNotificationId).toList(),
+               e);
+      pendingNotifications.forEach(p -> p.future().complete(0));
+    }
+  }
+
+  private void dispatch(List<PendingNotification> pendingNotifications) {
+    // Retrieve the notifications first, in order to dispatch them by
+    // descending priority, so that the high priority Push messages are sent
+    // before the other ones
+    List<PendingNotification> retrievedNotifications = new ArrayList<>();
+    Map<Long, NotificationInfo> notifications = new HashMap<>();
+    for (PendingNotification pendingNotification : pendingNotifications) {
+      NotificationInfo notification =
+                                    webNotificationService.getNotificationInfo(String.valueOf(pendingNotification.webNotificationId()));
+      if (notification == null && pendingNotification.attempts() == 0) {
+        // The notification may not be committed yet, reattempt once
+        enqueue(new PendingNotification(pendingNotification.webNotificationId(),
+                                        pendingNotification.future(),
+                                        1,
+                                        pendingNotification.holds(),
+                                        pendingNotification.priority()));
+      } else {
+        notifications.put(pendingNotification.webNotificationId(), notification);
+        retrievedNotifications.add(pendingNotification.withPriority(getPriority(notification)));
+      }
+    }
+    retrievedNotifications.sort(Comparator.comparing(PendingNotification::effectivePriority).reversed());
+
+    Map<String, List<PendingNotification>> userNotifications = new LinkedHashMap<>();
+    Map<String, List<NotificationInfo>> userNotificationInfos = new HashMap<>();
+    for (PendingNotification pendingNotification : retrievedNotifications) {
+      NotificationInfo notification = notifications.get(pendingNotification.webNotificationId());
+      if (notification == null || notification.getTo() == null) {
+        CompletableFuture<Integer> future = sendNotification(notification, PWA_NOTIFICATION_OPEN_UI_ACTION);
+        future.whenComplete((sentCount, error) -> complete(List.of(pendingNotification), sentCount, error));
+      } else if (pendingNotification.holds() > 0 && notification.isRead()) {
+        LOG.debug("Held push notification {} was read meanwhile, skip it", pendingNotification.webNotificationId());
+        complete(List.of(pendingNotification), 0, null);
+      } else if (!applyPolicies(pendingNotification, notification)) {
+        LOG.debug("Push notification {} held or skipped by policies", pendingNotification.webNotificationId());
+      } else if (digestEnabled && !stopping && addToDigest(pendingNotification, notification)) {
+        LOG.debug("Push notification {} held to be sent in a digest", pendingNotification.webNotificationId());
+      } else {
+        userNotifications.computeIfAbsent(notification.getTo(), k -> new ArrayList<>()).add(pendingNotification);
+        userNotificationInfos.computeIfAbsent(notification.getTo(), k -> new ArrayList<>()).add(notification);
+      }
+    }
+    userNotifications.forEach((username, notifications) -> {
+      CompletableFuture<Integer> future = sendNotification(userNotificationInfos.get(username),
+                                                           PWA_NOTIFICATION_OPEN_UI_ACTION,
+                                                           username);
+      future.whenComplete((sentCount, error) -> complete(notifications, sentCount, error));
+    });
+  }
+
+  /**
+   * Applies the {@link PwaNotificationPolicy} beans to a user notification. A
+   * notification held more than the maximum number of times is skipped,
+   * considering that the user has seen it meanwhile in the portal.
+   *
+   * @return true if the notification has to be sent, else false if it's held
+   *         or skipped
+   */
+  private boolean applyPolicies(PendingNotification pendingNotification, NotificationInfo notification) {
+    PwaNotificationDecision decision = getDecision(notification, notification.getTo());
+    if (decision == PwaNotificationDecision.SEND) {
+      return true;
+    } else if (decision == PwaNotificationDecision.HOLD && pendingNotification.holds() < holdMaxAttempts) {
+      hold(pendingNotification);
+    } else {
+      complete(List.of(pendingNotification), 0, null);
+    }
+    return false;
+  }
+
+  private PwaNotificationDecision getDecision(NotificationInfo notification, String username) {
+    PwaNotificationDecision decision = PwaNotificationDecision.SEND;
+    for (PwaNotificationPolicy notificationPolicy : notificationPolicies) {
+      try {
+        PwaNotificationDecision policyDecision = notificationPolicy.decide(notification, username);
+        if (policyDecision != null && policyDecision.compareTo(decision) > 0) {
+          decision = policyDecision;
+        }
+      } catch (Exception e) {
+        LOG.warn("Error while applying push notification policy {}, ignore it", notificationPolicy.getClass().getName(), e);
+      }
+    }
+    return decision;
+  }
+
+  /**
+   * Evaluates the notification again after the hold delay. The held
+   * notification is kept in the outbox without lease, so that it's claimed by
+   * another node, with its holds count, if the current node is stopped
+   * meanwhile, else it's claimed again by the current node when the delay
+   * elapses.
+   */
+  private void hold(PendingNotification pendingNotification) {
+    if (stopping) {
+      spill(pendingNotification);
+      pendingNotification.future().complete(0);
+      return;
+    }
+    long webNotificationId = pendingNotification.webNotificationId();
+    String leaseToken = leasedNotifications.remove(webNotificationId);
+    boolean persisted = leaseToken != null;
+    if (persisted && !holdInOutbox(webNotificationId, leaseToken, pendingNotification.holds() + 1)) {
+      // The lease expired and another node claimed the notification, or
+      // else it will be claimed once the lease expires
+      pendingNotification.future().complete(0);
+      return;
+    }
+    heldNotifications.add(pendingNotification);
+    schedule(() -> {
+      if (heldNotifications.remove(pendingNotification)) {
+        if (persisted && !reclaim(webNotificationId)) {
+          LOG.debug("Held push notification {} claimed by another node meanwhile", webNotificationId);
+          pendingNotification.future().complete(0);
+          return;
+        }
+        enqueue(new PendingNotification(pendingNotification.webNotificationId(),
+                                        pendingNotification.future(),
+                                        pendingNotification.attempts(),
+                                        pendingNotification.holds() + 1,
+                                        pendingNotification.priority()));
+      }
+    }, holdDelay);
+  }
+
+  private boolean holdInOutbox(long webNotificationId, String leaseToken, int holds) {
+    try {
+      if (pwaOutboxStorage.hold(webNotificationId, leaseToken, holds, holdDelay)) {
+        return true;
+      } else {
+        LOG.debug("Push notification {} claimed by another node meanwhile, skip holding it", webNotificationId);
+        return false;
+      }
+    } catch (Exception e) {
+      LOG.warn("Error while holding push notification {} in outbox", webNotificationId, e);
+      return false;
+    }
+  }
+
+  private boolean reclaim(long webNotificationId) {
+    try {
+      String leaseToken = pwaOutboxStorage.reclaim(webNotificationId);
+      if (leaseToken != null) {
+        leasedNotifications.put(webNotificationId, leaseToken);
+        return true;
+      } else {
+        return false;
+      }
+    } catch (Exception e) {
+      LOG.warn("Error while claiming again held push notification {} from outbox", webNotificationId, e);
+      return false;
     }
-    return sentCount;
   }
 
-  private int sendNotification(NotificationInfo notification, String action) {
+  /**
+   * Adds the notification to the digest of the user about the same activity or
+   * plugin. The first notification opens the digest time window and is sent
+   * immediately, while the next ones, received in the same window, are held
+   * to be sent in a single summary notification when the window ends.
+   *
+   * @return true if the notification is held, else false if it has to be sent
+   */
+  private boolean addToDigest(PendingNotification pendingNotification, NotificationInfo notification) {
+    DigestKey digestKey = new DigestKey(notification.getTo(), getDigestTag(notification));
+    // Computed atomically with the flush removal of the digest, the window
+    // end being scheduled outside of the remapping function
+    NotificationDigest openedDigest = new NotificationDigest(1);
+    NotificationDigest digest = notificationDigests.compute(digestKey, (key, currentDigest) -> {
+      if (currentDigest == null) {
+        currentDigest = openedDigest;
+      } else {
+        currentDigest.pendingNotifications.add(pendingNotification);
+        currentDigest.notifications.add(notification);
+      }
+      currentDigest.pluginIds.add(getPluginId(notification));
+      return currentDigest;
+    });
+    if (digest == openedDigest) {
+      scheduleDigestFlush(digestKey);
+      return false;
+    } else {
+      return true;
+    }
+  }
+
+  private void scheduleDigestFlush(DigestKey digestKey) {
+    schedule(() -> flushDigest(digestKey), digestWindow);
+  }
+
+  /**
+   * Sends the held notifications of all digests without waiting for the end
+   * of their time window
+   */
+  void flushDigests() {
+    new ArrayList<>(notificationDigests.keySet()).forEach(this::flushDigest);
+  }
+
+  private void flushDigest(DigestKey digestKey) {
+    NotificationDigest digest = notificationDigests.remove(digestKey);
+    if (digest == null || digest.pendingNotifications.isEmpty()) {
+      return;
+    }
+    int count = digest.displayedCount + digest.notifications.size();
+    if (!stopping) {
+      // Open a new window, so that a continuous flow of notifications is
+      // summarized once by window, each summary counting the notifications
+      // received in its own window
+      if (notificationDigests.putIfAbsent(digestKey, new NotificationDigest(0)) == null) {
+        scheduleDigestFlush(digestKey);
+      }
+    }
+    try {
+      sendDigest(digestKey, digest, count).whenComplete((sentCount,
+                                                         error) -> complete(digest.pendingNotifications, sentCount, error));
+    } catch (Exception e) {
+      complete(digest.pendingNotifications, 0, e);
+    }
+  }
+
+  /**
+   * Sends the last held notification with a summary title. The summary message
+   * is built apart from the cached notification message and sent inside the
+   * Push message payload, so that the notification keeps its own message when
+   * retrieved using REST endpoint. When the summary exceeds the maximum payload
+   * size, the notification is sent as is. Using the same tag as the
+   * notifications of the digest, the device replaces the previously displayed
+   * notification rather than stacking a new one.
+   */
+  private CompletableFuture<Integer> sendDigest(DigestKey digestKey, NotificationDigest digest, int count) {
+    NotificationInfo notification = digest.notifications.get(digest.notifications.size() - 1);
+    return sendNotification(List.of(notification),
+                            PWA_NOTIFICATION_OPEN_UI_ACTION,
+                            digestKey.username(),
+                            localeConfig -> getDigestPayload(digestKey, digest, count, notification, localeConfig));
+  }
+
+  private byte[] getDigestPayload(DigestKey digestKey,
+                                  NotificationDigest digest,
+                                  int count,
+                                  NotificationInfo notification,
+                                  LocaleConfig localeConfig) {
+    try {
+      PwaNotificationMessage digestMessage = processNotification(notification, localeConfig);
+      digestMessage.setBody(digestMessage.getTitle());
+      digestMessage.setTitle(getDigestTitle(digestKey, digest, count, localeConfig));
+      digestMessage.setTag(digestKey.tag());
+      byte[] payload = getJsonPayload(PWA_NOTIFICATION_OPEN_UI_ACTION,
+                                      List.of(Map.<String, Object> of("id", notification.getId(), "message", digestMessage)));
+      if (payload.length <= fullPayloadMaxSize) {
+        return payload;
+      } else {
+        LOG.debug("Push notifications digest size {} exceeds the maximum size, send last notification only", payload.length);
+      }
+    } catch (Exception e) {
+      LOG.warn("Error while rendering notifications digest {}, send last notification only", digestKey, e);
+    }
+    return getPayload(List.of(notification), PWA_NOTIFICATION_OPEN_UI_ACTION, localeConfig);
+  }
+
+  private String getDigestTitle(DigestKey digestKey, NotificationDigest digest, int count, LocaleConfig localeConfig) {
+    String title = null;
+    if (digest.pluginIds.size() == 1) {
+      title = resourceBundleService.getSharedString(String.format(PWA_DIGEST_PLUGIN_TITLE_LABEL,
+                                                                  digest.pluginIds.iterator().next()),
+                                                    localeConfig.getLocale());
+    }
+    if (StringUtils.isBlank(title) && StringUtils.startsWith(digestKey.tag(), ACTIVITY_ID_PARAM)) {
+      title = resourceBundleService.getSharedString(PWA_DIGEST_ACTIVITY_TITLE_LABEL, localeConfig.getLocale());
+    }
+    if (StringUtils.isBlank(title)) {
+      title = resourceBundleService.getSharedString(PWA_DIGEST_TITLE_LABEL, localeConfig.getLocale());
+    }
+    return StringUtils.isBlank(title) ? String.valueOf(count) : title.replace("{0}", String.valueOf(count));
+  }
+
+  private String getDigestTag(NotificationInfo notification) {
+    String activityId = notification.getValueOwnerParameter(ACTIVITY_ID_PARAM);
+    return StringUtils.isBlank(activityId) ? getPluginId(notification) : ACTIVITY_ID_PARAM + "-" + activityId;
+  }
+
+  private String getPluginId(NotificationInfo notification) {
+    return notification.getKey() == null ? "" : notification.getKey().getId();
+  }
+
+  private PwaNotificationPriority getPriority(NotificationInfo notification) {
+    PwaNotificationPriority priority = notification == null ? null : pwaNotificationPluginRegistry.getPriority(notification);
+    return priority == null ? PwaNotificationPriority.NORMAL : priority;
+  }
+
+  /**
+   * Computes the Web Push headers of a message sent for one or multiple
+   * notifications, using the highest priority and the longest time to live of
+   * their plugins, so that none of the notifications is delivered later or
+   * expires sooner than expected.
+   */
+  private PwaPushMessageHeaders getPushMessageHeaders(List<NotificationInfo> notifications, String topic) {
+    PwaNotificationPriority priority = PwaNotificationPriority.VERY_LOW;
+    int ttl = 0;
+    for (NotificationInfo notification : notifications) {
+      PwaNotificationPriority notificationPriority = getPriority(notification);
+      if (notificationPriority.compareTo(priority) > 0) {
+        priority = notificationPriority;
+      }
+      int notificationTtl = pwaNotificationPluginRegistry.getTtl(notification);
+      ttl = ttl < 0 || notificationTtl < 0 ? -1 : Math.max(ttl, notificationTtl);
+    }
+    return new PwaPushMessageHeaders(ttl, priority, topic);
+  }
+
+  /**
+   * @return the collapse key shared by the notifications, used as Push message
+   *         topic so that the Push Service replaces the undelivered message
+   *         having the same key, as the device does with the displayed one,
+   *         else null
+   */
+  private String getTopic(List<NotificationInfo> notifications) {
+    Set<String> collapseKeys = notifications.stream().map(this::getCollapseKey).collect(Collectors.toSet());
+    return collapseKeys.size() == 1 ? collapseKeys.iterator().next() : null;
+  }
+
+  /**
+   * @return the key of the notifications superseding each other: the digest
+   *         tag when digest is enabled, else the plugin topic derived from the
+   *         notification target object, else null
+   */
+  private String getCollapseKey(NotificationInfo notification) {
+    if (digestEnabled && notification.getTo() != null) {
+      return getDigestTag(notification);
+    }
+    String topic = pwaNotificationPluginRegistry.getTopic(notification);
+    return StringUtils.isBlank(topic) ? null : topic;
+  }
+
+  private void complete(List<PendingNotification> pendingNotifications, Integer sentCount, Throwable error) {
+    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    if (cause instanceof PushServiceUnavailableException) {
+      LOG.debug("Push notifications {} not sent since Push Service is unavailable, reattempt them in {}ms",
+                pendingNotifications.stream().map(PendingNotification::webNotificationId).toList(),
+                outboxRetryDelay);
+      pendingNotifications.forEach(this::defer);
+      return;
+    }
+    if (error != null) {
+      LOG.warn("Error while sending push notifications {}",
+               pendingNotifications.stream().map(PendingNotification::webNotificationId).toList(),
+               error);
+    }
+    int count = error != null || sentCount == null ? 0 : sentCount;
+    pendingNotifications.forEach(pendingNotification -> {
+      String leaseToken = leasedNotifications.remove(pendingNotification.webNotificationId());
+      try {
+        if (leaseToken != null && !pwaOutboxStorage.remove(pendingNotification.webNotificationId(), leaseToken)) {
+          LOG.debug("Push notification {} claimed by another node meanwhile", pendingNotification.webNotificationId());
+        }
+      } catch (Exception e) {
+        LOG.warn("Error while removing push notification {} from outbox", pendingNotification.webNotificationId(), e);
+      }
+      if (count > 0) {
+        listenerService.broadcast(PWA_NOTIFICATION_CREATED, pendingNotification.webNotificationId(), null);
+      }
+      pendingNotification.future().complete(count);
+    });
+  }
+
+  private CompletableFuture<Integer> sendNotification(NotificationInfo notification, String action) {
     if (notification == null) {
       LOG.warn("Can't send notification action {} since notification is null", action);
-      return 0;
+      return CompletableFuture.completedFuture(0);
     }
     String notificationId = notification.getId();
     String username = notification.getTo();
     if (username != null) {
-      return sendNotification(Long.parseLong(notificationId), action, username);
-    } else if (notification.getSendToUserIds() != null) {
-      return notification.getSendToUserIds()
-                         .stream()
-                         .map(user -> sendNotification(Long.parseLong(notificationId), action, username))
-                         .reduce(0, Integer::sum);
+      return sendNotification(List.of(notification), action, username);
+    } else if (CollectionUtils.isNotEmpty(notification.getSendToUserIds())) {
+      // Notifications sent to multiple recipients aren't held, only skipped
+      // for recipients for which a policy decides so
+      return sendNotification(notification,
+                              action,
+                              notification.getSendToUserIds()
+                                          .stream()
+                                          .filter(recipient -> getDecision(notification,
+                                                                           recipient) != PwaNotificationDecision.SKIP)
+                                          .toList()).thenApply(sentCounts -> {
+                                LOG.debug("Push notification {} sent to recipients devices {}", notificationId, sentCounts);
+                                return sentCounts.values().stream().mapToInt(Integer::intValue).sum();
+                              });
     } else {
-      return 0;
+      return CompletableFuture.completedFuture(0);
+    }
+  }
+
+  /**
+   * Sends a single Push message to user devices for one or multiple
+   * notifications.
+   *
+   * @param notifications Web Notifications
+   * @param action Push message action
+   * @param username recipient user name
+   * @return {@link CompletableFuture} completed with the number of devices
+   *         which received the message
+   */
+  private CompletableFuture<Integer> sendNotification(List<NotificationInfo> notifications, String action, String username) {
+    return sendNotification(notifications, action, username, localeConfig -> {
+      if (StringUtils.equals(action, PWA_NOTIFICATION_OPEN_UI_ACTION)) {
+        renderNotifications(notifications, Collections.singletonList(localeConfig));
+      }
+      return getPayload(notifications, action, localeConfig);
+    });
+  }
+
+  private CompletableFuture<Integer> sendNotification(List<NotificationInfo> notifications,
+                                                      String action,
+                                                      String username,
+                                                      Function<LocaleConfig, byte[]> payloadBuilder) {
+    List<UserPushSubscription> subscriptions = pwaSubscriptionService.getSubscriptions(username)
+                                                                     .stream()
+                                                                     .filter(this::isDeliverable)
+                                                                     .toList();
+    if (subscriptions.isEmpty()) {
+      return CompletableFuture.completedFuture(0);
     }
+    List<Long> notificationIds = notifications.stream().map(notification -> Long.parseLong(notification.getId())).toList();
+    byte[] payload = payloadBuilder.apply(getLocaleConfig(username));
+    PwaPushMessageHeaders headers = getPushMessageHeaders(notifications, getTopic(notifications));
+    Set<String> unavailableOrigins = ConcurrentHashMap.newKeySet();
+    return sum(subscriptions.stream()
+                            .map(subscription -> sendNotification(notificationIds,
+                                                                  action,
+                                                                  username,
+                                                                  subscription,
+                                                                  payload,
+                                                                  headers,
+                                                                  unavailableOrigins))
+                            .toList()).thenApply(sentCount -> checkAvailability(sentCount, unavailableOrigins));
   }
 
-  private int sendNotification(long notificationId, String action, String username) {
-    List<UserPushSubscription> subscriptions = pwaSubscriptionService.getSubscriptions(username);
-    return subscriptions.stream()
-                        .map(subscription -> {
-                          long start = System.currentTimeMillis();
-                          try {
-                            String payload = notificationId + ":" + action;
-                            HttpResponse httpResponse = sendPushMessage(subscription, payload.getBytes());
-                            StatusLine status = httpResponse.getStatusLine();
-                            if (status.getStatusCode() == 410) {
-                              // Outdated subscription
-                              try {
-                                pwaSubscriptionService.deleteSubscription(subscription.getId(), username, false);
-                              } finally {
-                                broadcastEvent(EVENT_OUTDATED_SUBSCRIPTION,
-                                               notificationId,
+  /**
+   * @return the number of devices which received the message, else fails
+   *         with {@link PushServiceUnavailableException} when no device
+   *         received it since their Push Services are unavailable, in which
+   *         case the message will be reattempted later
+   */
+  private int checkAvailability(int sentCount, Set<String> unavailableOrigins) {
+    if (sentCount == 0 && !unavailableOrigins.isEmpty()) {
+      throw new PushServiceUnavailableException(String.join(",", unavailableOrigins));
+    }
+    return sentCount;
+  }
+
+  /**
+   * Builds the Push message payload. The notifications are rendered at
+   * dispatch time, so that the user devices retrieve them from cache. When
+   * full payload is enabled, the rendered notifications are sent as JSON in
+   * the encrypted payload, so that the service worker displays them without
+   * requesting the server. Else, or when the rendered notifications exceed the
+   * maximum payload size, the service worker retrieves the notifications using
+   * REST endpoint: a single notification is sent with the legacy format
+   * 'id:action', understood by already installed service workers, while
+   * coalesced notifications are sent as a versioned JSON payload without
+   * messages.
+   */
+  private byte[] getPayload(List<NotificationInfo> notifications, String action, LocaleConfig localeConfig) {
+    if (StringUtils.equals(action, PWA_NOTIFICATION_OPEN_UI_ACTION)) {
+      try {
+        List<Map<String, Object>> messages = notifications.stream()
+                                                          .map(notification -> Map.<String, Object> of("id",
+                                                                                                       notification.getId(),
+                                                                                                       "message",
+                                                                                                       renderNotification(notification,
+                                                                                                                          localeConfig)))
+                                                          .toList();
+        if (fullPayloadEnabled) {
+          byte[] payload = getJsonPayload(action, messages);
+          if (payload.length <= fullPayloadMaxSize) {
+            return payload;
+          } else {
+            LOG.debug("Push message payload size {} exceeds the maximum size, send notification identifiers only",
+                      payload.length);
+          }
+        }
+      } catch (Exception e) {
+        LOG.warn("Error while rendering notifications {}, send notification identifiers only",
+                 notifications.stream().map(NotificationInfo::getId).toList(),
+                 e);
+      }
+    }
+    if (notifications.size() == 1) {
+      return (notifications.get(0).getId() + ":" + action).getBytes();
+    } else {
+      return getJsonPayload(action,
+                            notifications.stream()
+                                         .map(notification -> Map.<String, Object> of("id", notification.getId()))
+                                         .toList());
+    }
+  }
+
+  private byte[] getJsonPayload(String action, List<Map<String, Object>> notifications) {
+    return JsonUtils.toJsonString(Map.of(PAYLOAD_VERSION_KEY,
+                                         PAYLOAD_VERSION,
+                                         "action",
+                                         action,
+                                         "notifications",
+                                         notifications))
+                    .getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Sends a Push Notification to a list of recipients. The subscriptions and
+   * locales of all recipients are retrieved at once and the notification is
+   * rendered once per locale. The subscriptions are then grouped by Push
+   * Service origin. The origins are processed in parallel while the messages
+   * sent to the same origin are sent by batches in order to not flood its
+   * connections pool.
+   *
+   * @param notification Web Notification
+   * @param action Push message action
+   * @param usernames recipients user names
+   * @return {@link CompletableFuture} completed with the number of devices
+   *         which received the message, indexed by recipient
+   */
+  private CompletableFuture<Map<String, Integer>> sendNotification(NotificationInfo notification,
+                                                                   String action,
+                                                                   Collection<String> usernames) {
+    long notificationId = Long.parseLong(notification.getId());
+    Map<String, List<UserPushSubscription>> subscriptions = pwaSubscriptionService.getSubscriptions(usernames);
+    Map<String, byte[]> payloads = getPayloads(notification,
                                                action,
-                                               username,
-                                               subscription,
-                                               httpResponse,
-                                               start,
-                                               null);
-                              }
-                            } else if (status.getStatusCode() < 200 || status.getStatusCode() > 299) {
-                              broadcastEvent(EVENT_NOTIFICATION_RESPONSE_ERROR,
-                                             notificationId,
-                                             action,
-                                             username,
-                                             subscription,
-                                             httpResponse,
-                                             start,
-                                             null);
-                            } else {
-                              broadcastEvent(EVENT_NOTIFICATION_SENT,
-                                             notificationId,
-                                             action,
-                                             username,
-                                             subscription,
-                                             httpResponse,
-                                             start,
-                                             null);
-                              return 1;
-                            }
-                          } catch (Exception e) {
-                            LOG.warn("Error while sending push notification {} to user {}. Ignore reattempting and continue processing messages queue.",
-                                     notificationId,
-                                     username,
-                                     e);
-
-                            broadcastEvent(EVENT_NOTIFICATION_SENDING_ERROR,
-                                           notificationId,
-                                           action,
-                                           username,
-                                           subscription,
-                                           null,
-                                           start,
-                                           e.getMessage());
-                          }
-                          return 0;
-                        })
-                        .reduce(0, Integer::sum);
-  }
-
-  private HttpResponse sendPushMessage(UserPushSubscription sub, byte[] payload) throws Exception { // NOSONAR
-    Notification notification = new Notification(
-                                                 sub.getEndpoint(),
-                                                 sub.userPublicKey(),
-                                                 sub.authAsBytes(),
-                                                 payload);
-    // Send the notification
-    return pushService.send(notification);
+                                               subscriptions.entrySet()
+                                                            .stream()
+                                                            .filter(e -> !e.getValue().isEmpty())
+                                                            .map(Entry::getKey)
+                                                            .toList());
+    PwaPushMessageHeaders headers = getPushMessageHeaders(List.of(notification), getCollapseKey(notification));
+    Map<String, Integer> sentCounts = new ConcurrentHashMap<>();
+    Set<String> unavailableOrigins = ConcurrentHashMap.newKeySet();
+    Map<String, List<Entry<String, UserPushSubscription>>> subscriptionsByOrigin = new HashMap<>();
+    Map<UserPushSubscription, Integer> consecutiveFailures = new IdentityHashMap<>();
+    subscriptions.forEach((username, userSubscriptions) -> {
+      sentCounts.put(username, 0);
+      userSubscriptions.stream()
+                       .filter(this::isDeliverable)
+                       .forEach(subscription -> {
+                         consecutiveFailures.put(subscription, pwaSubscriptionService.getConsecutiveFailures(subscription));
+                         subscriptionsByOrigin.computeIfAbsent(subscription.origin(), k -> new ArrayList<>())
+                                              .add(Map.entry(username, subscription));
+                       });
+    });
+    // Send first to the subscriptions which are known to receive messages, so
+    // that the failing ones don't delay them when sent by batches
+    subscriptionsByOrigin.values()
+                         .forEach(originSubscriptions -> originSubscriptions.sort(Comparator.comparing(e -> consecutiveFailures.get(e.getValue()))));
+    return CompletableFuture.allOf(subscriptionsByOrigin.values()
+                                                        .stream()
+                                                        .map(originSubscriptions -> sendNotificationBatches(notificationId,
+                                                                                                            action,
+                                                                                                            originSubscriptions,
+                                                                                                            payloads,
+                                                                                                            headers,
+                                                                                                            sentCounts,
+                                                                                                            unavailableOrigins))
+                                                        .toArray(CompletableFuture[]::new))
+                            .thenApply(v -> {
+                              checkAvailability(sentCounts.values().stream().mapToInt(Integer::intValue).sum(),
+                                                unavailableOrigins);
+                              return sentCounts;
+                            });
+  }
+
+  private Map<String, byte[]> getPayloads(NotificationInfo notification, String action, Collection<String> usernames) {
+    Map<String, LocaleConfig> localeConfigs = getLocaleConfigs(usernames);
+    if (StringUtils.equals(action, PWA_NOTIFICATION_OPEN_UI_ACTION)) {
+      renderNotifications(List.of(notification), localeConfigs.values());
+    }
+    Map<String, byte[]> payloadsByLanguage = new HashMap<>();
+    Map<String, byte[]> payloads = new HashMap<>();
+    localeConfigs.forEach((username,
+                                         localeConfig) -> payloads.put(username,
+                                                                       payloadsByLanguage.computeIfAbsent(localeConfig.getLanguage(),
+                                                                                                          language -> getPayload(List.of(notification),
+                                                                                                                                 action,
+                                                                                                                                 localeConfig))));
+    return payloads;
+  }
+
+  private CompletableFuture<Void> sendNotificationBatches(long notificationId,
+                                                          String action,
+                                                          List<Entry<String, UserPushSubscription>> subscriptions,
+                                                          Map<String, byte[]> payloads,
+                                                          PwaPushMessageHeaders headers,
+                                                          Map<String, Integer> sentCounts,
+                                                          Set<String> unavailableOrigins) {
+    CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
+    for (List<Entry<String, UserPushSubscription>> batch : Lists.partition(subscriptions, fanoutBatchSize)) {
+      future = future.thenCompose(v -> sendNotificationBatch(notificationId,
+                                                             action,
+                                                             batch,
+                                                             payloads,
+                                                             headers,
+                                                             sentCounts,
+                                                             unavailableOrigins));
+    }
+    return future;
+  }
+
+  private CompletableFuture<Void> sendNotificationBatch(long notificationId,
+                                                        String action,
+                                                        List<Entry<String, UserPushSubscription>> batch,
+                                                        Map<String, byte[]> payloads,
+                                                        PwaPushMessageHeaders headers,
+                                                        Map<String, Integer> sentCounts,
+                                                        Set<String> unavailableOrigins) {
+    return CompletableFuture.allOf(batch.stream()
+                                        .map(e -> sendNotification(List.of(notificationId),
+                                                                   action,
+                                                                   e.getKey(),
+                                                                   e.getValue(),
+                                                                   payloads.get(e.getKey()),
+                                                                   headers,
+                                                                   unavailableOrigins).thenAccept(count -> sentCounts.merge(e.getKey(),
+                                                                                                                 count,
+                                                                                                                 Integer::sum)))
+                                        .toArray(CompletableFuture[]::new));
+  }
+
+  private CompletableFuture<Integer> sendNotification(List<Long> notificationIds,
+                                                      String action,
+                                                      String username,
+                                                      UserPushSubscription subscription,
+                                                      byte[] payload,
+                                                      PwaPushMessageHeaders headers,
+                                                      Set<String> unavailableOrigins) {
+    long start = System.currentTimeMillis();
+    // Handle the response outside the HTTP client I/O threads since it can
+    // involve storage operations and listeners. When sent in a virtual thread,
+    // the response is handled in the same thread.
+    Executor responseExecutor = pwaPushDeliveryService.isVirtualThreadMode() ? Runnable::run : executor;
+    CompletableFuture<Integer> future = pwaPushDeliveryService.send(subscription, payload, headers)
+                                                              .handleAsync((httpResponse,
+                                                                            error) -> handleResponse(notificationIds,
+                                                                                                     action,
+                                                                                                     username,
+                                                                                                     subscription,
+                                                                                                     httpResponse,
+                                                                                                     error,
+                                                                                                     start,
+                                                                                                     unavailableOrigins),
+                                                                           responseExecutor)
+                                                              .exceptionally(error -> {
+                                                                // The response handling was rejected by the
+                                                                // executor, the message isn't sent again since
+                                                                // it may have been delivered
+                                                                LOG.warn("Response of push notification {} to user {} not handled",
+                                                                         notificationIds,
+                                                                         username,
+                                                                         error);
+                                                                return 0;
+                                                              });
+    pendingResponses.add(future);
+    future.whenComplete((count, error) -> pendingResponses.remove(future));
+    return future;
+  }
+
+  private int handleResponse(List<Long> notificationIds, // NOSONAR
+                             String action,
+                             String username,
+                             UserPushSubscription subscription,
+                             HttpResponse httpResponse,
+                             Throwable error,
+                             long start,
+                             Set<String> unavailableOrigins) {
+    if (error != null) {
+      Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+      if (cause instanceof PushServiceUnavailableException unavailableException) {
+        unavailableOrigins.add(unavailableException.getOrigin());
+      }
+      handleSendingError(notificationIds, action, username, subscription, cause, start);
+      return 0;
+    }
+    try {
+      StatusLine status = httpResponse.getStatusLine();
+      if (status.getStatusCode() == 410) {
+        // Outdated subscription
+        try {
+          pwaSubscriptionService.deleteSubscription(subscription.getId(), username, false);
+        } finally {
+          broadcastEvent(EVENT_OUTDATED_SUBSCRIPTION,
+                         notificationIds,
+                         action,
+                         username,
+                         subscription,
+                         httpResponse,
+                         start,
+                         null);
+        }
+      } else if (status.getStatusCode() < 200 || status.getStatusCode() > 299) {
+        if (isSubscriptionError(status.getStatusCode())) {
+          pwaSubscriptionService.markFailed(subscription);
+        }
+        broadcastEvent(EVENT_NOTIFICATION_RESPONSE_ERROR,
+                       notificationIds,
+                       action,
+                       username,
+                       subscription,
+                       httpResponse,
+                       start,
+                       null);
+      } else {
+        pwaSubscriptionService.markDelivered(subscription, System.currentTimeMillis() - start);
+        broadcastEvent(EVENT_NOTIFICATION_SENT,
+                       notificationIds,
+                       action,
+                       username,
+                       subscription,
+                       httpResponse,
+                       start,
+                       null);
+        return 1;
+      }
+    } catch (Exception e) {
+      handleSendingError(notificationIds, action, username, subscription, e, start);
+    }
+    return 0;
+  }
+
+  /**
+   * @return true if the Push Service rejected the message because of the
+   *         subscription itself, else false for throttling and Push Service
+   *         errors which don't tell whether the subscription is still valid
+   */
+  private boolean isSubscriptionError(int statusCode) {
+    return statusCode >= 400 && statusCode < 500 && statusCode != 429;
+  }
+
+  /**
+   * @return true if a Push message can be sent to the subscription, else false
+   *         when it's suspended, in which case the skipped message is counted
+   */
+  private boolean isDeliverable(UserPushSubscription subscription) {
+    if (pwaSubscriptionService.isSuspended(subscription)) {
+      pwaSubscriptionService.markSkipped(subscription);
+      return false;
+    }
+    return true;
+  }
+
+  private void handleSendingError(List<Long> notificationIds,
+                                  String action,
+                                  String username,
+                                  UserPushSubscription subscription,
+                                  Throwable error,
+                                  long start) {
+    LOG.warn("Error while sending push notification {} to user {}. Ignore reattempting and continue processing messages queue.",
+             notificationIds,
+             username,
+             error);
+    if (error instanceof GeneralSecurityException) {
+      // The subscription keys can't be used to encrypt the message, while the
+      // other errors are related to the Push Service availability
+      pwaSubscriptionService.markFailed(subscription);
+    }
+
+    broadcastEvent(EVENT_NOTIFICATION_SENDING_ERROR,
+                   notificationIds,
+                   action,
+                   username,
+                   subscription,
+                   null,
+                   start,
+                   error.getMessage());
+  }
+
+  /**
+   * Renders the notification using the user locale. The rendered message
+   * doesn't depend on the user, thus it's cached by notification and locale to
+   * be shared by all recipients and devices.
+   */
+  private PwaNotificationMessage renderNotification(NotificationInfo notification, LocaleConfig localeConfig) {
+    long webNotificationId = Long.parseLong(notification.getId());
+    PwaNotificationMessage notificationMessage = pwaNotificationMessageStorage.get(webNotificationId,
+                                                                                   localeConfig.getLanguage());
+    if (notificationMessage == null) {
+      notificationMessage = processNotification(notification, localeConfig);
+      pwaNotificationMessageStorage.put(webNotificationId, localeConfig.getLanguage(), notificationMessage);
+    }
+    return notificationMessage;
+  }
+
+  /**
+   * Renders at once the notifications which aren't cached yet in the given
+   * locales, using plugins batch rendering, then caches them. The rendering
+   * errors are ignored, knowing that the notifications will be rendered one by
+   * one when not found in cache.
+   */
+  private void renderNotifications(List<NotificationInfo> notifications, Collection<LocaleConfig> localeConfigs) {
+    Map<String, LocaleConfig> localeConfigsByLanguage = new HashMap<>();
+    localeConfigs.stream()
+                 .filter(Objects::nonNull)
+                 .forEach(localeConfig -> localeConfigsByLanguage.putIfAbsent(localeConfig.getLanguage(), localeConfig));
+    List<NotificationInfo> notCachedNotifications = notifications.stream()
+                                                                 .filter(notification -> !isCached(notification,
+                                                                                                   localeConfigsByLanguage.keySet()))
+                                                                 .toList();
+    if (notCachedNotifications.isEmpty()) {
+      return;
+    }
+    try {
+      pwaNotificationPluginRegistry.process(notCachedNotifications, localeConfigsByLanguage.values())
+                                   .forEach((language, messages) -> {
+                                     LocaleConfig localeConfig = localeConfigsByLanguage.get(language);
+                                     for (int i = 0; i < messages.size(); i++) {
+                                       PwaNotificationMessage notificationMessage = messages.get(i);
+                                       if (notificationMessage != null) {
+                                         NotificationInfo notification = notCachedNotifications.get(i);
+                                         setDefaultNotificationMessageProperties(notificationMessage, notification, localeConfig);
+                                         pwaNotificationMessageStorage.put(Long.parseLong(notification.getId()),
+                                                                           language,
+                                                                           notificationMessage);
+                                       }
+                                     }
+                                   });
+    } catch (Exception e) {
+      LOG.debug("Error while rendering notifications {} by batch", notCachedNotifications, e);
+    }
+  }
+
+  private boolean isCached(NotificationInfo notification, Collection<String> languages) {
+    long webNotificationId = Long.parseLong(notification.getId());
+    return languages.stream().allMatch(language -> pwaNotificationMessageStorage.get(webNotificationId, language) != null);
+  }
+
+  private PwaNotificationMessage processNotification(NotificationInfo notification, LocaleConfig localeConfig) {
+    PwaNotificationMessage notificationMessage = pwaNotificationPluginRegistry.process(notification, localeConfig);
+    setDefaultNotificationMessageProperties(notificationMessage, notification, localeConfig);
+    return notificationMessage;
+  }
+
+  private boolean isRecipient(NotificationInfo notification, String username) {
+    return StringUtils.equals(notification.getTo(), username)
+           || (notification.getTo() == null
+               && notification.getSendToUserIds() != null
+               && notification.getSendToUserIds().contains(username));
+  }
+
+  private CompletableFuture<Integer> sum(List<CompletableFuture<Integer>> futures) {
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]))
+                            .thenApply(v -> futures.stream().mapToInt(CompletableFuture::join).sum());
   }
 
   private void setDefaultNotificationMessageProperties(PwaNotificationMessage notificationMessage,
@@ -344,7 +1523,8 @@ public class PwaNotificationService {
     notificationMessage.setLang(localeConfig.getLanguage());
     notificationMessage.setDir(localeConfig.getOrientation() == null || localeConfig.getOrientation().isLT() ? "ltr" : "rtl");
     if (StringUtils.isBlank(notificationMessage.getTag())) {
-      notificationMessage.setTag(notification.getId());
+      String collapseKey = getCollapseKey(notification);
+      notificationMessage.setTag(collapseKey == null ? notification.getId() : collapseKey);
     }
     if (StringUtils.length(notificationMessage.getBody()) > maxBodyLength) {
       notificationMessage.setBody(notificationMessage.getBody().substring(0, maxBodyLength) + "...");
@@ -355,33 +1535,105 @@ public class PwaNotificationService {
   }
 
   public LocaleConfig getLocaleConfig(String username) {
-    try {
-      UserProfile userProfile = organizationService.getUserProfileHandler().findUserProfileByName(username);
-      String language = userProfile == null ? null : userProfile.getAttribute(Constants.USER_LANGUAGE);
-      return language == null ? localeConfigService.getDefaultLocaleConfig() : localeConfigService.getLocaleConfig(language);
-    } catch (Exception e) {
-      LocaleConfig defaultLocaleConfig = localeConfigService.getDefaultLocaleConfig();
-      LOG.warn("Error retrieving user {} language, use default language {}", username, defaultLocaleConfig.getLanguage());
-      return defaultLocaleConfig;
-    }
+    return getLocaleConfigByLanguage(pwaUserLanguageStorage.get(username));
+  }
+
+  /**
+   * Resolves the locale of multiple users at once, using the cached users
+   * preferred language.
+   *
+   * @param usernames {@link Collection} of user names
+   * @return {@link Map} of {@link LocaleConfig} indexed by user name
+   */
+  public Map<String, LocaleConfig> getLocaleConfigs(Collection<String> usernames) {
+    Map<String, LocaleConfig> localeConfigs = new HashMap<>();
+    pwaUserLanguageStorage.get(usernames)
+                          .forEach((username, language) -> localeConfigs.put(username, getLocaleConfigByLanguage(language)));
+    return localeConfigs;
   }
 
+  private LocaleConfig getLocaleConfigByLanguage(String language) {
+    LocaleConfig localeConfig = language == null ? null : localeConfigService.getLocaleConfig(language);
+    return localeConfig == null ? localeConfigService.getDefaultLocaleConfig() : localeConfig;
+  }
+
+  /**
+   * Broadcasts the event for each notification sent in the Push message, so
+   * that listeners keep receiving a single notification identifier even when
+   * notifications are coalesced.
+   */
   private void broadcastEvent(String eventName, // NOSONAR
-                              long notificationId,
+                              List<Long> notificationIds,
                               String action,
                               String username,
                               UserPushSubscription subscription,
                               HttpResponse httpResponse,
                               long start,
                               String errorMessage) {
-    Map<String, Object> params = new HashMap<>();
-    params.put(EVENT_SUBSCRIPTION_PARAM_NAME, subscription);
-    params.put(EVENT_ERROR_PARAM_NAME, errorMessage);
-    params.put(EVENT_ACTION_PARAM_NAME, action);
-    params.put(EVENT_DURATION_PARAM_NAME, (System.currentTimeMillis() - start));
-    params.put(EVENT_NOTIFICATION_ID_PARAM_NAME, notificationId);
-    params.put(EVENT_HTTP_RESPONSE_PARAM_NAME, httpResponse);
-    listenerService.broadcast(eventName, username, params);
+    long duration = System.currentTimeMillis() - start;
+    for (Long notificationId : notificationIds) {
+      Map<String, Object> params = new HashMap<>();
+      params.put(EVENT_SUBSCRIPTION_PARAM_NAME, subscription);
+      params.put(EVENT_ERROR_PARAM_NAME, errorMessage);
+      params.put(EVENT_ACTION_PARAM_NAME, action);
+      params.put(EVENT_DURATION_PARAM_NAME, duration);
+      params.put(EVENT_NOTIFICATION_ID_PARAM_NAME, notificationId);
+      params.put(EVENT_HTTP_RESPONSE_PARAM_NAME, httpResponse);
+      listenerService.broadcast(eventName, username, params);
+    }
+  }
+
+
+  private record PendingNotification(long webNotificationId,
+                                     CompletableFuture<Integer> future,
+                                     int attempts,
+                                     int holds,
+                                     PwaNotificationPriority priority) {
+
+    private PendingNotification withPriority(PwaNotificationPriority newPriority) {
+      return new PendingNotification(webNotificationId, future, attempts, holds, newPriority);
+    }
+
+    private PwaNotificationPriority effectivePriority() {
+      return priority == null ? PwaNotificationPriority.NORMAL : priority;
+    }
+  }
+
+  private record DigestKey(String username, String tag) {
+  }
+
+  /**
+   * Policy applied to the notifications received while the dispatch queue is
+   * full
+   */
+  public enum OverflowPolicy {
+    /**
+     * Keep the notification in the persistent outbox, to be claimed again once
+     * the queue is drained
+     */
+    SPILL,
+    /**
+     * Don't send the queued notification having the lowest priority, or else
+     * the received notification
+     */
+    DROP,
+    /** Dispatch the notification in the caller thread */
+    CALLER_RUNS;
+  }
+
+  private static class NotificationDigest {
+
+    private final int                       displayedCount;
+
+    private final Set<String>               pluginIds            = new HashSet<>();
+
+    private final List<PendingNotification> pendingNotifications = new ArrayList<>();
+
+    private final List<NotificationInfo>    notifications        = new ArrayList<>();
+
+    private NotificationDigest(int displayedCount) {
+      this.displayedCount = displayedCount;
+    }
   }
 
 }
@@ -0,0 +1,812 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.service;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.meeds.pwa.model.PwaNotificationPriority;
+import io.meeds.pwa.model.PwaPushMessageHeaders;
+import io.meeds.pwa.model.UserPushSubscription;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import nl.martijndwars.webpush.Encoding;
+import nl.martijndwars.webpush.Notification;
+import nl.martijndwars.webpush.PushService;
+import nl.martijndwars.webpush.Urgency;
+
+/**
+ * Delivers encrypted Push messages to Push Services without blocking the
+ * caller thread. The {@link PushService} is only used to encrypt and sign the
+ * request while the HTTP exchange is made using a shared non-blocking client.
+ * The messages sent to each Push Service origin are rate limited and the
+ * throttled or failing requests are reattempted with an exponential backoff.
+ * A circuit breaker per origin fails fast the messages sent to an unavailable
+ * Push Service in order to not slow down the messages sent to other ones. In
+ * {@link DispatchMode#VIRTUAL} mode, each message is sent in a dedicated
+ * virtual thread, the concurrency being bounded by a semaphore per origin
+ * rather than by threads count.
+ */
+@Service
+public class PwaPushDeliveryService {
+
+  private static final Pattern              TOPIC_PATTERN    = Pattern.compile("[A-Za-z0-9_-]{1,32}");
+
+  @Autowired
+  private PwaSubscriptionService            pwaSubscriptionService;
+
+  @Autowired
+  private PushService                       pushService;
+
+  @Autowired
+  private CloseableHttpAsyncClient          pushHttpClient;
+
+  /**
+   * Default time, in seconds, during which the Push Service retains a message
+   * while the user device is offline
+   */
+  @Value("${pwa.notifications.ttl:2419200}")
+  private int                               defaultTtl;
+
+  @Value("${pwa.notifications.retry.maxAttempts:3}")
+  private int                               retryMaxAttempts;
+
+  @Value("${pwa.notifications.retry.initialDelay:1000}")
+  private long                              retryInitialDelay;
+
+  @Value("${pwa.notifications.retry.maxDelay:60000}")
+  private long                              retryMaxDelay;
+
+  @Value("${pwa.notifications.origin.rate:200}")
+  private double                            originRate;
+
+  @Value("${pwa.notifications.origin.burst:500}")
+  private int                               originBurst;
+
+  /**
+   * Maximum delay, in milliseconds, a message waits for the throttling of its
+   * Push Service origin, beyond which it fails as unavailable to be sent again
+   * later rather than accumulating throttling delays
+   */
+  @Value("${pwa.notifications.origin.maxThrottleDelay:30000}")
+  private long                              originMaxThrottleDelay;
+
+  /**
+   * Number of threads encrypting the messages which are sent after a
+   * throttling or reattempt delay, so that the delivery scheduler thread only
+   * triggers them
+   */
+  @Value("${pwa.notifications.encryption.poolSize:2}")
+  private int                               encryptionPoolSize;
+
+  @Value("${pwa.notifications.circuitBreaker.windowSize:50}")
+  private int                               circuitBreakerWindowSize;
+
+  @Value("${pwa.notifications.circuitBreaker.minimumCalls:20}")
+  private int                               circuitBreakerMinimumCalls;
+
+  @Value("${pwa.notifications.circuitBreaker.failureRateThreshold:50}")
+  private int                               circuitBreakerFailureRateThreshold;
+
+  @Value("${pwa.notifications.circuitBreaker.openDuration:30000}")
+  private long                              circuitBreakerOpenDuration;
+
+  @Value("${pwa.notifications.circuitBreaker.halfOpenProbes:3}")
+  private int                               circuitBreakerHalfOpenProbes;
+
+  @Value("${pwa.notifications.dispatch.mode:POOL}")
+  private DispatchMode                      dispatchMode;
+
+  /**
+   * Maximum number of messages sent concurrently to the same Push Service
+   * origin in {@link DispatchMode#VIRTUAL} mode. It should be aligned with the
+   * HTTP connections pool size of the origin, else the requests wait for a
+   * connection.
+   */
+  @Value("${pwa.notifications.origin.maxConcurrency:100}")
+  private int                               originMaxConcurrency;
+
+  @Value("${pwa.notifications.shutdown.drainTimeout:30000}")
+  private long                              drainTimeout;
+
+  private Map<String, OriginThrottle>       originThrottles  = new ConcurrentHashMap<>();
+
+  private Map<String, OriginCircuitBreaker> circuitBreakers  = new ConcurrentHashMap<>();
+
+  private Map<String, Semaphore>            originSemaphores = new ConcurrentHashMap<>();
+
+  private AtomicLong                        retriesCount     = new AtomicLong();
+
+  private ScheduledExecutorService          scheduler;
+
+  private ExecutorService                   encryptionExecutor;
+
+  private ExecutorService                   virtualThreadExecutor;
+
+  @PostConstruct
+  public void init() {
+    scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("PWA-Push-Delivery-%d")
+                                                                                     .build());
+    encryptionExecutor = Executors.newFixedThreadPool(encryptionPoolSize,
+                                                      new ThreadFactoryBuilder().setNameFormat("PWA-Push-Encryption-%d")
+                                                                                .build());
+    if (isVirtualThreadMode()) {
+      virtualThreadExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual()
+                                                                       .name("PWA-Push-Virtual-", 0)
+                                                                       .factory());
+    }
+  }
+
+  @PreDestroy
+  public void destroy() {
+    scheduler.shutdown();
+    encryptionExecutor.shutdown();
+    if (virtualThreadExecutor != null) {
+      virtualThreadExecutor.shutdown();
+      try {
+        virtualThreadExecutor.awaitTermination(drainTimeout, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * @return true if the messages are sent in virtual threads, in which case
+   *         the returned {@link CompletableFuture} are completed in a virtual
+   *         thread which can be used to process the response
+   */
+  public boolean isVirtualThreadMode() {
+    return dispatchMode == DispatchMode.VIRTUAL;
+  }
+
+  /**
+   * Sends a Push message to a user device asynchronously
+   *
+   * @param subscription {@link UserPushSubscription} of the user device
+   * @param payload message payload to encrypt and send
+   * @return {@link CompletableFuture} completed with the Push Service
+   *         {@link HttpResponse} or exceptionally when the message couldn't be
+   *         sent
+   */
+  public CompletableFuture<HttpResponse> send(UserPushSubscription subscription, byte[] payload) {
+    return send(subscription, payload, null);
+  }
+
+  /**
+   * Sends a Push message to a user device asynchronously
+   *
+   * @param subscription {@link UserPushSubscription} of the user device
+   * @param payload message payload to encrypt and send
+   * @param headers {@link PwaPushMessageHeaders} of the message, null to use
+   *          the default ones
+   * @return {@link CompletableFuture} completed with the Push Service
+   *         {@link HttpResponse} or exceptionally when the message couldn't be
+   *         sent
+   */
+  public CompletableFuture<HttpResponse> send(UserPushSubscription subscription,
+                                              byte[] payload,
+                                              PwaPushMessageHeaders headers) {
+    CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+    if (isVirtualThreadMode()) {
+      virtualThreadExecutor.execute(() -> sendBlocking(subscription, payload, headers, future));
+    } else {
+      send(subscription, payload, headers, future, 0);
+    }
+    return future;
+  }
+
+  /**
+   * @return Push messages delivery statistics
+   */
+  public Map<String, Object> getStatistics() {
+    long now = System.currentTimeMillis();
+    Map<String, Object> origins = new HashMap<>();
+    circuitBreakers.forEach((origin, circuitBreaker) -> origins.put(origin, circuitBreaker.getStatistics()));
+    Map<String, Object> inFlightMessages = new HashMap<>();
+    originSemaphores.forEach((origin, semaphore) -> inFlightMessages.put(origin,
+                                                                         originMaxConcurrency - semaphore.availablePermits()));
+    return Map.of("deliveryRetries", retriesCount.get(),
+                  "throttledOrigins", originThrottles.values().stream().filter(t -> t.isPaused(now)).count(),
+                  "origins", origins,
+                  "dispatchMode", dispatchMode.name(),
+                  "inFlightMessages", inFlightMessages);
+  }
+
+  private void send(UserPushSubscription subscription,
+                    byte[] payload,
+                    PwaPushMessageHeaders headers,
+                    CompletableFuture<HttpResponse> future,
+                    int attempt) {
+    long delay;
+    try {
+      delay = reserve(subscription);
+    } catch (PushServiceUnavailableException e) {
+      future.completeExceptionally(e);
+      return;
+    }
+    if (delay > 0) {
+      scheduler.schedule(() -> runAsync(() -> execute(subscription, payload, headers, future, attempt), future),
+                         delay,
+                         TimeUnit.MILLISECONDS);
+    } else {
+      execute(subscription, payload, headers, future, attempt);
+    }
+  }
+
+  /**
+   * Sends a Push message in the current virtual thread, which blocks while
+   * waiting for the throttling and reattempt delays and for the Push Service
+   * response. A concurrency permit of the origin is only held while waiting
+   * for the response.
+   */
+  private void sendBlocking(UserPushSubscription subscription,
+                            byte[] payload,
+                            PwaPushMessageHeaders headers,
+                            CompletableFuture<HttpResponse> future) {
+    try {
+      future.complete(executeBlocking(subscription, payload, headers));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      future.completeExceptionally(e);
+    } catch (ExecutionException e) {
+      future.completeExceptionally(e.getCause() == null ? e : e.getCause());
+    } catch (Exception e) {
+      future.completeExceptionally(e);
+    }
+  }
+
+  private HttpResponse executeBlocking(UserPushSubscription subscription,
+                                       byte[] payload,
+                                       PwaPushMessageHeaders headers) throws Exception { // NOSONAR
+    int attempt = 0;
+    while (true) {
+      long delay = reserve(subscription);
+      if (delay > 0) {
+        Thread.sleep(delay);
+      }
+      OriginCircuitBreaker circuitBreaker = acquireCircuit(subscription);
+      HttpPost httpPost = preparePost(subscription, payload, headers, circuitBreaker);
+      long start = System.currentTimeMillis();
+      long retryDelay;
+      try {
+        HttpResponse httpResponse = waitResponse(subscription, httpPost);
+        retryDelay = handleResponse(subscription, circuitBreaker, start, attempt, httpResponse);
+        if (retryDelay < 0) {
+          return httpResponse;
+        }
+      } catch (ExecutionException e) {
+        retryDelay = handleError(subscription, circuitBreaker, start, attempt, e.getCause());
+        if (retryDelay < 0) {
+          throw e;
+        }
+      } catch (CancellationException | InterruptedException e) {
+        handleError(subscription, circuitBreaker, start, attempt, e);
+        throw e;
+      }
+      Thread.sleep(retryDelay);
+      attempt++;
+    }
+  }
+
+  /**
+   * Sends the request and waits for the Push Service response while holding a
+   * concurrency permit of the origin
+   */
+  private HttpResponse waitResponse(UserPushSubscription subscription,
+                                    HttpPost httpPost) throws InterruptedException, ExecutionException {
+    Semaphore semaphore = getOriginSemaphore(subscription);
+    semaphore.acquire();
+    try {
+      return pushHttpClient.execute(httpPost, null).get();
+    } finally {
+      semaphore.release();
+    }
+  }
+
+  /**
+   * Prepares the encrypted Push message request, releasing the acquired
+   * circuit breaker call when the message can't be encrypted, since it isn't
+   * related to the Push Service availability
+   */
+  private HttpPost preparePost(UserPushSubscription subscription,
+                               byte[] payload,
+                               PwaPushMessageHeaders headers,
+                               OriginCircuitBreaker circuitBreaker) throws Exception { // NOSONAR
+    try {
+      return preparePost(subscription, payload, headers);
+    } catch (Exception e) {
+      circuitBreaker.release();
+      throw e;
+    }
+  }
+
+  private HttpPost preparePost(UserPushSubscription subscription,
+                               byte[] payload,
+                               PwaPushMessageHeaders headers) throws Exception { // NOSONAR
+    Notification notification = new Notification(subscription.getEndpoint(),
+                                                  pwaSubscriptionService.getPublicKey(subscription),
+                                                  pwaSubscriptionService.getAuth(subscription),
+                                                  payload,
+                                                  headers == null || headers.getTtl() < 0 ? defaultTtl : headers.getTtl(),
+                                                  headers == null ? null : getUrgency(headers.getPriority()),
+                                                  headers == null ? null : getTopic(headers.getTopic()));
+    return pushService.preparePost(notification, Encoding.AES128GCM);
+  }
+
+  private Urgency getUrgency(PwaNotificationPriority priority) {
+    if (priority == null) {
+      return null;
+    }
+    return switch (priority) {
+    case VERY_LOW -> Urgency.VERY_LOW;
+    case LOW -> Urgency.LOW;
+    case HIGH -> Urgency.HIGH;
+    default -> Urgency.NORMAL;
+    };
+  }
+
+  /**
+   * @return the topic if it's made of at most 32 URL-safe Base64 characters as
+   *         required by Web Push protocol, else its MD5 hex digest
+   */
+  private String getTopic(String topic) {
+    if (StringUtils.isBlank(topic)) {
+      return null;
+    }
+    return TOPIC_PATTERN.matcher(topic).matches() ? topic : DigestUtils.md5Hex(topic);
+  }
+
+  /**
+   * Runs a task triggered by the delivery scheduler in the encryption
+   * executor, so that the scheduler thread isn't used to encrypt messages
+   */
+  private void runAsync(Runnable task, CompletableFuture<HttpResponse> future) {
+    try {
+      encryptionExecutor.execute(task);
+    } catch (RejectedExecutionException e) {
+      future.completeExceptionally(e);
+    }
+  }
+
+  private void execute(UserPushSubscription subscription,
+                       byte[] payload,
+                       PwaPushMessageHeaders headers,
+                       CompletableFuture<HttpResponse> future,
+                       int attempt) {
+    OriginCircuitBreaker circuitBreaker;
+    HttpPost httpPost;
+    try {
+      circuitBreaker = acquireCircuit(subscription);
+      httpPost = preparePost(subscription, payload, headers, circuitBreaker);
+    } catch (Exception e) {
+      future.completeExceptionally(e);
+      return;
+    }
+    long start = System.currentTimeMillis();
+    try {
+      pushHttpClient.execute(httpPost, new FutureCallback<HttpResponse>() {
+        @Override
+        public void completed(HttpResponse httpResponse) {
+          long retryDelay = handleResponse(subscription, circuitBreaker, start, attempt, httpResponse);
+          if (retryDelay < 0) {
+            future.complete(httpResponse);
+          } else {
+            retry(subscription, payload, headers, future, attempt, retryDelay);
+          }
+        }
+
+        @Override
+        public void failed(Exception e) {
+          long retryDelay = handleError(subscription, circuitBreaker, start, attempt, e);
+          if (retryDelay < 0) {
+            future.completeExceptionally(e);
+          } else {
+            retry(subscription, payload, headers, future, attempt, retryDelay);
+          }
+        }
+
+        @Override
+        public void cancelled() {
+          CancellationException e = new CancellationException("Push message sending cancelled");
+          handleError(subscription, circuitBreaker, start, attempt, e);
+          future.completeExceptionally(e);
+        }
+      });
+    } catch (Exception e) {
+      circuitBreaker.release();
+      future.completeExceptionally(e);
+    }
+  }
+
+  private void retry(UserPushSubscription subscription,
+                     byte[] payload,
+                     PwaPushMessageHeaders headers,
+                     CompletableFuture<HttpResponse> future,
+                     int attempt,
+                     long delay) {
+    scheduler.schedule(() -> runAsync(() -> send(subscription, payload, headers, future, attempt + 1), future),
+                       delay,
+                       TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Reserves a throttling token of the Push Service origin, shared by the
+   * asynchronous and blocking sending modes
+   *
+   * @return the delay, in milliseconds, to wait before sending the message
+   * @throws PushServiceUnavailableException when the delay exceeds the
+   *           maximum throttling delay
+   */
+  private long reserve(UserPushSubscription subscription) {
+    long delay = getOriginThrottle(subscription).reserve(originMaxThrottleDelay);
+    if (delay < 0) {
+      throw new PushServiceUnavailableException(subscription.origin());
+    }
+    return delay;
+  }
+
+  /**
+   * @return the {@link OriginCircuitBreaker} of the Push Service origin, which
+   *         accepted the call
+   * @throws PushServiceUnavailableException when the circuit is open
+   */
+  private OriginCircuitBreaker acquireCircuit(UserPushSubscription subscription) {
+    OriginCircuitBreaker circuitBreaker = getCircuitBreaker(subscription);
+    if (!circuitBreaker.tryAcquire()) {
+      throw new PushServiceUnavailableException(subscription.origin());
+    }
+    return circuitBreaker;
+  }
+
+  /**
+   * Records the Push Service response in the circuit breaker of its origin
+   *
+   * @return the delay, in milliseconds, to wait before reattempting to send the
+   *         message, else -1 if the response is final
+   */
+  private long handleResponse(UserPushSubscription subscription,
+                              OriginCircuitBreaker circuitBreaker,
+                              long start,
+                              int attempt,
+                              HttpResponse httpResponse) {
+    circuitBreaker.onResult(!isServerError(httpResponse), System.currentTimeMillis() - start);
+    return isRetryable(httpResponse) ? getRetryDelay(subscription, attempt, getRetryAfter(httpResponse)) : -1;
+  }
+
+  /**
+   * Records the Push Service request error in the circuit breaker of its
+   * origin
+   *
+   * @return the delay, in milliseconds, to wait before reattempting to send the
+   *         message, else -1 if the error is final
+   */
+  private long handleError(UserPushSubscription subscription,
+                           OriginCircuitBreaker circuitBreaker,
+                           long start,
+                           int attempt,
+                           Throwable error) {
+    circuitBreaker.onResult(false, System.currentTimeMillis() - start);
+    return error instanceof IOException ? getRetryDelay(subscription, attempt, 0) : -1;
+  }
+
+  /**
+   * @return the delay, in milliseconds, to wait before reattempting to send the
+   *         message, else -1 if it shouldn't be reattempted
+   */
+  private long getRetryDelay(UserPushSubscription subscription, int attempt, long retryAfter) {
+    if (attempt >= retryMaxAttempts) {
+      return -1;
+    }
+    if (retryAfter > 0) {
+      // Pause all sendings to the throttled Push Service, even when the
+      // message isn't reattempted
+      getOriginThrottle(subscription).pause(retryAfter);
+    }
+    long delay = Math.max(getBackoffDelay(attempt), retryAfter);
+    if (delay > retryMaxDelay) {
+      return -1;
+    }
+    retriesCount.incrementAndGet();
+    return delay;
+  }
+
+  private long getBackoffDelay(int attempt) {
+    long delay = Math.min(retryMaxDelay, retryInitialDelay << Math.min(attempt, 20));
+    // Use a jitter to not reattempt all throttled requests at the same time
+    return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+  }
+
+  private boolean isRetryable(HttpResponse httpResponse) {
+    int statusCode = httpResponse.getStatusLine() == null ? 0 : httpResponse.getStatusLine().getStatusCode();
+    return statusCode == 429 || statusCode == 500 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+  }
+
+  private boolean isServerError(HttpResponse httpResponse) {
+    int statusCode = httpResponse.getStatusLine() == null ? 0 : httpResponse.getStatusLine().getStatusCode();
+    return statusCode >= 500;
+  }
+
+  private long getRetryAfter(HttpResponse httpResponse) {
+    Header header = httpResponse.getFirstHeader(HttpHeaders.RETRY_AFTER);
+    String value = header == null ? null : StringUtils.trim(header.getValue());
+    if (StringUtils.isBlank(value)) {
+      return 0;
+    } else if (StringUtils.isNumeric(value)) {
+      return Long.parseLong(value) * 1000;
+    } else {
+      Date date = DateUtils.parseDate(value);
+      return date == null ? 0 : Math.max(0, date.getTime() - System.currentTimeMillis());
+    }
+  }
+
+  private OriginThrottle getOriginThrottle(UserPushSubscription subscription) {
+    return originThrottles.computeIfAbsent(subscription.origin(), k -> new OriginThrottle(originRate, originBurst));
+  }
+
+  private Semaphore getOriginSemaphore(UserPushSubscription subscription) {
+    return originSemaphores.computeIfAbsent(subscription.origin(), k -> new Semaphore(originMaxConcurrency));
+  }
+
+  private OriginCircuitBreaker getCircuitBreaker(UserPushSubscription subscription) {
+    return circuitBreakers.computeIfAbsent(subscription.origin(),
+                                           k -> new OriginCircuitBreaker(circuitBreakerWindowSize,
+                                                                         circuitBreakerMinimumCalls,
+                                                                         circuitBreakerFailureRateThreshold,
+                                                                         circuitBreakerOpenDuration,
+                                                                         circuitBreakerHalfOpenProbes));
+  }
+
+  public enum DispatchMode {
+    /** Messages are sent using the non-blocking HTTP client callbacks */
+    POOL,
+    /** Each message is sent in a dedicated virtual thread */
+    VIRTUAL;
+  }
+
+  /**
+   * Raised when a message isn't sent since the circuit breaker of its Push
+   * Service origin is open. The message can be sent again later.
+   */
+  public static class PushServiceUnavailableException extends IllegalStateException {
+
+    private static final long serialVersionUID = 3853329216430924867L;
+
+    private final String      origin;
+
+    public PushServiceUnavailableException(String origin) {
+      super(String.format("Push Service %s is unavailable", origin));
+      this.origin = origin;
+    }
+
+    public String getOrigin() {
+      return origin;
+    }
+  }
+
+  /**
+   * Token bucket limiting the rate of messages sent to a Push Service origin,
+   * which can be paused when the Push Service requests it.
+   */
+  private static class OriginThrottle {
+
+    private final double rate;
+
+    private final double capacity;
+
+    private double       tokens;
+
+    private long         lastRefillTime;
+
+    private long         pausedUntil;
+
+    OriginThrottle(double ratePerSecond, int capacity) {
+      this.rate = ratePerSecond / 1000;
+      this.capacity = capacity;
+      this.tokens = capacity;
+      this.lastRefillTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Reserves a token to send a message. The token isn't reserved when the
+     * delay exceeds the maximum one, so that the tokens debt remains bounded.
+     *
+     * @param maxDelay maximum delay, in milliseconds, to wait
+     * @return the delay, in milliseconds, to wait before sending the message,
+     *         else -1 if it exceeds the maximum delay
+     */
+    synchronized long reserve(long maxDelay) {
+      long now = System.currentTimeMillis();
+      tokens = Math.min(capacity, tokens + (now - lastRefillTime) * rate);
+      lastRefillTime = now;
+      double remainingTokens = tokens - 1;
+      long delay = Math.max(remainingTokens >= 0 ? 0 : (long) Math.ceil(-remainingTokens / rate), pausedUntil - now);
+      if (delay > maxDelay) {
+        return -1;
+      }
+      tokens = remainingTokens;
+      return delay;
+    }
+
+    synchronized void pause(long duration) {
+      pausedUntil = Math.max(pausedUntil, System.currentTimeMillis() + duration);
+    }
+
+    synchronized boolean isPaused(long now) {
+      return pausedUntil > now;
+    }
+
+  }
+
+  /**
+   * Circuit breaker computing the failure rate of the last requests sent to a
+   * Push Service origin. The circuit is opened when the failure rate reaches
+   * the threshold, then after the open duration, a limited number of probe
+   * requests are allowed to decide whether to close it or to open it again.
+   */
+  private static class OriginCircuitBreaker {
+
+    private enum State {
+      CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final boolean[] failures;
+
+    private final int       minimumCalls;
+
+    private final int       failureRateThreshold;
+
+    private final long      openDuration;
+
+    private final int       halfOpenProbes;
+
+    private State           state = State.CLOSED;
+
+    private int             index;
+
+    private int             callsCount;
+
+    private int             failuresCount;
+
+    private long            openTime;
+
+    private int             probesCount;
+
+    private int             probesSuccessCount;
+
+    private double          averageLatency;
+
+    OriginCircuitBreaker(int windowSize,
+                         int minimumCalls,
+                         int failureRateThreshold,
+                         long openDuration,
+                         int halfOpenProbes) {
+      this.failures = new boolean[windowSize];
+      this.minimumCalls = minimumCalls;
+      this.failureRateThreshold = failureRateThreshold;
+      this.openDuration = openDuration;
+      this.halfOpenProbes = halfOpenProbes;
+    }
+
+    synchronized boolean tryAcquire() {
+      if (state == State.OPEN) {
+        if (System.currentTimeMillis() - openTime < openDuration) {
+          return false;
+        }
+        state = State.HALF_OPEN;
+        probesCount = 0;
+        probesSuccessCount = 0;
+      }
+      if (state == State.HALF_OPEN) {
+        if (probesCount >= halfOpenProbes) {
+          return false;
+        }
+        probesCount++;
+      }
+      return true;
+    }
+
+    synchronized void onResult(boolean success, long latency) {
+      averageLatency = averageLatency == 0 ? latency : averageLatency * 0.9 + latency * 0.1;
+      if (state == State.HALF_OPEN) {
+        if (!success) {
+          open();
+        } else if (++probesSuccessCount >= halfOpenProbes) {
+          close();
+        }
+      } else {
+        if (callsCount == failures.length) {
+          failuresCount -= failures[index] ? 1 : 0;
+        } else {
+          callsCount++;
+        }
+        failures[index] = !success;
+        failuresCount += success ? 0 : 1;
+        index = (index + 1) % failures.length;
+        if (state == State.CLOSED && callsCount >= minimumCalls && getFailureRate() >= failureRateThreshold) {
+          open();
+        }
+      }
+    }
+
+    /**
+     * Releases an acquired call which wasn't made
+     */
+    synchronized void release() {
+      if (state == State.HALF_OPEN && probesCount > 0) {
+        probesCount--;
+      }
+    }
+
+    synchronized Map<String, Object> getStatistics() {
+      return Map.of("state", state.name(),
+                    "errorRate", getFailureRate(),
+                    "averageLatency", Math.round(averageLatency));
+    }
+
+    private int getFailureRate() {
+      return callsCount == 0 ? 0 : failuresCount * 100 / callsCount;
+    }
+
+    private void open() {
+      state = State.OPEN;
+      openTime = System.currentTimeMillis();
+    }
+
+    private void close() {
+      state = State.CLOSED;
+      index = 0;
+      callsCount = 0;
+      failuresCount = 0;
+    }
+
+  }
+
+}
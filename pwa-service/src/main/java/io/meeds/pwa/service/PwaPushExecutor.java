@@ -0,0 +1,111 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.service;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed size thread pool with a bounded work queue. When the queue is full,
+ * the producer is blocked until there is room, up to the offer timeout,
+ * which slows down the Push messages dispatching rather than buffering an
+ * unbounded number of tasks. The tasks which can't be queued before the
+ * timeout, or which are submitted once the executor is shut down, are
+ * rejected with a {@link RejectedExecutionException} and never run in the
+ * caller thread. It counts the tasks wait time in queue, the blocked
+ * producers and the rejected tasks.
+ */
+public class PwaPushExecutor extends ThreadPoolExecutor {
+
+  private final LongAdder waitTime      = new LongAdder();
+
+  private final LongAdder startedTasks  = new LongAdder();
+
+  private final LongAdder blockedTasks  = new LongAdder();
+
+  private final LongAdder rejectedTasks = new LongAdder();
+
+  public PwaPushExecutor(int poolSize, int queueCapacity, long offerTimeout, ThreadFactory threadFactory) {
+    super(poolSize,
+          poolSize,
+          0L,
+          TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<>(queueCapacity),
+          threadFactory);
+    setRejectedExecutionHandler((task, executor) -> {
+      if (!executor.isShutdown()) {
+        blockedTasks.increment();
+        try {
+          if (executor.getQueue().offer(task, offerTimeout, TimeUnit.MILLISECONDS)) {
+            return;
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      rejectedTasks.increment();
+      throw new RejectedExecutionException(executor.isShutdown() ? "Push executor is shut down" :
+                                                                 "Push executor queue is full");
+    });
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    long submitTime = System.nanoTime();
+    super.execute(() -> {
+      waitTime.add(System.nanoTime() - submitTime);
+      startedTasks.increment();
+      command.run();
+    });
+  }
+
+  /**
+   * Stops accepting new tasks and waits for the queued and running tasks to
+   * complete. The Push messages sent asynchronously, which responses aren't
+   * received yet, aren't tasks of this executor and aren't awaited: the
+   * caller has to await them before draining the executor.
+   *
+   * @param timeout maximum time to wait, in milliseconds
+   * @return true if all tasks completed, else false if the timeout elapsed
+   */
+  public boolean drain(long timeout) throws InterruptedException {
+    shutdown();
+    return awaitTermination(timeout, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @return the executor queue depth, active threads, average tasks wait time
+   *         in milliseconds, blocked producers count and rejected tasks count
+   */
+  public Map<String, Object> getStatistics() {
+    long started = startedTasks.sum();
+    return Map.of("queueSize", getQueue().size(),
+                  "activeThreads", getActiveCount(),
+                  "completedTasks", getCompletedTaskCount(),
+                  "averageWaitTime", started == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitTime.sum() / started),
+                  "blockedTasks", blockedTasks.sum(),
+                  "rejectedTasks", rejectedTasks.sum());
+  }
+
+}
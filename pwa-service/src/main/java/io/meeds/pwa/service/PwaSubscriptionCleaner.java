@@ -0,0 +1,178 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.service;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.services.organization.OrganizationService;
+import org.exoplatform.services.organization.User;
+import org.exoplatform.services.organization.UserStatus;
+
+import io.meeds.common.ContainerTransactional;
+import io.meeds.pwa.model.PwaSubscriptionState;
+
+/**
+ * Deletes, page by page, the Push subscriptions which can't be used anymore.
+ * Each page is processed in a container transaction, which requires this
+ * bean to be called by {@link PwaSubscriptionCleanupService} through its
+ * Spring proxy.
+ */
+@Service
+public class PwaSubscriptionCleaner {
+
+  private static final Log       LOG                       = ExoLogger.getLogger(PwaSubscriptionCleaner.class);
+
+  @Autowired
+  private PwaSubscriptionService pwaSubscriptionService;
+
+  @Autowired
+  private OrganizationService    organizationService;
+
+  /**
+   * Number of consecutive delivery failures after which a subscription is
+   * deleted, 0 to keep them
+   */
+  @Value("${pwa.notifications.subscriptions.cleanup.maxConsecutiveFailures:100}")
+  private int                    maxConsecutiveFailures;
+
+  private LongAdder              expiredSubscriptions      = new LongAdder();
+
+  private LongAdder              failingSubscriptions      = new LongAdder();
+
+  private LongAdder              inactiveUserSubscriptions = new LongAdder();
+
+  private LongAdder              duplicatedSubscriptions   = new LongAdder();
+
+  /**
+   * Deletes the subscriptions of deleted or disabled users, the subscriptions
+   * which failed too many times in a row and the subscriptions which weren't
+   * delivered successfully nor registered again by the user browser since the
+   * expiration date.
+   *
+   * @param states {@link List} of {@link PwaSubscriptionState} to check
+   * @param expirationDate date before which a subscription is expired, null
+   *          to keep them
+   * @return number of deleted subscriptions
+   */
+  @ContainerTransactional
+  public int cleanup(List<PwaSubscriptionState> states, Date expirationDate) {
+    Map<String, Boolean> activeUsers = new HashMap<>();
+    int count = 0;
+    for (PwaSubscriptionState state : states) {
+      if (!activeUsers.computeIfAbsent(state.getUsername(), this::isActiveUser)) {
+        delete(state);
+        inactiveUserSubscriptions.increment();
+        count++;
+      } else if (isExpired(state, expirationDate)) {
+        delete(state);
+        expiredSubscriptions.increment();
+        count++;
+      } else if (maxConsecutiveFailures > 0 && state.getConsecutiveFailures() >= maxConsecutiveFailures) {
+        delete(state);
+        failingSubscriptions.increment();
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Deletes the subscriptions sharing the same endpoint, which happens when
+   * users log in successively on the same browser, and which weren't
+   * registered again by the user browser since the most recent one was
+   * created. The subscriptions of users still using the browser are kept.
+   *
+   * @param states {@link List} of {@link PwaSubscriptionState} having the
+   *          same endpoint, ordered by identifier
+   * @return number of deleted subscriptions
+   */
+  @ContainerTransactional
+  public int removeDuplicates(List<PwaSubscriptionState> states) {
+    if (states.size() < 2) {
+      return 0;
+    }
+    Date lastCreatedDate = states.get(states.size() - 1).getCreatedDate();
+    int count = 0;
+    for (PwaSubscriptionState state : states.subList(0, states.size() - 1)) {
+      Date lastSeenDate = state.getLastSeenDate() == null ? state.getCreatedDate() : state.getLastSeenDate();
+      if (lastCreatedDate == null || lastSeenDate == null || lastSeenDate.before(lastCreatedDate)) {
+        delete(state);
+        duplicatedSubscriptions.increment();
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return deleted subscriptions count by cause
+   */
+  public Map<String, Object> getStatistics() {
+    return Map.of("expiredSubscriptions", expiredSubscriptions.sum(),
+                  "failingSubscriptions", failingSubscriptions.sum(),
+                  "inactiveUserSubscriptions", inactiveUserSubscriptions.sum(),
+                  "duplicatedSubscriptions", duplicatedSubscriptions.sum());
+  }
+
+  private boolean isActiveUser(String username) {
+    try {
+      User user = organizationService.getUserHandler().findUserByName(username, UserStatus.ANY);
+      return user != null && user.isEnabled();
+    } catch (Exception e) {
+      // Keep the subscriptions when the user status can't be retrieved
+      LOG.warn("Error while retrieving user {} status, keep its subscriptions", username, e);
+      return true;
+    }
+  }
+
+  /**
+   * A subscription is expired when its last successful delivery, its last
+   * registration by the user browser and its creation are all older than the
+   * expiration date, so that the subscriptions of users who simply didn't
+   * receive notifications are kept.
+   */
+  private boolean isExpired(PwaSubscriptionState state, Date expirationDate) {
+    if (expirationDate == null) {
+      return false;
+    }
+    return Stream.of(state.getCreatedDate(), state.getLastSeenDate(), state.getLastSuccessDate())
+                 .filter(Objects::nonNull)
+                 .max(Date::compareTo)
+                 .map(lastDate -> lastDate.before(expirationDate))
+                 .orElse(false);
+  }
+
+  private void delete(PwaSubscriptionState state) {
+    LOG.debug("Delete subscription {} of user {}", state.getSubscriptionId(), state.getUsername());
+    pwaSubscriptionService.deleteSubscription(state.getSubscriptionId(), state.getUsername(), false);
+  }
+
+}
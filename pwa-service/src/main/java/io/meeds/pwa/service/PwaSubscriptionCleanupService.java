@@ -0,0 +1,220 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.service;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+import io.meeds.pwa.model.PwaSubscriptionState;
+import io.meeds.pwa.storage.PwaJobStorage;
+import io.meeds.pwa.storage.PwaSubscriptionStorage;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Removes periodically the Push subscriptions which can't be used anymore:
+ * subscriptions of deleted or disabled users, subscriptions which weren't
+ * successfully delivered nor registered again by the user browser since a
+ * number of days or which failed too many times in a row and subscriptions
+ * sharing the same endpoint which aren't used anymore. The subscriptions are
+ * walked through page by page, with a delay between pages which is extended
+ * while Push Notifications are being sent, in order to not compete with them.
+ */
+@Service
+public class PwaSubscriptionCleanupService {
+
+  private static final Log         LOG               = ExoLogger.getLogger(PwaSubscriptionCleanupService.class);
+
+  private static final String      CLEANUP_JOB_NAME  = "SUBSCRIPTIONS_CLEANUP";
+
+  private static final int         MAX_SENDING_WAITS = 10;
+
+  @Autowired
+  private PwaSubscriptionStorage   pwaSubscriptionStorage;
+
+  @Autowired
+  private PwaSubscriptionService   pwaSubscriptionService;
+
+  @Autowired
+  private PwaSubscriptionCleaner   pwaSubscriptionCleaner;
+
+  @Autowired
+  private PwaNotificationService   pwaNotificationService;
+
+  @Autowired
+  private PwaJobStorage            pwaJobStorage;
+
+  @Value("${pwa.notifications.subscriptions.cleanup.enabled:true}")
+  private boolean                  enabled;
+
+  /**
+   * Interval, in milliseconds, between two cleanups, made by any node of the
+   * cluster
+   */
+  @Value("${pwa.notifications.subscriptions.cleanup.interval:86400000}")
+  private long                     interval;
+
+  @Value("${pwa.notifications.subscriptions.cleanup.pageSize:100}")
+  private int                      pageSize;
+
+  /**
+   * Delay, in milliseconds, between two pages of subscriptions
+   */
+  @Value("${pwa.notifications.subscriptions.cleanup.pageDelay:1000}")
+  private long                     pageDelay;
+
+  /**
+   * Number of days without a successful delivery nor a registration by the
+   * user browser after which a subscription is deleted, 0 to keep them
+   */
+  @Value("${pwa.notifications.subscriptions.cleanup.expirationDays:90}")
+  private int                      expirationDays;
+
+  private ScheduledExecutorService scheduler;
+
+  private volatile boolean         stopping;
+
+  private volatile long            lastCleanupDate;
+
+  private volatile long            lastCleanupDuration;
+
+  @PostConstruct
+  public void init() {
+    if (!enabled) {
+      return;
+    }
+    scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("PWA-Subscription-Cleanup-%d")
+                                                                                     .setPriority(Thread.MIN_PRIORITY)
+                                                                                     .build());
+    scheduler.scheduleWithFixedDelay(this::cleanupIfDue, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void destroy() {
+    stopping = true;
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  }
+
+  /**
+   * Walks through all the subscriptions to delete the ones which can't be
+   * used anymore
+   *
+   * @return number of deleted subscriptions
+   * @throws InterruptedException when the cleanup is interrupted while
+   *           throttling
+   */
+  public int cleanup() throws InterruptedException {
+    long start = System.currentTimeMillis();
+    // Ensure that the subscriptions delivered recently aren't considered as
+    // expired
+    pwaSubscriptionService.flushDeliveries();
+    Date expirationDate = expirationDays > 0 ? new Date(start - TimeUnit.DAYS.toMillis(expirationDays)) : null;
+    int count = removeDuplicates();
+    long afterId = 0;
+    List<PwaSubscriptionState> states;
+    do {
+      throttle();
+      states = pwaSubscriptionStorage.getStates(afterId, pageSize);
+      if (!states.isEmpty()) {
+        count += pwaSubscriptionCleaner.cleanup(states, expirationDate);
+        afterId = states.get(states.size() - 1).getId();
+      }
+    } while (!stopping && states.size() == pageSize);
+    lastCleanupDate = start;
+    lastCleanupDuration = System.currentTimeMillis() - start;
+    LOG.info("{} PWA subscriptions deleted by cleanup in {}ms", count, lastCleanupDuration);
+    return count;
+  }
+
+  /**
+   * @return subscriptions cleanup statistics
+   */
+  public Map<String, Object> getStatistics() {
+    Map<String, Object> statistics = new HashMap<>(pwaSubscriptionCleaner.getStatistics());
+    statistics.put("lastCleanupDate", lastCleanupDate);
+    statistics.put("lastCleanupDuration", lastCleanupDuration);
+    return Map.of("subscriptionsCleanup", statistics);
+  }
+
+  /**
+   * Walks through the endpoints used by more than one subscription, page by
+   * page, to delete the duplicated subscriptions which aren't used anymore
+   */
+  private int removeDuplicates() throws InterruptedException {
+    int count = 0;
+    String afterEndpointHash = "";
+    List<String> endpointHashes;
+    do {
+      throttle();
+      endpointHashes = pwaSubscriptionStorage.getDuplicatedEndpointHashes(afterEndpointHash, pageSize);
+      for (String endpointHash : endpointHashes) {
+        count += pwaSubscriptionCleaner.removeDuplicates(pwaSubscriptionStorage.getStates(endpointHash));
+      }
+      if (!endpointHashes.isEmpty()) {
+        afterEndpointHash = endpointHashes.get(endpointHashes.size() - 1);
+      }
+    } while (!stopping && endpointHashes.size() == pageSize);
+    return count;
+  }
+
+  /**
+   * Runs the cleanup unless it was already made recently by another node of
+   * the cluster. The job lock isn't released once the cleanup is made, so that
+   * it's only acquired again by any node after half the cleanup interval.
+   */
+  private void cleanupIfDue() {
+    try {
+      if (pwaJobStorage.lock(CLEANUP_JOB_NAME, interval / 2)) {
+        cleanup();
+      } else {
+        LOG.debug("PWA subscriptions cleanup already made by another node");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      LOG.warn("Error while cleaning up PWA subscriptions, it will be attempted again at next interval", e);
+    }
+  }
+
+  private void throttle() throws InterruptedException {
+    Thread.sleep(pageDelay);
+    int waits = 0;
+    while (!stopping && pwaNotificationService.isSending() && waits++ < MAX_SENDING_WAITS) {
+      Thread.sleep(pageDelay);
+    }
+  }
+
+}
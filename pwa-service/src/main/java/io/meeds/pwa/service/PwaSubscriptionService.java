@@ -18,51 +18,157 @@
  */
 package io.meeds.pwa.service;
 
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import org.exoplatform.services.listener.ListenerService;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 
+import io.meeds.pwa.model.PwaSubscriptionDelivery;
+import io.meeds.pwa.model.PwaSubscriptionDeliveryUpdate;
 import io.meeds.pwa.model.UserPushSubscription;
 import io.meeds.pwa.storage.PwaSubscriptionStorage;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
 @Service
 public class PwaSubscriptionService {
 
-  public static final String     PWA_INSTALLED   = "pwa.installed";
+  public static final String                     PWA_INSTALLED            = "pwa.installed";
 
-  public static final String     PWA_UNINSTALLED = "pwa.uninstalled";
+  public static final String                     PWA_UNINSTALLED          = "pwa.uninstalled";
 
-  private static final Log       LOG             = ExoLogger.getLogger(PwaSubscriptionService.class);
+  private static final int                       LATENCY_SMOOTHING_FACTOR = 5;
+
+  private static final Log                       LOG                      = ExoLogger.getLogger(PwaSubscriptionService.class);
 
   @Autowired
-  private PwaSubscriptionStorage pwaSubscriptionStorage;
+  private PwaSubscriptionStorage                 pwaSubscriptionStorage;
 
   @Autowired
-  private ListenerService        listenerService;
+  private ListenerService                        listenerService;
+
+  @Value("${pwa.notifications.keysCache.maxSize:10000}")
+  private int                                    keysCacheMaxSize;
+
+  @Value("${pwa.notifications.deliveriesCache.maxSize:10000}")
+  private int                                    deliveriesCacheMaxSize;
+
+  /**
+   * Interval, in milliseconds, of storing the delivery statistics of
+   * subscriptions
+   */
+  @Value("${pwa.notifications.subscriptions.flushInterval:60000}")
+  private long                                   flushInterval;
+
+  /**
+   * Number of consecutive delivery failures after which a subscription is
+   * suspended, 0 to never suspend subscriptions
+   */
+  @Value("${pwa.notifications.subscriptions.maxConsecutiveFailures:10}")
+  private int                                    maxConsecutiveFailures;
+
+  /**
+   * Delay, in milliseconds, after the last failure of a suspended
+   * subscription, after which a Push message is attempted again
+   */
+  @Value("${pwa.notifications.subscriptions.suspensionDelay:3600000}")
+  private long                                   suspensionDelay;
+
+  private Cache<String, SubscriptionKeys>        keysCache;
+
+  /**
+   * Current delivery statistics indexed by endpoint hash
+   */
+  private Cache<String, PwaSubscriptionDelivery> deliveries;
+
+  /**
+   * Delivery statistics changes since the last flush, indexed by endpoint
+   * hash
+   */
+  private Map<String, PwaSubscriptionDeliveryUpdate> updatedDeliveries = new ConcurrentHashMap<>();
+
+  private LongAdder                              suspendedDeliveries      = new LongAdder();
+
+  private ScheduledExecutorService               scheduler;
+
+  @PostConstruct
+  public void init() {
+    keysCache = CacheBuilder.newBuilder()
+                            .maximumSize(keysCacheMaxSize)
+                            .build();
+    deliveries = CacheBuilder.newBuilder()
+                             .maximumSize(deliveriesCacheMaxSize)
+                             .build();
+    scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("PWA-Subscription-Scheduler-%d")
+                                                                                     .build());
+    scheduler.scheduleWithFixedDelay(this::flushDeliveries, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void destroy() {
+    scheduler.shutdownNow();
+    flushDeliveries();
+  }
 
   public List<UserPushSubscription> getSubscriptions(String username) {
     return pwaSubscriptionStorage.get(username);
   }
 
+  /**
+   * Retrieves the subscriptions of a list of users in bulk
+   *
+   * @param usernames {@link Collection} of user names
+   * @return {@link Map} of subscriptions indexed by user name
+   */
+  public Map<String, List<UserPushSubscription>> getSubscriptions(Collection<String> usernames) {
+    return pwaSubscriptionStorage.get(usernames);
+  }
+
   public void createSubscription(UserPushSubscription subscription,
                                  String username) {
-    List<UserPushSubscription> subscriptions = pwaSubscriptionStorage.get(username);
     String endpoint = subscription.getEndpoint();
-    if (subscriptions.stream().noneMatch(s -> StringUtils.equals(s.getEndpoint(), endpoint))) {
+    if (!pwaSubscriptionStorage.exists(endpoint, username)) {
       LOG.info("Create new subscription with id {} for user {} and endpoint {}",
                subscription.getId(),
                username,
-               getSubscriptionDomain(endpoint));
-      pwaSubscriptionStorage.create(subscription, username);
+               subscription.origin());
+      try {
+        pwaSubscriptionStorage.create(subscription, username);
+      } catch (DataIntegrityViolationException e) {
+        LOG.debug("Subscription for endpoint {} was concurrently created for user {}", subscription.origin(), username);
+        return;
+      }
+      keysCache.invalidate(subscription.getId());
       listenerService.broadcast(PWA_INSTALLED, username, subscription);
     } else {
-      LOG.debug("Subscription for endpoint {} already exists for user {}", getSubscriptionDomain(endpoint), username);
+      LOG.debug("Subscription for endpoint {} already exists for user {}", subscription.origin(), username);
+      pwaSubscriptionStorage.markSeen(endpoint, username);
     }
   }
 
@@ -72,6 +178,10 @@ public class PwaSubscriptionService {
 
   public void deleteSubscription(String id, String username, boolean userAction) {
     UserPushSubscription subscription = pwaSubscriptionStorage.delete(id, username);
+    keysCache.invalidate(id);
+    if (subscription != null) {
+      deliveries.invalidate(subscription.endpointHash());
+    }
     if (userAction && subscription != null) {
       listenerService.broadcast(PWA_UNINSTALLED, username, subscription);
     }
@@ -82,8 +192,204 @@ public class PwaSubscriptionService {
     subscriptions.forEach(s -> deleteSubscription(s.getId(), username));
   }
 
-  private String getSubscriptionDomain(String endpoint) {
-    return endpoint.substring(0, endpoint.indexOf("/", 15));
+  /**
+   * Updates the delivery statistics of a subscription after a Push message
+   * accepted by the Push Service. The statistics are stored periodically in
+   * bulk, rather than for each sent Push message.
+   *
+   * @param subscription {@link UserPushSubscription}
+   * @param latency Push Service response time in milliseconds
+   */
+  public void markDelivered(UserPushSubscription subscription, long latency) {
+    Date now = new Date();
+    updateDelivery(subscription, (delivery, update) -> {
+      delivery.setLastSuccessDate(now);
+      delivery.setConsecutiveFailures(0);
+      // Exponential moving average, giving more weight to recent responses
+      long averageLatency = delivery.getAverageLatency();
+      delivery.setAverageLatency(averageLatency == 0 ? latency :
+                                                     averageLatency + (latency - averageLatency) / LATENCY_SMOOTHING_FACTOR);
+      update.setLastSuccessDate(now);
+      update.setFailures(0);
+      update.setAverageLatency(delivery.getAverageLatency());
+    });
+  }
+
+  /**
+   * Updates the delivery statistics of a subscription after a Push message
+   * rejected by the Push Service because of the subscription itself. The
+   * errors of the Push Service, such as throttling, server or network errors,
+   * aren't failures of the subscription and mustn't be marked as such.
+   *
+   * @param subscription {@link UserPushSubscription}
+   */
+  public void markFailed(UserPushSubscription subscription) {
+    Date now = new Date();
+    updateDelivery(subscription, (delivery, update) -> {
+      delivery.setLastFailureDate(now);
+      delivery.setConsecutiveFailures(delivery.getConsecutiveFailures() + 1);
+      update.setLastFailureDate(now);
+      update.setFailures(update.getFailures() + 1);
+    });
+  }
+
+  /**
+   * Counts a Push message not sent to a subscription since it's suspended
+   *
+   * @param subscription {@link UserPushSubscription}
+   */
+  public void markSkipped(UserPushSubscription subscription) {
+    LOG.debug("Skip sending to suspended subscription {}", subscription.getId());
+    suspendedDeliveries.increment();
+  }
+
+  /**
+   * @param subscription {@link UserPushSubscription}
+   * @return current delivery statistics of the subscription
+   */
+  public PwaSubscriptionDelivery getDelivery(UserPushSubscription subscription) {
+    PwaSubscriptionDelivery delivery = getCurrentDelivery(subscription);
+    synchronized (delivery) {
+      return new PwaSubscriptionDelivery(delivery);
+    }
+  }
+
+  /**
+   * @param subscription {@link UserPushSubscription}
+   * @return number of delivery failures since the last success
+   */
+  public int getConsecutiveFailures(UserPushSubscription subscription) {
+    return getCurrentDelivery(subscription).getConsecutiveFailures();
+  }
+
+  /**
+   * A subscription is suspended when it reached the maximum consecutive
+   * failures, until the suspension delay elapses after its last failure. Then
+   * Push messages are attempted again, which suspend it again when failing.
+   * The skipped Push messages are counted using
+   * {@link #markSkipped(UserPushSubscription)}.
+   *
+   * @param subscription {@link UserPushSubscription}
+   * @return true if no Push message should be sent to the subscription
+   */
+  public boolean isSuspended(UserPushSubscription subscription) {
+    if (maxConsecutiveFailures <= 0) {
+      return false;
+    }
+    PwaSubscriptionDelivery delivery = getDelivery(subscription);
+    return delivery.getConsecutiveFailures() >= maxConsecutiveFailures
+           && delivery.getLastFailureDate() != null
+           && System.currentTimeMillis() - delivery.getLastFailureDate().getTime() < suspensionDelay;
+  }
+
+  /**
+   * Stores the delivery statistics changes of the subscriptions since the last
+   * flush
+   */
+  public void flushDeliveries() {
+    if (updatedDeliveries.isEmpty()) {
+      return;
+    }
+    Map<String, PwaSubscriptionDeliveryUpdate> flushedDeliveries = new HashMap<>();
+    new ArrayList<>(updatedDeliveries.keySet()).forEach(endpointHash -> {
+      PwaSubscriptionDeliveryUpdate update = updatedDeliveries.remove(endpointHash);
+      if (update != null) {
+        flushedDeliveries.put(endpointHash, update);
+      }
+    });
+    try {
+      pwaSubscriptionStorage.updateDeliveries(flushedDeliveries);
+    } catch (Exception e) {
+      LOG.warn("Error while storing the delivery statistics of {} subscriptions", flushedDeliveries.size(), e);
+    }
+  }
+
+  /**
+   * @return subscriptions cache statistics
+   */
+  public Map<String, Object> getStatistics() {
+    return Map.of("subscriptionsCacheHits", pwaSubscriptionStorage.getCacheHits(),
+                  "subscriptionsCacheMisses", pwaSubscriptionStorage.getCacheMisses(),
+                  "keysCacheSize", keysCache.size(),
+                  "deliveriesCacheSize", deliveries.size(),
+                  "updatedDeliveries", updatedDeliveries.size(),
+                  "suspendedDeliveries", suspendedDeliveries.sum());
+  }
+
+  /**
+   * Retrieves the decoded user agent public key of a subscription. The decoded
+   * key is cached to avoid decoding the curve point at each Push message
+   * sending.
+   * 
+   * @param subscription {@link UserPushSubscription}
+   * @return decoded subscription {@link PublicKey}
+   * @throws InvalidKeySpecException when the subscription key can't be decoded
+   */
+  public PublicKey getPublicKey(UserPushSubscription subscription) throws InvalidKeySpecException {
+    return getSubscriptionKeys(subscription).publicKey();
+  }
+
+  /**
+   * Retrieves the decoded authentication secret of a subscription. The decoded
+   * secret is cached along with the public key.
+   * 
+   * @param subscription {@link UserPushSubscription}
+   * @return decoded subscription authentication secret
+   * @throws InvalidKeySpecException when the subscription key can't be decoded
+   */
+  public byte[] getAuth(UserPushSubscription subscription) throws InvalidKeySpecException {
+    return getSubscriptionKeys(subscription).auth();
+  }
+
+  private void updateDelivery(UserPushSubscription subscription,
+                              BiConsumer<PwaSubscriptionDelivery, PwaSubscriptionDeliveryUpdate> update) {
+    PwaSubscriptionDelivery delivery = getCurrentDelivery(subscription);
+    synchronized (delivery) {
+      // Computed atomically with the flush removal of the changes
+      updatedDeliveries.compute(subscription.endpointHash(), (endpointHash, deliveryUpdate) -> {
+        deliveryUpdate = deliveryUpdate == null ? new PwaSubscriptionDeliveryUpdate() : deliveryUpdate;
+        update.accept(delivery, deliveryUpdate);
+        return deliveryUpdate;
+      });
+    }
+  }
+
+  private PwaSubscriptionDelivery getCurrentDelivery(UserPushSubscription subscription) {
+    try {
+      // Initialized from stored statistics, which can be older than the ones
+      // not flushed yet when evicted from cache
+      String endpointHash = subscription.endpointHash();
+      return deliveries.get(endpointHash, () -> {
+        PwaSubscriptionDelivery delivery = subscription.getDelivery() == null ? new PwaSubscriptionDelivery() :
+                                                                              new PwaSubscriptionDelivery(subscription.getDelivery());
+        PwaSubscriptionDeliveryUpdate update = updatedDeliveries.get(endpointHash);
+        if (update != null) {
+          delivery.apply(update);
+        }
+        return delivery;
+      });
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Error while retrieving subscription delivery statistics", e);
+    }
+  }
+
+  private SubscriptionKeys getSubscriptionKeys(UserPushSubscription subscription) throws InvalidKeySpecException {
+    SubscriptionKeys subscriptionKeys = keysCache.getIfPresent(subscription.getId());
+    // The same subscription identifier can be reused by the browser with
+    // renewed keys, thus ensure that the cached keys are the current ones
+    if (subscriptionKeys == null
+        || !StringUtils.equals(subscriptionKeys.key(), subscription.getKey())
+        || !StringUtils.equals(subscriptionKeys.encodedAuth(), subscription.getAuth())) {
+      subscriptionKeys = new SubscriptionKeys(subscription.getKey(),
+                                              subscription.getAuth(),
+                                              subscription.userPublicKey(),
+                                              subscription.authAsBytes());
+      keysCache.put(subscription.getId(), subscriptionKeys);
+    }
+    return subscriptionKeys;
+  }
+
+  private record SubscriptionKeys(String key, String encodedAuth, PublicKey publicKey, byte[] auth) {
   }
 
 }
@@ -0,0 +1,92 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.meeds.pwa.storage.PwaUserPresenceStorage;
+
+/**
+ * Tracks the recent activity of users in the portal, fed by the pages opened
+ * in a visible browser tab and by the service worker when a Push message is
+ * received while a portal window is focused.
+ */
+@Service
+public class PwaUserPresenceService {
+
+  @Autowired
+  private PwaUserPresenceStorage pwaUserPresenceStorage;
+
+  @Value("${pwa.notifications.presence.enabled:false}")
+  private boolean                enabled;
+
+  /**
+   * Delay, in seconds, during which a user is considered active after being
+   * seen in the portal
+   */
+  @Value("${pwa.notifications.presence.activeDelay:60}")
+  private long                   activeDelay;
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return the interval, in milliseconds, at which pages opened in a visible
+   *         browser tab should notify the user presence, else 0 when the
+   *         presence tracking is disabled
+   */
+  public long getHeartbeatInterval() {
+    return enabled ? activeDelay * 1000 / 2 : 0;
+  }
+
+  /**
+   * Marks the user as active. The cluster wide cache is updated at most once
+   * per quarter of the active delay, to keep the presence tracking cheap
+   * whatever the number of opened pages.
+   *
+   * @param username User name
+   */
+  public void markActive(String username) {
+    if (!enabled || username == null) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    Long lastActivityTime = pwaUserPresenceStorage.get(username);
+    if (lastActivityTime == null || now - lastActivityTime >= activeDelay * 1000 / 4) {
+      pwaUserPresenceStorage.put(username, now);
+    }
+  }
+
+  /**
+   * @param username User name
+   * @return true if the user was seen active within the configured active
+   *         delay
+   */
+  public boolean isActive(String username) {
+    if (!enabled) {
+      return false;
+    }
+    Long lastActivityTime = pwaUserPresenceStorage.get(username);
+    return lastActivityTime != null && System.currentTimeMillis() - lastActivityTime < activeDelay * 1000;
+  }
+
+}
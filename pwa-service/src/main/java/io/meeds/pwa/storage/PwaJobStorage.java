@@ -0,0 +1,71 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.storage;
+
+import java.util.Date;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.meeds.pwa.dao.PwaJobDAO;
+import io.meeds.pwa.entity.PwaJobEntity;
+
+/**
+ * Cluster wide locks of PWA background jobs, allowing a single node to run a
+ * job at a time.
+ */
+@Component
+public class PwaJobStorage {
+
+  @Autowired
+  private PwaJobDAO pwaJobDAO;
+
+  /**
+   * Locks a job for the current node
+   *
+   * @param name job name
+   * @param duration lock duration in milliseconds, after which the lock is
+   *          considered as released when not explicitly unlocked
+   * @return true if the lock was acquired, else false when another node holds
+   *         it
+   */
+  public boolean lock(String name, long duration) {
+    if (!pwaJobDAO.existsById(name)) {
+      PwaJobEntity entity = new PwaJobEntity();
+      entity.setName(name);
+      try {
+        pwaJobDAO.saveAndFlush(entity);
+      } catch (RuntimeException e) {
+        // Created concurrently by another node
+      }
+    }
+    long now = System.currentTimeMillis();
+    return pwaJobDAO.lock(name, new Date(now + duration), new Date(now)) > 0;
+  }
+
+  /**
+   * Releases the lock of a job
+   *
+   * @param name job name
+   */
+  public void unlock(String name) {
+    pwaJobDAO.unlock(name);
+  }
+
+}
@@ -0,0 +1,97 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.storage;
+
+import java.util.HashMap;
+import java.util.concurrent.locks.Lock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.google.common.util.concurrent.Striped;
+
+import org.exoplatform.services.cache.CacheService;
+import org.exoplatform.services.cache.ExoCache;
+
+import io.meeds.pwa.model.PwaNotificationMessage;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * A short lived cache of rendered notification messages, indexed by Web
+ * Notification identifier then by language, allowing to render a notification
+ * once per locale whatever the number of recipients and devices. The
+ * rendering is deterministic, thus the rendered messages are cached locally
+ * only, so that a node rendering a notification doesn't invalidate it on the
+ * other nodes, while removing the messages of a notification is cluster wide.
+ */
+@Component
+public class PwaNotificationMessageStorage {
+
+  public static final String                                      PWA_NOTIFICATION_MESSAGES_CACHE_NAME = "pwa.notificationMessages";
+
+  @Autowired
+  private CacheService                                            cacheService;
+
+  private ExoCache<Long, HashMap<String, PwaNotificationMessage>> messagesCache;
+
+  /**
+   * Locks serializing the updates of the messages of the same notification,
+   * rendered concurrently in different languages. They apply to the current
+   * node only, which is enough since the cache is updated locally.
+   */
+  private Striped<Lock>                                           locks                                = Striped.lock(64);
+
+  @PostConstruct
+  public void init() {
+    messagesCache = cacheService.getCacheInstance(PWA_NOTIFICATION_MESSAGES_CACHE_NAME);
+  }
+
+  public PwaNotificationMessage get(long webNotificationId, String language) {
+    HashMap<String, PwaNotificationMessage> messages = messagesCache.get(webNotificationId);
+    return messages == null ? null : messages.get(language);
+  }
+
+  public void put(long webNotificationId, String language, PwaNotificationMessage message) {
+    Lock lock = locks.get(webNotificationId);
+    lock.lock();
+    try {
+      HashMap<String, PwaNotificationMessage> messages = messagesCache.get(webNotificationId);
+      // Never modify the cached map, which can be read concurrently
+      messages = messages == null ? new HashMap<>() : new HashMap<>(messages);
+      messages.put(language, message);
+      messagesCache.putLocal(webNotificationId, messages);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void remove(long webNotificationId) {
+    messagesCache.remove(webNotificationId);
+  }
+
+  public int getCacheHits() {
+    return messagesCache.getCacheHit();
+  }
+
+  public int getCacheMisses() {
+    return messagesCache.getCacheMiss();
+  }
+
+}
@@ -0,0 +1,198 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import com.google.common.collect.Lists;
+
+import io.meeds.pwa.dao.PushOutboxDAO;
+import io.meeds.pwa.entity.PushOutboxEntity;
+import io.meeds.pwa.model.PwaOutboxEntry;
+
+/**
+ * Persistent queue of Push Notifications to send. Entries are leased by the
+ * cluster node which sends the notification and are removed once the sending
+ * is processed. An entry which lease expires, for example when the node is
+ * stopped, is claimed again by any node. The entries are updated using their
+ * lease token, so that a node which lease expired can't update an entry
+ * claimed meanwhile by another node.
+ */
+@Component
+public class PwaOutboxStorage {
+
+  private static final int RENEW_BATCH_SIZE = 500;
+
+  @Autowired
+  private PushOutboxDAO    pushOutboxDAO;
+
+  @Value("${pwa.notifications.outbox.leaseDuration:60000}")
+  private long             leaseDuration;
+
+  /**
+   * Adds a notification to the outbox, leased by the current node
+   *
+   * @param notificationId Web Notification identifier
+   * @return the lease token of the current node
+   * @throws org.springframework.dao.DataIntegrityViolationException when the
+   *           notification is already in the outbox
+   */
+  public String add(long notificationId) {
+    String leaseToken = UUID.randomUUID().toString();
+    PushOutboxEntity entity = new PushOutboxEntity();
+    entity.setNotificationId(notificationId);
+    entity.setLeaseToken(leaseToken);
+    entity.setLeaseExpiryDate(getLeaseExpiryDate());
+    entity.setCreatedDate(new Date());
+    pushOutboxDAO.save(entity);
+    return leaseToken;
+  }
+
+  /**
+   * Claims outbox entries which aren't leased by other nodes
+   *
+   * @param limit maximum number of entries to claim
+   * @return {@link List} of claimed {@link PwaOutboxEntry}
+   */
+  public List<PwaOutboxEntry> claim(int limit) {
+    Date now = new Date();
+    List<Long> ids = pushOutboxDAO.findClaimableIds(now, PageRequest.of(0, limit));
+    if (ids.isEmpty()) {
+      return Collections.emptyList();
+    }
+    String leaseToken = UUID.randomUUID().toString();
+    if (pushOutboxDAO.claim(ids, leaseToken, getLeaseExpiryDate(), now) == 0) {
+      return Collections.emptyList();
+    }
+    return pushOutboxDAO.findByLeaseToken(leaseToken)
+                        .stream()
+                        .map(entity -> new PwaOutboxEntry(entity.getNotificationId(), entity.getHolds(), leaseToken))
+                        .toList();
+  }
+
+  /**
+   * Keeps a notification held by a policy in the outbox, so that it's not lost
+   * if the node is stopped while holding it. The entry is claimable by other
+   * nodes only after the hold delay and the lease duration, leaving time to the
+   * current node to claim it again using {@link #reclaim(long)}.
+   *
+   * @param notificationId Web Notification identifier
+   * @param leaseToken lease token of the current node
+   * @param holds number of times the notification was held
+   * @param delay hold delay in milliseconds
+   * @return true if the notification is kept in the outbox, else false when
+   *         another node claimed it since the lease expired
+   */
+  public boolean hold(long notificationId, String leaseToken, int holds, long delay) {
+    return pushOutboxDAO.hold(notificationId,
+                              leaseToken,
+                              holds,
+                              new Date(System.currentTimeMillis() + delay + leaseDuration)) > 0;
+  }
+
+  /**
+   * Claims again a held notification once its hold delay elapsed
+   *
+   * @param notificationId Web Notification identifier
+   * @return the new lease token if claimed, else null if another node claimed
+   *         it meanwhile
+   */
+  public String reclaim(long notificationId) {
+    String leaseToken = UUID.randomUUID().toString();
+    return pushOutboxDAO.reclaim(notificationId, leaseToken, getLeaseExpiryDate()) > 0 ? leaseToken : null;
+  }
+
+  /**
+   * Releases the lease of a notification, for example when it can't be
+   * processed by the current node, so that it's claimed again by any node
+   *
+   * @param notificationId Web Notification identifier
+   * @param leaseToken lease token of the current node
+   * @return true if released, else false when another node claimed it since
+   *         the lease expired
+   */
+  public boolean release(long notificationId, String leaseToken) {
+    return pushOutboxDAO.release(notificationId, leaseToken) > 0;
+  }
+
+  /**
+   * Releases the lease of a notification which can't be processed before a
+   * delay, so that it's claimed again by any node once the delay elapses
+   *
+   * @param notificationId Web Notification identifier
+   * @param leaseToken lease token of the current node
+   * @param delay delay, in milliseconds, before the notification can be
+   *          claimed again
+   * @return true if deferred, else false when another node claimed it since
+   *         the lease expired
+   */
+  public boolean defer(long notificationId, String leaseToken, long delay) {
+    return pushOutboxDAO.defer(notificationId, leaseToken, new Date(System.currentTimeMillis() + delay)) > 0;
+  }
+
+  /**
+   * Renews the leases of the current node on the notifications being
+   * processed, which can outlast the lease duration while waiting for
+   * throttling, reattempt or digest delays
+   *
+   * @param leaseTokens lease tokens of the current node
+   * @return the number of renewed notifications
+   */
+  public int renew(Collection<String> leaseTokens) {
+    if (leaseTokens.isEmpty()) {
+      return 0;
+    }
+    Date leaseExpiryDate = getLeaseExpiryDate();
+    return Lists.partition(new ArrayList<>(leaseTokens), RENEW_BATCH_SIZE)
+                .stream()
+                .mapToInt(tokens -> pushOutboxDAO.renew(tokens, leaseExpiryDate))
+                .sum();
+  }
+
+  /**
+   * Removes a processed notification from the outbox
+   *
+   * @param notificationId Web Notification identifier
+   * @param leaseToken lease token of the current node
+   * @return true if removed, else false when another node claimed it since
+   *         the lease expired
+   */
+  public boolean remove(long notificationId, String leaseToken) {
+    return pushOutboxDAO.remove(notificationId, leaseToken) > 0;
+  }
+
+  public long count() {
+    return pushOutboxDAO.count();
+  }
+
+  private Date getLeaseExpiryDate() {
+    return new Date(System.currentTimeMillis() + leaseDuration);
+  }
+
+}
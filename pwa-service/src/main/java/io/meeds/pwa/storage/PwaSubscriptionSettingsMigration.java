@@ -0,0 +1,121 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.google.common.collect.Lists;
+
+import org.exoplatform.commons.api.settings.SettingService;
+import org.exoplatform.commons.api.settings.SettingValue;
+import org.exoplatform.commons.api.settings.data.Context;
+import org.exoplatform.commons.api.settings.data.Scope;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+/**
+ * Moves the user subscriptions, previously stored as JSON values in users
+ * settings, into the dedicated subscriptions table. The migration is made once
+ * and then marked as done in global settings. The migration is triggered once
+ * the application context is refreshed and is made by a single cluster node
+ * at a time thanks to a job lock. The users are listed before migrating them,
+ * so that removing their settings doesn't shift the listed pages, and each
+ * page of users is then migrated in its own transaction by
+ * {@link PwaSubscriptionSettingsMigrator}.
+ */
+@Component
+public class PwaSubscriptionSettingsMigration {
+
+  private static final Log                LOG                         =
+                                              ExoLogger.getLogger(PwaSubscriptionSettingsMigration.class);
+
+  private static final Context            PWA_CONTEXT                 = Context.GLOBAL.id("PWA");
+
+  private static final Scope              PWA_MIGRATION_SCOPE         = Scope.APPLICATION.id("PWA_MIGRATIONS");
+
+  private static final String             SUBSCRIPTIONS_MIGRATION_KEY = "SUBSCRIPTIONS_TABLE";
+
+  public static final String              SUBSCRIPTIONS_MIGRATION_JOB = "SUBSCRIPTIONS_MIGRATION";
+
+  @Autowired
+  private SettingService                  settingService;
+
+  @Autowired
+  private PwaSubscriptionSettingsMigrator pwaSubscriptionSettingsMigrator;
+
+  @Autowired
+  private PwaJobStorage                   pwaJobStorage;
+
+  @Value("${pwa.notifications.subscriptions.migration.pageSize:100}")
+  private int                             pageSize;
+
+  @Value("${pwa.notifications.subscriptions.migration.lockDuration:3600000}")
+  private long                            lockDuration;
+
+  @EventListener(ContextRefreshedEvent.class)
+  public void init() {
+    if (isMigrated()) {
+      return;
+    }
+    if (!pwaJobStorage.lock(SUBSCRIPTIONS_MIGRATION_JOB, lockDuration)) {
+      LOG.info("PWA subscriptions migration is being made by another cluster node");
+      return;
+    }
+    try {
+      long start = System.currentTimeMillis();
+      int count = migrate();
+      settingService.set(PWA_CONTEXT, PWA_MIGRATION_SCOPE, SUBSCRIPTIONS_MIGRATION_KEY, SettingValue.create(true));
+      LOG.info("{} PWA subscriptions migrated from settings to dedicated table in {}ms",
+               count,
+               System.currentTimeMillis() - start);
+    } catch (Exception e) {
+      LOG.error("Error while migrating PWA subscriptions, the migration will be attempted again at next startup", e);
+    } finally {
+      pwaJobStorage.unlock(SUBSCRIPTIONS_MIGRATION_JOB);
+    }
+  }
+
+  private int migrate() {
+    List<String> usernames = new ArrayList<>();
+    int offset = 0;
+    List<String> page;
+    do {
+      page = settingService.getContextNamesByType(Context.USER.getName(), offset, pageSize);
+      usernames.addAll(page);
+      offset += pageSize;
+    } while (page.size() == pageSize);
+    return Lists.partition(usernames, pageSize)
+                .stream()
+                .mapToInt(pwaSubscriptionSettingsMigrator::migrate)
+                .sum();
+  }
+
+  private boolean isMigrated() {
+    SettingValue<?> settingValue = settingService.get(PWA_CONTEXT, PWA_MIGRATION_SCOPE, SUBSCRIPTIONS_MIGRATION_KEY);
+    return settingValue != null && settingValue.getValue() != null && Boolean.parseBoolean(settingValue.getValue().toString());
+  }
+
+}
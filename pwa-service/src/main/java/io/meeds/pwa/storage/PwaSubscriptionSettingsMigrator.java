@@ -0,0 +1,96 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.storage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.exoplatform.commons.api.settings.SettingService;
+import org.exoplatform.commons.api.settings.SettingValue;
+import org.exoplatform.commons.api.settings.data.Context;
+import org.exoplatform.commons.api.settings.data.Scope;
+
+import io.meeds.common.ContainerTransactional;
+import io.meeds.pwa.model.UserPushSubscription;
+import io.meeds.social.util.JsonUtils;
+
+/**
+ * Moves, page by page, the subscriptions of users from their settings into
+ * the dedicated subscriptions table. Each page is processed in a container
+ * transaction, which requires this bean to be called by
+ * {@link PwaSubscriptionSettingsMigration} through its Spring proxy.
+ */
+@Component
+public class PwaSubscriptionSettingsMigrator {
+
+  private static final Scope     PWA_SUBSCRIPTION_SCOPE = Scope.APPLICATION.id("PWA_PUSH_SUBSCRIPTIONS");
+
+  @Autowired
+  private SettingService         settingService;
+
+  @Autowired
+  private PwaSubscriptionStorage pwaSubscriptionStorage;
+
+  /**
+   * Moves the subscriptions stored in the settings of the given users into
+   * the subscriptions table and removes them from settings
+   *
+   * @param usernames page of user names to migrate
+   * @return number of migrated subscriptions
+   */
+  @ContainerTransactional
+  public int migrate(List<String> usernames) {
+    int count = 0;
+    for (String username : usernames) {
+      count += migrate(username);
+    }
+    return count;
+  }
+
+  private int migrate(String username) {
+    Context context = Context.USER.id(username);
+    @SuppressWarnings("rawtypes")
+    Map<String, SettingValue> settings = settingService.getSettingsByContextAndScope(context.getName(),
+                                                                                     context.getId(),
+                                                                                     PWA_SUBSCRIPTION_SCOPE.getName(),
+                                                                                     PWA_SUBSCRIPTION_SCOPE.getId());
+    if (settings == null || settings.isEmpty()) {
+      return 0;
+    }
+    List<UserPushSubscription> subscriptions = settings.values()
+                                                       .stream()
+                                                       .map(v -> v == null || v.getValue() == null ? null :
+                                                                                                   v.getValue().toString())
+                                                       .filter(Objects::nonNull)
+                                                       .map(v -> JsonUtils.fromJsonString(v, UserPushSubscription.class))
+                                                       .toList();
+    subscriptions.forEach(subscription -> {
+      if (!pwaSubscriptionStorage.exists(subscription.getEndpoint(), username)) {
+        pwaSubscriptionStorage.create(subscription, username);
+      }
+      settingService.remove(context, PWA_SUBSCRIPTION_SCOPE, subscription.getId());
+    });
+    return subscriptions.size();
+  }
+
+}
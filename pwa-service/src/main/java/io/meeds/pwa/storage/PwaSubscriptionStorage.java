@@ -18,69 +18,272 @@
  */
 package io.meeds.pwa.storage;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.stream.Collectors;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Component;
 
-import org.exoplatform.commons.api.settings.SettingService;
-import org.exoplatform.commons.api.settings.SettingValue;
-import org.exoplatform.commons.api.settings.data.Context;
-import org.exoplatform.commons.api.settings.data.Scope;
+import com.google.common.collect.Lists;
 
+import org.exoplatform.services.cache.CacheService;
+import org.exoplatform.services.cache.ExoCache;
+
+import io.meeds.common.ContainerTransactional;
+import io.meeds.pwa.dao.PushSubscriptionDAO;
+import io.meeds.pwa.entity.PushSubscriptionEntity;
+import io.meeds.pwa.model.PwaSubscriptionDelivery;
+import io.meeds.pwa.model.PwaSubscriptionDeliveryUpdate;
+import io.meeds.pwa.model.PwaSubscriptionState;
 import io.meeds.pwa.model.UserPushSubscription;
-import io.meeds.social.util.JsonUtils;
+
+import jakarta.annotation.PostConstruct;
 
 @Component
 public class PwaSubscriptionStorage {
 
-  private static final Scope PWA_SUBSCRIPTION_SCOPE = Scope.APPLICATION.id("PWA_PUSH_SUBSCRIPTIONS");
+  public static final String                                PWA_SUBSCRIPTIONS_CACHE_NAME = "pwa.subscriptions";
+
+  private static final int                                  BULK_QUERY_MAX_SIZE          = 500;
+
+  @Autowired
+  private PushSubscriptionDAO                               pushSubscriptionDAO;
 
   @Autowired
-  private SettingService     settingService;
+  private CacheService                                      cacheService;
 
+  private ExoCache<String, ArrayList<UserPushSubscription>> subscriptionsCache;
+
+  @PostConstruct
+  public void init() {
+    subscriptionsCache = cacheService.getCacheInstance(PWA_SUBSCRIPTIONS_CACHE_NAME);
+  }
+
+  /**
+   * Retrieves the user subscriptions from cache. Users without subscriptions
+   * are cached as well with an empty list in order to avoid a storage lookup
+   * each time a notification is sent to a user without installed PWA.
+   *
+   * @param username User name
+   * @return {@link List} of {@link UserPushSubscription}
+   */
   public List<UserPushSubscription> get(String username) {
-    Context context = Context.USER.id(username);
-    @SuppressWarnings("rawtypes")
-    Map<String, SettingValue> settings = settingService.getSettingsByContextAndScope(context.getName(),
-                                                                                     context.getId(),
-                                                                                     PWA_SUBSCRIPTION_SCOPE.getName(),
-                                                                                     PWA_SUBSCRIPTION_SCOPE.getId());
-    if (settings == null || settings.isEmpty()) {
-      return Collections.emptyList();
-    } else {
-      return settings.values()
-                     .stream()
-                     .map(v -> v == null || v.getValue() == null ? null : v.getValue().toString())
-                     .filter(Objects::nonNull)
-                     .map(v -> JsonUtils.fromJsonString(v, UserPushSubscription.class))
-                     .toList();
+    ArrayList<UserPushSubscription> subscriptions = subscriptionsCache.get(username);
+    if (subscriptions == null) {
+      subscriptions = pushSubscriptionDAO.findByUsername(username)
+                                         .stream()
+                                         .map(this::toModel)
+                                         .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+      // Loaded values are cached locally only, since a cluster wide put
+      // would invalidate the entry on the other nodes
+      subscriptionsCache.putLocal(username, subscriptions);
     }
+    return Collections.unmodifiableList(subscriptions);
+  }
+
+  /**
+   * Retrieves the subscriptions of a list of users. The subscriptions of users
+   * which aren't in cache are retrieved using bulk queries.
+   *
+   * @param usernames {@link Collection} of user names
+   * @return {@link Map} of subscriptions indexed by user name, including users
+   *         without subscriptions mapped to an empty list
+   */
+  public Map<String, List<UserPushSubscription>> get(Collection<String> usernames) {
+    Map<String, List<UserPushSubscription>> result = new HashMap<>();
+    List<String> notCachedUsernames = new ArrayList<>();
+    usernames.stream().distinct().forEach(username -> {
+      ArrayList<UserPushSubscription> subscriptions = subscriptionsCache.get(username);
+      if (subscriptions == null) {
+        notCachedUsernames.add(username);
+      } else {
+        result.put(username, Collections.unmodifiableList(subscriptions));
+      }
+    });
+    Lists.partition(notCachedUsernames, BULK_QUERY_MAX_SIZE).forEach(page -> {
+      Map<String, List<PushSubscriptionEntity>> entities = pushSubscriptionDAO.findByUsernameIn(page)
+                                                                              .stream()
+                                                                              .collect(Collectors.groupingBy(PushSubscriptionEntity::getUsername));
+      page.forEach(username -> {
+        ArrayList<UserPushSubscription> subscriptions = entities.getOrDefault(username, Collections.emptyList())
+                                                                .stream()
+                                                                .map(this::toModel)
+                                                                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        subscriptionsCache.putLocal(username, subscriptions);
+        result.put(username, Collections.unmodifiableList(subscriptions));
+      });
+    });
+    return result;
+  }
+
+  public UserPushSubscription get(String id, String username) {
+    return toModel(pushSubscriptionDAO.findByUsernameAndSubscriptionId(username, id));
+  }
+
+  public boolean exists(String endpoint, String username) {
+    return pushSubscriptionDAO.existsByUsernameAndEndpointHash(username, DigestUtils.sha256Hex(endpoint));
   }
 
   public void create(UserPushSubscription subscription, String username) {
-    settingService.set(Context.USER.id(username),
-                       PWA_SUBSCRIPTION_SCOPE,
-                       subscription.getId(),
-                       SettingValue.create(JsonUtils.toJsonString(subscription)));
+    PushSubscriptionEntity entity = pushSubscriptionDAO.findByUsernameAndSubscriptionId(username, subscription.getId());
+    if (entity == null) {
+      entity = new PushSubscriptionEntity();
+      entity.setSubscriptionId(subscription.getId());
+      entity.setUsername(username);
+      entity.setCreatedDate(new Date());
+    }
+    entity.setLastSeenDate(new Date());
+    entity.setEndpoint(subscription.getEndpoint());
+    entity.setEndpointHash(subscription.endpointHash());
+    entity.setOrigin(subscription.origin());
+    entity.setKey(subscription.getKey());
+    entity.setAuth(subscription.getAuth());
+    entity.setDeviceType(subscription.getDeviceType());
+    pushSubscriptionDAO.save(entity);
+    subscriptionsCache.remove(username);
+  }
+
+  /**
+   * Marks the subscription as registered again by the user browser
+   *
+   * @param endpoint subscription endpoint
+   * @param username User name
+   */
+  public void markSeen(String endpoint, String username) {
+    pushSubscriptionDAO.updateLastSeenDate(username, DigestUtils.sha256Hex(endpoint), new Date());
   }
 
   public UserPushSubscription delete(String id, String username) {
-    UserPushSubscription subscription = get(id, username);
-    if (subscription != null) {
-      settingService.remove(Context.USER.id(username), PWA_SUBSCRIPTION_SCOPE, id);
+    PushSubscriptionEntity entity = pushSubscriptionDAO.findByUsernameAndSubscriptionId(username, id);
+    if (entity == null) {
+      return null;
+    } else {
+      pushSubscriptionDAO.delete(entity);
+      subscriptionsCache.remove(username);
+      return toModel(entity);
     }
+  }
+
+  /**
+   * Retrieves a page of subscriptions states ordered by identifier. The pages
+   * are retrieved using the last identifier of the previous page, so that the
+   * subscriptions deleted meanwhile don't shift the pages.
+   *
+   * @param afterId identifier after which subscriptions are retrieved, 0 for
+   *          the first page
+   * @param limit maximum number of subscriptions to retrieve
+   * @return {@link List} of {@link PwaSubscriptionState}
+   */
+  public List<PwaSubscriptionState> getStates(long afterId, int limit) {
+    return pushSubscriptionDAO.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, limit))
+                              .stream()
+                              .map(this::toState)
+                              .toList();
+  }
+
+  /**
+   * @param endpointHash endpoint SHA-256 hash
+   * @return {@link List} of {@link PwaSubscriptionState} having the same
+   *         endpoint, ordered by identifier
+   */
+  public List<PwaSubscriptionState> getStates(String endpointHash) {
+    return pushSubscriptionDAO.findByEndpointHash(endpointHash)
+                              .stream()
+                              .map(this::toState)
+                              .sorted((s1, s2) -> Long.compare(s1.getId(), s2.getId()))
+                              .toList();
+  }
+
+  /**
+   * Retrieves a page of the endpoints used by more than one subscription,
+   * ordered by hash. The pages are retrieved using the last hash of the
+   * previous page.
+   *
+   * @param afterEndpointHash hash after which endpoints are retrieved, empty
+   *          for the first page
+   * @param limit maximum number of endpoints to retrieve
+   * @return {@link List} of hashes of the endpoints used by more than one
+   *         subscription
+   */
+  public List<String> getDuplicatedEndpointHashes(String afterEndpointHash, int limit) {
+    return pushSubscriptionDAO.findDuplicatedEndpointHashes(afterEndpointHash, PageRequest.of(0, limit));
+  }
+
+  /**
+   * Applies the delivery statistics changes of subscriptions as increments on
+   * the stored statistics. The subscriptions are retrieved and saved in bulk,
+   * locked until the end of the transaction so that the changes made
+   * concurrently by other nodes aren't lost. The cached subscriptions aren't
+   * updated, since the current statistics are maintained by the service
+   * layer.
+   *
+   * @param deliveries {@link Map} of {@link PwaSubscriptionDeliveryUpdate}
+   *          indexed by endpoint SHA-256 hash
+   */
+  @ContainerTransactional
+  public void updateDeliveries(Map<String, PwaSubscriptionDeliveryUpdate> deliveries) {
+    Lists.partition(new ArrayList<>(deliveries.keySet()), BULK_QUERY_MAX_SIZE).forEach(page -> {
+      List<PushSubscriptionEntity> entities = pushSubscriptionDAO.findByEndpointHashIn(page);
+      entities.forEach(entity -> applyUpdate(entity, deliveries.get(entity.getEndpointHash())));
+      pushSubscriptionDAO.saveAll(entities);
+    });
+  }
+
+  public int getCacheHits() {
+    return subscriptionsCache.getCacheHit();
+  }
+
+  public int getCacheMisses() {
+    return subscriptionsCache.getCacheMiss();
+  }
+
+  private UserPushSubscription toModel(PushSubscriptionEntity entity) {
+    if (entity == null) {
+      return null;
+    }
+    UserPushSubscription subscription = new UserPushSubscription();
+    subscription.setId(entity.getSubscriptionId());
+    subscription.setEndpoint(entity.getEndpoint());
+    subscription.setKey(entity.getKey());
+    subscription.setAuth(entity.getAuth());
+    subscription.setDeviceType(entity.getDeviceType());
+    subscription.setDelivery(toDelivery(entity));
     return subscription;
   }
 
-  public UserPushSubscription get(String id, String username) {
-    SettingValue<?> settingValue = settingService.get(Context.USER.id(username), PWA_SUBSCRIPTION_SCOPE, id);
-    return settingValue == null || settingValue.getValue() == null ? null :
-                                                                   JsonUtils.fromJsonString(settingValue.getValue().toString(),
-                                                                                            UserPushSubscription.class);
+  private PwaSubscriptionDelivery toDelivery(PushSubscriptionEntity entity) {
+    return new PwaSubscriptionDelivery(entity.getLastSuccessDate(),
+                                       entity.getLastFailureDate(),
+                                       entity.getConsecutiveFailures(),
+                                       entity.getAverageLatency());
+  }
+
+  private void applyUpdate(PushSubscriptionEntity entity, PwaSubscriptionDeliveryUpdate update) {
+    PwaSubscriptionDelivery delivery = toDelivery(entity);
+    delivery.apply(update);
+    entity.setLastSuccessDate(delivery.getLastSuccessDate());
+    entity.setLastFailureDate(delivery.getLastFailureDate());
+    entity.setConsecutiveFailures(delivery.getConsecutiveFailures());
+    entity.setAverageLatency(delivery.getAverageLatency());
+  }
+
+  private PwaSubscriptionState toState(PushSubscriptionEntity entity) {
+    return new PwaSubscriptionState(entity.getId(),
+                                    entity.getSubscriptionId(),
+                                    entity.getUsername(),
+                                    entity.getEndpointHash(),
+                                    entity.getCreatedDate(),
+                                    entity.getLastSeenDate(),
+                                    entity.getLastSuccessDate(),
+                                    entity.getConsecutiveFailures());
   }
 
 }
@@ -0,0 +1,128 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.storage;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.exoplatform.portal.Constants;
+import org.exoplatform.services.cache.CacheService;
+import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.services.organization.OrganizationService;
+import org.exoplatform.services.organization.UserProfile;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * A cache of users preferred language, to avoid loading the whole user
+ * profile each time a notification is rendered for a user.
+ */
+@Component
+public class PwaUserLanguageStorage {
+
+  public static final String       PWA_USER_LANGUAGES_CACHE_NAME = "pwa.userLanguages";
+
+  private static final Log         LOG                           = ExoLogger.getLogger(PwaUserLanguageStorage.class);
+
+  /**
+   * Cached for users without preferred language, in order to distinguish them
+   * from users not cached yet
+   */
+  private static final String      NO_LANGUAGE                   = "";
+
+  @Autowired
+  private OrganizationService      organizationService;
+
+  @Autowired
+  private CacheService             cacheService;
+
+  private ExoCache<String, String> languagesCache;
+
+  @PostConstruct
+  public void init() {
+    languagesCache = cacheService.getCacheInstance(PWA_USER_LANGUAGES_CACHE_NAME);
+  }
+
+  /**
+   * @param username User name
+   * @return the preferred language of the user, else null
+   */
+  public String get(String username) {
+    String language = languagesCache.get(username);
+    if (language == null) {
+      language = load(username);
+    }
+    return StringUtils.defaultIfEmpty(language, null);
+  }
+
+  /**
+   * Retrieves the preferred language of a list of users. The user profiles are
+   * loaded only for users which aren't in cache.
+   *
+   * @param usernames {@link Collection} of user names
+   * @return {@link Map} of preferred languages indexed by user name, including
+   *         users without preferred language mapped to null
+   */
+  public Map<String, String> get(Collection<String> usernames) {
+    Map<String, String> languages = new HashMap<>();
+    usernames.stream().distinct().forEach(username -> languages.put(username, get(username)));
+    return languages;
+  }
+
+  /**
+   * Updates the cached preferred language of a user, for example when its
+   * profile is updated, which invalidates it on the other nodes
+   *
+   * @param username User name
+   * @param language preferred language, null if not set
+   */
+  public void put(String username, String language) {
+    languagesCache.put(username, StringUtils.defaultString(language, NO_LANGUAGE));
+  }
+
+  public int getCacheHits() {
+    return languagesCache.getCacheHit();
+  }
+
+  public int getCacheMisses() {
+    return languagesCache.getCacheMiss();
+  }
+
+  private String load(String username) {
+    try {
+      UserProfile userProfile = organizationService.getUserProfileHandler().findUserProfileByName(username);
+      String language = userProfile == null ? null : userProfile.getAttribute(Constants.USER_LANGUAGE);
+      // Loaded values are cached locally only, since a cluster wide put
+      // would invalidate the entry on the other nodes
+      languagesCache.putLocal(username, StringUtils.defaultString(language, NO_LANGUAGE));
+      return language;
+    } catch (Exception e) {
+      LOG.warn("Error retrieving user {} language", username, e);
+      return null;
+    }
+  }
+
+}
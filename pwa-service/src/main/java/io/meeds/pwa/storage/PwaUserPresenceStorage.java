@@ -0,0 +1,61 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.storage;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.exoplatform.services.cache.CacheService;
+import org.exoplatform.services.cache.ExoCache;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * A cluster wide cache of the last time users were seen active in the portal,
+ * indexed by user name.
+ */
+@Component
+public class PwaUserPresenceStorage {
+
+  public static final String     PWA_USER_PRESENCES_CACHE_NAME = "pwa.userPresences";
+
+  @Autowired
+  private CacheService           cacheService;
+
+  private ExoCache<String, Long> presencesCache;
+
+  @PostConstruct
+  public void init() {
+    presencesCache = cacheService.getCacheInstance(PWA_USER_PRESENCES_CACHE_NAME);
+  }
+
+  /**
+   * @param username User name
+   * @return the last time, in milliseconds, the user was seen active, else
+   *         null
+   */
+  public Long get(String username) {
+    return presencesCache.get(username);
+  }
+
+  public void put(String username, long lastActivityTime) {
+    presencesCache.put(username, lastActivityTime);
+  }
+
+}
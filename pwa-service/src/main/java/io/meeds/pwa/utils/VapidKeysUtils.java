@@ -1,6 +1,7 @@
 package io.meeds.pwa.utils;
 
 import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyFactory;
 import java.security.KeyPair;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
@@ -8,18 +9,29 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
 
+import org.bouncycastle.jce.ECNamedCurveTable;
 import org.bouncycastle.jce.interfaces.ECPrivateKey;
 import org.bouncycastle.jce.interfaces.ECPublicKey;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.jce.spec.ECNamedCurveParameterSpec;
+import org.bouncycastle.jce.spec.ECPublicKeySpec;
+import org.bouncycastle.math.ec.ECPoint;
 
+import lombok.SneakyThrows;
 import nl.martijndwars.webpush.Base64Encoder;
 import nl.martijndwars.webpush.Utils;
 import nl.martijndwars.webpush.cli.handlers.GenerateKeyHandler;
 
 public class VapidKeysUtils {
 
-  public static final String CURVE     = "prime256v1";
+  public static final String                     CURVE       = "prime256v1";
 
-  public static final String ALGORITHM = "ECDH";
+  public static final String                     ALGORITHM   = "ECDH";
+
+  private static final ECNamedCurveParameterSpec CURVE_SPEC  = ECNamedCurveTable.getParameterSpec(CURVE);
+
+  // KeyFactory isn't guaranteed to be thread safe, thus reuse one per thread
+  private static final ThreadLocal<KeyFactory>   KEY_FACTORY = ThreadLocal.withInitial(VapidKeysUtils::newKeyFactory);
 
   private VapidKeysUtils() {
     // Utils class, thus private constructor
@@ -53,4 +65,22 @@ public class VapidKeysUtils {
     return Utils.loadPrivateKey(privateKey);
   }
 
+  /**
+   * Decodes a Push Subscription public key (P-256 curve point) by reusing the
+   * curve parameters and the {@link KeyFactory} across calls
+   *
+   * @param publicKey raw curve point of the user agent public key
+   * @return decoded {@link PublicKey}
+   * @throws InvalidKeySpecException when the key can't be decoded
+   */
+  public static PublicKey decodeSubscriptionPublicKey(byte[] publicKey) throws InvalidKeySpecException {
+    ECPoint point = CURVE_SPEC.getCurve().decodePoint(publicKey);
+    return KEY_FACTORY.get().generatePublic(new ECPublicKeySpec(point, CURVE_SPEC));
+  }
+
+  @SneakyThrows
+  private static KeyFactory newKeyFactory() {
+    return KeyFactory.getInstance(ALGORITHM, BouncyCastleProvider.PROVIDER_NAME);
+  }
+
 }
@@ -2,55 +2,33 @@ self.addEventListener('install', event => self.skipWaiting());
 
 self.addEventListener('push', (event) => {
   if (self?.Notification?.permission === 'granted') {
-    const data = event?.data?.text?.() || {};
-    const action = data.split(':')[1]
+    const data = event?.data?.text?.() || '';
     event.waitUntil(new Promise(async (resolve, reject) => {
       try {
-        if (action === 'open') {
-          const notificationId = data.split(':')[0]
-          const webNotification = await fetch(`/pwa/rest/notifications/${notificationId}`, {
-            method: 'GET',
-            credentials: 'include',
-          }).then(resp => resp.ok && resp.json());
-          if (webNotification) {
-            const title = webNotification.title || '';
-            delete webNotification.title;
-            webNotification.icon = webNotification.icon || webNotification.image || self.location.origin + '/pwa/rest/manifest/smallIcon?sizes=72x72';
-            webNotification.data = {
-              notificationId,
-              url: self.location.origin + (webNotification.url || '/'),
-            };
-            delete webNotification.url;
-            if (!webNotification.tag) {
-              delete webNotification.tag;
-              delete webNotification.renotify;
+        if (data.startsWith('{')) {
+          // Versioned payload: the notifications are either rendered by the
+          // server and sent inside the encrypted Push message, or only
+          // identified when coalesced without rendered messages
+          const message = JSON.parse(data);
+          if (message.action === 'open') {
+            for (const notification of message.notifications) {
+              if (notification.message) {
+                await displayWebNotification(notification.id, notification.message);
+              } else {
+                await showWebNotification(notification.id);
+              }
             }
-            if (!webNotification.image) {
-              delete webNotification.image;
-            }
-            if (!webNotification.lang) {
-              delete webNotification.lang;
-            }
-            if (!webNotification.dir) {
-              delete webNotification.dir;
-            }
-            if (!webNotification.body) {
-              delete webNotification.body;
-            }
-            if (!webNotification.vibrate) {
-              delete webNotification.vibrate;
-            }
-            if (!webNotification.badge) {
-              delete webNotification.badge;
-            }
-            if (!Notification.maxActions || !webNotification.actions) {
-              delete webNotification.actions;
-            } else if (webNotification.actions.length > Notification.maxActions) {
-              webNotification.actions = webNotification.actions.slice(0, Notification.maxActions);
-            }
-            await self.registration.showNotification(title, webNotification);
             await refreshBadge();
+            await sendPresence();
+          }
+        } else if (data.split(':')[1] === 'open') {
+          // Legacy payload 'id:open' of a single notification
+          const notificationIds = data.split(':')[0].split(',');
+          for (const notificationId of notificationIds) {
+            await showWebNotification(notificationId);
           }
+          await refreshBadge();
+          await sendPresence();
         }
         resolve();
       } catch (e) {
@@ -123,6 +101,55 @@ self.addEventListener('notificationclose', (event) => {
   }
 });
 
+async function showWebNotification(notificationId) {
+  const webNotification = await fetch(`/pwa/rest/notifications/${notificationId}`, {
+    method: 'GET',
+    credentials: 'include',
+  }).then(resp => resp.ok && resp.json());
+  if (webNotification) {
+    await displayWebNotification(notificationId, webNotification);
+  }
+}
+
+async function displayWebNotification(notificationId, webNotification) {
+  const title = webNotification.title || '';
+  delete webNotification.title;
+  webNotification.icon = webNotification.icon || webNotification.image || self.location.origin + '/pwa/rest/manifest/smallIcon?sizes=72x72';
+  webNotification.data = {
+    notificationId,
+    url: self.location.origin + (webNotification.url || '/'),
+  };
+  delete webNotification.url;
+  if (!webNotification.tag) {
+    delete webNotification.tag;
+    delete webNotification.renotify;
+  }
+  if (!webNotification.image) {
+    delete webNotification.image;
+  }
+  if (!webNotification.lang) {
+    delete webNotification.lang;
+  }
+  if (!webNotification.dir) {
+    delete webNotification.dir;
+  }
+  if (!webNotification.body) {
+    delete webNotification.body;
+  }
+  if (!webNotification.vibrate) {
+    delete webNotification.vibrate;
+  }
+  if (!webNotification.badge) {
+    delete webNotification.badge;
+  }
+  if (!Notification.maxActions || !webNotification.actions) {
+    delete webNotification.actions;
+  } else if (webNotification.actions.length > Notification.maxActions) {
+    webNotification.actions = webNotification.actions.slice(0, Notification.maxActions);
+  }
+  await self.registration.showNotification(title, webNotification);
+}
+
 async function handleClose(notificationId) {
   try {
     await updateNotification(notificationId, 'markRead');
@@ -147,6 +174,24 @@ async function updateNotification(notificationId, action) {
   });
 }
 
+// When a portal window is focused while receiving a Push message, notify the
+// server that the user is active in order to hold the next Push Notifications
+async function sendPresence() {
+  try {
+    const windowClients = await clients.matchAll({
+      type: 'window',
+    });
+    if (windowClients.some(windowClient => windowClient.focused)) {
+      await fetch('/pwa/rest/presence', {
+        method: 'PUT',
+        credentials: 'include',
+      });
+    }
+  } catch(e) {
+    console.error(e);
+  }
+}
+
 async function refreshBadge() {
   if (navigator.setAppBadge) {
     const notifications = await self.registration.getNotifications();
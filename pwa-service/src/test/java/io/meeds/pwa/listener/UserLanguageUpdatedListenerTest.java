@@ -0,0 +1,71 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.listener;
+
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import org.exoplatform.portal.Constants;
+import org.exoplatform.services.organization.OrganizationService;
+import org.exoplatform.services.organization.UserProfile;
+
+import io.meeds.pwa.storage.PwaUserLanguageStorage;
+
+@SpringBootTest(classes = {
+                            UserLanguageUpdatedListener.class,
+})
+@ExtendWith(MockitoExtension.class)
+public class UserLanguageUpdatedListenerTest {
+
+  private static final String         USERNAME = "testUser";
+
+  @MockBean
+  private PwaUserLanguageStorage      pwaUserLanguageStorage;
+
+  @MockBean
+  private OrganizationService         organizationService;
+
+  @Autowired
+  private UserLanguageUpdatedListener userLanguageUpdatedListener;
+
+  @Mock
+  private UserProfile                 userProfile;
+
+  @Test
+  public void init() throws Exception {
+    verify(organizationService).addListenerPlugin(userLanguageUpdatedListener);
+  }
+
+  @Test
+  public void postSave() throws Exception {
+    when(userProfile.getUserName()).thenReturn(USERNAME);
+    when(userProfile.getAttribute(Constants.USER_LANGUAGE)).thenReturn("fr");
+    userLanguageUpdatedListener.postSave(userProfile, false);
+    verify(pwaUserLanguageStorage).put(USERNAME, "fr");
+  }
+
+}
@@ -0,0 +1,67 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import org.exoplatform.commons.api.notification.model.NotificationInfo;
+
+import io.meeds.pwa.model.PwaNotificationDecision;
+import io.meeds.pwa.service.PwaUserPresenceService;
+
+@SpringBootTest(classes = {
+                            PresencePwaNotificationPolicy.class,
+})
+public class PresencePwaNotificationPolicyTest {
+
+  private static final String           TEST_USER = "testUser";
+
+  @MockBean
+  private PwaUserPresenceService        pwaUserPresenceService;
+
+  @Autowired
+  private PresencePwaNotificationPolicy presencePwaNotificationPolicy;
+
+  @Mock
+  private NotificationInfo              notification;
+
+  @Test
+  void decide() {
+    assertEquals(PwaNotificationDecision.SEND, presencePwaNotificationPolicy.decide(notification, TEST_USER));
+
+    when(pwaUserPresenceService.isActive(TEST_USER)).thenReturn(true);
+    assertEquals(PwaNotificationDecision.HOLD, presencePwaNotificationPolicy.decide(notification, TEST_USER));
+
+    ReflectionTestUtils.setField(presencePwaNotificationPolicy, "activeUserDecision", PwaNotificationDecision.SKIP);
+    try {
+      assertEquals(PwaNotificationDecision.SKIP, presencePwaNotificationPolicy.decide(notification, TEST_USER));
+    } finally {
+      ReflectionTestUtils.setField(presencePwaNotificationPolicy, "activeUserDecision", PwaNotificationDecision.HOLD);
+    }
+  }
+
+}
@@ -0,0 +1,157 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import org.exoplatform.commons.api.notification.model.NotificationInfo;
+import org.exoplatform.commons.api.notification.model.PluginKey;
+import org.exoplatform.services.resources.LocaleConfig;
+import org.exoplatform.services.resources.impl.LocaleConfigImpl;
+
+import io.meeds.pwa.model.PwaNotificationMessage;
+import io.meeds.pwa.model.PwaNotificationPriority;
+
+@SpringBootTest(classes = {
+                            PwaNotificationPluginRegistry.class,
+})
+public class PwaNotificationPluginRegistryTest {
+
+  private static final String           PLUGIN_ID = "TestPlugin";
+
+  @MockBean
+  private DefaultPwaNotificationPlugin  defaultPwaNotificationPlugin;
+
+  @Autowired
+  private PwaNotificationPluginRegistry pwaNotificationPluginRegistry;
+
+  private PwaNotificationPlugin         plugin;
+
+  private PwaNotificationPlugin         duplicatedPlugin;
+
+  @BeforeEach
+  void setup() {
+    plugin = mock(PwaNotificationPlugin.class);
+    duplicatedPlugin = mock(PwaNotificationPlugin.class);
+    when(defaultPwaNotificationPlugin.getId()).thenReturn("default");
+    when(plugin.getId()).thenReturn(PLUGIN_ID);
+    when(duplicatedPlugin.getId()).thenReturn(PLUGIN_ID);
+    ReflectionTestUtils.setField(pwaNotificationPluginRegistry,
+                                 "plugins",
+                                 Arrays.asList(defaultPwaNotificationPlugin, plugin, duplicatedPlugin));
+    pwaNotificationPluginRegistry.init();
+  }
+
+  @Test
+  void getPlugin() {
+    assertEquals(Arrays.asList(PLUGIN_ID, "default"), pwaNotificationPluginRegistry.getPluginIds());
+    assertEquals(plugin, pwaNotificationPluginRegistry.getPlugin(PLUGIN_ID));
+    assertEquals(defaultPwaNotificationPlugin, pwaNotificationPluginRegistry.getPlugin("OtherPlugin"));
+  }
+
+  @Test
+  void getPriority() {
+    NotificationInfo notification = mock(NotificationInfo.class);
+    when(notification.getKey()).thenReturn(PluginKey.key(PLUGIN_ID));
+    when(plugin.getPriority()).thenReturn(PwaNotificationPriority.HIGH);
+    when(plugin.getTtl()).thenReturn(3600);
+    assertEquals(PwaNotificationPriority.HIGH, pwaNotificationPluginRegistry.getPriority(notification));
+    assertEquals(3600, pwaNotificationPluginRegistry.getTtl(notification));
+  }
+
+  @Test
+  void getTopic() {
+    NotificationInfo notification = mock(NotificationInfo.class);
+    when(notification.getKey()).thenReturn(PluginKey.key(PLUGIN_ID));
+    when(plugin.getTopic(notification)).thenReturn("TestPlugin-1");
+    assertEquals("TestPlugin-1", pwaNotificationPluginRegistry.getTopic(notification));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void process() {
+    NotificationInfo notification = mock(NotificationInfo.class);
+    when(notification.getKey()).thenReturn(PluginKey.key(PLUGIN_ID));
+    PwaNotificationMessage message = new PwaNotificationMessage();
+    when(plugin.process(any(), any(LocaleConfig.class))).thenReturn(message);
+    assertTrue(pwaNotificationPluginRegistry.getStatistics().isEmpty());
+
+    assertEquals(message, pwaNotificationPluginRegistry.process(notification, null));
+    when(plugin.process(any(), any(LocaleConfig.class))).thenThrow(IllegalStateException.class);
+    assertThrows(IllegalStateException.class, () -> pwaNotificationPluginRegistry.process(notification, null));
+
+    Map<String, Object> statistics = (Map<String, Object>) pwaNotificationPluginRegistry.getStatistics().get(PLUGIN_ID);
+    assertEquals(2l, statistics.get("renders"));
+    assertEquals(1l, statistics.get("failures"));
+
+    pwaNotificationPluginRegistry.handleAction(notification, "action", "testUser");
+    verify(plugin).handleAction(notification, "action", "testUser");
+  }
+
+  @Test
+  void processByBatch() {
+    NotificationInfo notification = mock(NotificationInfo.class);
+    when(notification.getKey()).thenReturn(PluginKey.key(PLUGIN_ID));
+    NotificationInfo otherNotification = mock(NotificationInfo.class);
+    when(otherNotification.getKey()).thenReturn(PluginKey.key("OtherPlugin"));
+    LocaleConfigImpl frLocaleConfig = new LocaleConfigImpl();
+    frLocaleConfig.setLocale(Locale.FRENCH);
+    LocaleConfigImpl enLocaleConfig = new LocaleConfigImpl();
+    enLocaleConfig.setLocale(Locale.ENGLISH);
+    List<LocaleConfig> localeConfigs = Arrays.asList(frLocaleConfig, enLocaleConfig);
+
+    PwaNotificationMessage message = new PwaNotificationMessage();
+    when(plugin.process(any(), any(LocaleConfig.class))).thenReturn(message);
+    when(plugin.process(anyList(), anyCollection())).thenCallRealMethod();
+    PwaNotificationMessage defaultMessage = new PwaNotificationMessage();
+    when(defaultPwaNotificationPlugin.process(any(), any(LocaleConfig.class))).thenReturn(defaultMessage);
+    when(defaultPwaNotificationPlugin.process(anyList(), anyCollection())).thenCallRealMethod();
+
+    Map<String, List<PwaNotificationMessage>> messages =
+                                                       pwaNotificationPluginRegistry.process(Arrays.asList(otherNotification,
+                                                                                                           notification),
+                                                                                             localeConfigs);
+    assertEquals(2, messages.size());
+    assertEquals(Arrays.asList(defaultMessage, message), messages.get("fr"));
+    assertEquals(Arrays.asList(defaultMessage, message), messages.get("en"));
+    verify(plugin).process(notification, frLocaleConfig);
+    verify(plugin).process(notification, enLocaleConfig);
+  }
+
+}
@@ -0,0 +1,65 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+public class PwaNotificationRenderContextTest {
+
+  @Test
+  void getWithoutContext() {
+    AtomicInteger loads = new AtomicInteger();
+    Function<String, String> loader = id -> id + loads.incrementAndGet();
+    assertEquals("11", PwaNotificationRenderContext.get("type", "1", loader));
+    assertEquals("12", PwaNotificationRenderContext.get("type", "1", loader));
+  }
+
+  @Test
+  void getWithContext() {
+    AtomicInteger loads = new AtomicInteger();
+    Function<String, String> loader = id -> id + loads.incrementAndGet();
+    try (PwaNotificationRenderContext context = PwaNotificationRenderContext.open()) {
+      assertEquals("11", PwaNotificationRenderContext.get("type", "1", loader));
+      assertEquals("11", PwaNotificationRenderContext.get("type", "1", loader));
+      assertEquals("12", PwaNotificationRenderContext.get("otherType", "1", loader));
+      assertNull(PwaNotificationRenderContext.get("nullType", "1", id -> {
+        loads.incrementAndGet();
+        return null;
+      }));
+      assertNull(PwaNotificationRenderContext.get("nullType", "1", id -> {
+        loads.incrementAndGet();
+        return null;
+      }));
+      assertEquals(3, loads.get());
+
+      try (PwaNotificationRenderContext nestedContext = PwaNotificationRenderContext.open()) {
+        assertEquals("11", PwaNotificationRenderContext.get("type", "1", loader));
+      }
+      assertEquals("11", PwaNotificationRenderContext.get("type", "1", loader));
+    }
+    assertEquals("14", PwaNotificationRenderContext.get("type", "1", loader));
+  }
+
+}
@@ -0,0 +1,122 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.rest;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureWebMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import io.meeds.pwa.service.PwaNotificationService;
+import io.meeds.pwa.service.PwaPushDeliveryService;
+import io.meeds.pwa.service.PwaSubscriptionCleanupService;
+import io.meeds.pwa.service.PwaSubscriptionService;
+import io.meeds.spring.web.security.PortalAuthenticationManager;
+import io.meeds.spring.web.security.WebSecurityConfiguration;
+
+import jakarta.servlet.Filter;
+
+@SpringBootTest(classes = { PwaMonitoringRest.class, PortalAuthenticationManager.class, })
+@ContextConfiguration(classes = { WebSecurityConfiguration.class })
+@AutoConfigureWebMvc
+@AutoConfigureMockMvc(addFilters = false)
+@ExtendWith(MockitoExtension.class)
+public class PwaMonitoringRestTest {
+
+  private static final String REST_PATH     = "/monitoring"; // NOSONAR
+
+  private static final String SIMPLE_USER   = "simple";
+
+  private static final String ADMIN_USER    = "admin";
+
+  private static final String TEST_PASSWORD = "testPassword";
+
+  @MockBean
+  private PwaSubscriptionService        pwaSubscriptionService;
+
+  @MockBean
+  private PwaNotificationService        pwaNotificationService;
+
+  @MockBean
+  private PwaPushDeliveryService        pwaPushDeliveryService;
+
+  @MockBean
+  private PwaSubscriptionCleanupService pwaSubscriptionCleanupService;
+
+  @Autowired
+  private SecurityFilterChain           filterChain;
+
+  @Autowired
+  private WebApplicationContext         context;
+
+  private MockMvc                       mockMvc;
+
+  @BeforeEach
+  void setup() {
+    mockMvc = MockMvcBuilders.webAppContextSetup(context)
+                             .addFilters(filterChain.getFilters().toArray(new Filter[0]))
+                             .build();
+  }
+
+  @Test
+  void getStatistics() throws Exception {
+    when(pwaSubscriptionService.getStatistics()).thenReturn(Map.of("subscriptionsCacheHits", 3));
+    when(pwaNotificationService.getStatistics()).thenReturn(Map.of("dispatchQueueSize", 2));
+
+    ResultActions response = mockMvc.perform(get(REST_PATH).with(testSimpleUser()));
+    response.andExpect(status().isForbidden());
+
+    response = mockMvc.perform(get(REST_PATH).with(testAdminUser()));
+    response.andExpect(status().isOk())
+            .andExpect(jsonPath("$.subscriptionsCacheHits").value(3))
+            .andExpect(jsonPath("$.dispatchQueueSize").value(2));
+  }
+
+  private RequestPostProcessor testSimpleUser() {
+    return user(SIMPLE_USER).password(TEST_PASSWORD)
+                            .authorities(new SimpleGrantedAuthority("users"));
+  }
+
+  private RequestPostProcessor testAdminUser() {
+    return user(ADMIN_USER).password(TEST_PASSWORD)
+                           .authorities(new SimpleGrantedAuthority("users"), new SimpleGrantedAuthority("administrators"));
+  }
+
+}
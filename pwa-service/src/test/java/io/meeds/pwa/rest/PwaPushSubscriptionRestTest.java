@@ -52,6 +52,7 @@ import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
 import io.meeds.pwa.model.UserPushSubscription;
 import io.meeds.pwa.service.PwaSubscriptionService;
+import io.meeds.pwa.service.PwaUserPresenceService;
 import io.meeds.spring.web.security.PortalAuthenticationManager;
 import io.meeds.spring.web.security.WebSecurityConfiguration;
 
@@ -86,6 +87,9 @@ public class PwaPushSubscriptionRestTest {
   @MockBean
   private PwaSubscriptionService pwaSubscriptionService;
 
+  @MockBean
+  private PwaUserPresenceService pwaUserPresenceService;
+
   @Autowired
   private SecurityFilterChain    filterChain;
 
@@ -112,6 +116,7 @@ public class PwaPushSubscriptionRestTest {
     response.andExpect(status().isOk());
     userPushSubscription.setDeviceType("Robot");
     verify(pwaSubscriptionService).createSubscription(userPushSubscription, SIMPLE_USER);
+    verify(pwaUserPresenceService).markActive(SIMPLE_USER);
   }
 
   @Test
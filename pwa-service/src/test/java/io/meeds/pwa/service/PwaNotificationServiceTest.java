@@ -18,57 +18,86 @@
  */
 package io.meeds.pwa.service;
 
+import static io.meeds.pwa.service.PwaNotificationService.EVENT_NOTIFICATION_ID_PARAM_NAME;
+import static io.meeds.pwa.service.PwaNotificationService.EVENT_NOTIFICATION_SENT;
+import static io.meeds.pwa.service.PwaNotificationService.PWA_NOTIFICATION_CREATED;
 import static io.meeds.pwa.service.PwaNotificationService.PWA_NOTIFICATION_MARK_READ_USER_ACTION;
 import static io.meeds.pwa.service.PwaNotificationService.PWA_NOTIFICATION_OPEN_UI_ACTION;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.ScheduledFuture;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import org.exoplatform.commons.api.notification.model.NotificationInfo;
 import org.exoplatform.commons.api.notification.model.PluginKey;
 import org.exoplatform.commons.api.notification.service.WebNotificationService;
 import org.exoplatform.commons.exception.ObjectNotFoundException;
-import org.exoplatform.portal.Constants;
 import org.exoplatform.services.listener.ListenerService;
-import org.exoplatform.services.organization.OrganizationService;
-import org.exoplatform.services.organization.UserProfile;
-import org.exoplatform.services.organization.UserProfileHandler;
 import org.exoplatform.services.resources.LocaleConfigService;
 import org.exoplatform.services.resources.Orientation;
 import org.exoplatform.services.resources.ResourceBundleService;
 import org.exoplatform.services.resources.impl.LocaleConfigImpl;
 
+import io.meeds.pwa.model.PwaNotificationDecision;
 import io.meeds.pwa.model.PwaNotificationMessage;
+import io.meeds.pwa.model.PwaNotificationPriority;
+import io.meeds.pwa.model.PwaOutboxEntry;
 import io.meeds.pwa.model.UserPushSubscription;
-import io.meeds.pwa.plugin.DefaultPwaNotificationPlugin;
+import io.meeds.pwa.plugin.PwaNotificationPluginRegistry;
+import io.meeds.pwa.plugin.PwaNotificationPolicy;
+import io.meeds.pwa.service.PwaPushDeliveryService.PushServiceUnavailableException;
+import io.meeds.pwa.storage.PwaNotificationMessageStorage;
 import io.meeds.pwa.storage.PwaNotificationStorage;
-
-import lombok.SneakyThrows;
-import nl.martijndwars.webpush.PushService;
+import io.meeds.pwa.storage.PwaOutboxStorage;
+import io.meeds.pwa.storage.PwaUserLanguageStorage;
 
 @SpringBootTest(classes = {
                             PwaNotificationService.class,
 })
+@TestPropertySource(
+                    properties = {
+                                   "pwa.notifications.outbox.pollInterval=100",
+                    })
 public class PwaNotificationServiceTest {
 
   private static final String          SUBSCRIPTION_ID       = "subscriptionId";
@@ -81,6 +110,10 @@ public class PwaNotificationServiceTest {
 
   private static final String          TEST_USER             = "testUser";
 
+  private static final String          LEASE_TOKEN           = "leaseToken";
+
+  private static final String          RECLAIMED_LEASE_TOKEN = "reclaimedLeaseToken";
+
   @MockBean
   private PwaManifestService           pwaManifestService;
 
@@ -97,7 +130,7 @@ public class PwaNotificationServiceTest {
   private ListenerService              listenerService;
 
   @MockBean
-  private OrganizationService          organizationService;
+  private PwaUserLanguageStorage       pwaUserLanguageStorage;
 
   @MockBean
   private LocaleConfigService          localeConfigService;
@@ -106,10 +139,19 @@ public class PwaNotificationServiceTest {
   private ResourceBundleService        resourceBundleService;
 
   @MockBean
-  private DefaultPwaNotificationPlugin defaultPwaNotificationPlugin;
+  private PwaNotificationPluginRegistry pwaNotificationPluginRegistry;
+
+  @MockBean
+  private PwaPushDeliveryService       pwaPushDeliveryService;
 
   @MockBean
-  private PushService                  pushService;
+  private PwaOutboxStorage             pwaOutboxStorage;
+
+  @MockBean
+  private PwaNotificationMessageStorage pwaNotificationMessageStorage;
+
+  @MockBean
+  private PwaNotificationPolicy        pwaNotificationPolicy;
 
   @Autowired
   private PwaNotificationService       pwaNotificationService;
@@ -117,12 +159,6 @@ public class PwaNotificationServiceTest {
   @Mock
   private NotificationInfo             notification;
 
-  @Mock
-  private UserProfile                  userProfile;
-
-  @Mock
-  private UserProfileHandler           userProfileHandler;
-
   @Mock
   private PwaNotificationMessage       notificationMessage;
 
@@ -135,6 +171,11 @@ public class PwaNotificationServiceTest {
   @Mock
   private StatusLine                   statusLine;
 
+  @BeforeEach
+  public void setup() {
+    when(pwaOutboxStorage.add(anyLong())).thenReturn(LEASE_TOKEN);
+  }
+
   @Test
   public void getNotification() throws IllegalAccessException, ObjectNotFoundException {
     assertThrows(ObjectNotFoundException.class, () -> pwaNotificationService.getNotification(NOTIFICATION_ID, TEST_USER));
@@ -143,7 +184,7 @@ public class PwaNotificationServiceTest {
     mockWebNotification();
     mockUserLanguage();
 
-    when(defaultPwaNotificationPlugin.process(eq(notification), any())).thenReturn(notificationMessage);
+    when(pwaNotificationPluginRegistry.process(eq(notification), any())).thenReturn(notificationMessage);
     PwaNotificationMessage result = pwaNotificationService.getNotification(NOTIFICATION_ID, TEST_USER);
     assertEquals(notificationMessage, result);
     verify(notificationMessage).setActions(argThat(list -> list.size()
@@ -155,6 +196,12 @@ public class PwaNotificationServiceTest {
     verify(notificationMessage).setDir("ltr");
     verify(notificationMessage).setTag(String.valueOf(NOTIFICATION_ID));
     verify(notificationMessage).setUrl("/");
+    verify(pwaNotificationMessageStorage).put(NOTIFICATION_ID, "fr", notificationMessage);
+
+    PwaNotificationMessage cachedMessage = new PwaNotificationMessage();
+    when(pwaNotificationMessageStorage.get(NOTIFICATION_ID, "fr")).thenReturn(cachedMessage);
+    assertEquals(cachedMessage, pwaNotificationService.getNotification(NOTIFICATION_ID, TEST_USER));
+    verify(pwaNotificationPluginRegistry).process(eq(notification), any());
   }
 
   @Test
@@ -171,16 +218,18 @@ public class PwaNotificationServiceTest {
     mockWebNotification();
     pwaNotificationService.updateNotification(NOTIFICATION_ID, PWA_NOTIFICATION_MARK_READ_USER_ACTION, TEST_USER);
     verify(webNotificationService).markRead(String.valueOf(NOTIFICATION_ID));
-    verifyNoInteractions(defaultPwaNotificationPlugin);
+    verifyNoInteractions(pwaNotificationPluginRegistry);
+    verify(pwaNotificationMessageStorage).remove(NOTIFICATION_ID);
 
     String action = "otherAction";
     pwaNotificationService.updateNotification(NOTIFICATION_ID, action, TEST_USER);
-    verify(defaultPwaNotificationPlugin).handleAction(notification, action, TEST_USER);
+    verify(pwaNotificationPluginRegistry).handleAction(notification, action, TEST_USER);
+    verify(pwaNotificationMessageStorage, times(2)).remove(NOTIFICATION_ID);
   }
 
   @Test
   public void create() throws Exception { // NOSONAR
-    ScheduledFuture<?> future = pwaNotificationService.create(NOTIFICATION_ID);
+    CompletableFuture<Integer> future = pwaNotificationService.create(NOTIFICATION_ID);
     assertNull(future);
     when(pwaManifestService.isPwaEnabled()).thenReturn(true);
     future = pwaNotificationService.create(NOTIFICATION_ID);
@@ -192,7 +241,7 @@ public class PwaNotificationServiceTest {
     when(pwaSubscriptionService.getSubscriptions(TEST_USER)).thenReturn(Collections.singletonList(userPushSubscription));
     when(userPushSubscription.getEndpoint()).thenReturn(SUBSCRIPTION_ENDPOINT);
     when(userPushSubscription.getId()).thenReturn(SUBSCRIPTION_ID);
-    when(pushService.send(any())).thenReturn(httpResponse);
+    when(pwaPushDeliveryService.send(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(httpResponse));
     when(httpResponse.getStatusLine()).thenReturn(statusLine);
     when(statusLine.getStatusCode()).thenReturn(401);
 
@@ -200,8 +249,11 @@ public class PwaNotificationServiceTest {
     assertNotNull(future);
     assertEquals(0, (int) future.get());
     verify(pwaSubscriptionService, never()).deleteSubscription(SUBSCRIPTION_ID, TEST_USER, false);
-    verify(pushService).send(argThat(n -> (NOTIFICATION_ID + ":" +
-        PWA_NOTIFICATION_OPEN_UI_ACTION).equals(new String(n.getPayload()))));
+    verify(pwaSubscriptionService).markFailed(userPushSubscription);
+    verify(pwaPushDeliveryService).send(eq(userPushSubscription),
+                                        argThat(payload -> (NOTIFICATION_ID + ":" +
+                                            PWA_NOTIFICATION_OPEN_UI_ACTION).equals(new String(payload))),
+                                        any());
 
     when(statusLine.getStatusCode()).thenReturn(410);
     future = pwaNotificationService.create(NOTIFICATION_ID);
@@ -214,13 +266,480 @@ public class PwaNotificationServiceTest {
     assertNotNull(future);
     assertEquals(1, (int) future.get());
     verify(pwaSubscriptionService).deleteSubscription(SUBSCRIPTION_ID, TEST_USER, false);
+    verify(pwaOutboxStorage, times(4)).add(NOTIFICATION_ID);
+    verify(pwaOutboxStorage, times(4)).remove(NOTIFICATION_ID, LEASE_TOKEN);
+
+    when(statusLine.getStatusCode()).thenReturn(503);
+    future = pwaNotificationService.create(NOTIFICATION_ID);
+    assertNotNull(future);
+    assertEquals(0, (int) future.get());
+
+    when(pwaPushDeliveryService.send(any(), any(), any())).thenReturn(CompletableFuture.failedFuture(new IllegalStateException()));
+    future = pwaNotificationService.create(NOTIFICATION_ID);
+    assertNotNull(future);
+    assertEquals(0, (int) future.get());
+    // Push Service errors aren't failures of the subscription
+    verify(pwaSubscriptionService).markFailed(userPushSubscription);
+  }
+
+  @Test
+  public void createWhenSubscriptionSuspended() throws Exception {
+    when(pwaManifestService.isPwaEnabled()).thenReturn(true);
+    mockWebNotification();
+    when(pwaSubscriptionService.getSubscriptions(TEST_USER)).thenReturn(Collections.singletonList(userPushSubscription));
+    when(pwaSubscriptionService.isSuspended(userPushSubscription)).thenReturn(true);
+
+    assertEquals(0, (int) pwaNotificationService.create(NOTIFICATION_ID).get());
+    verify(pwaSubscriptionService).markSkipped(userPushSubscription);
+    verifyNoInteractions(pwaPushDeliveryService);
+  }
+
+  @Test
+  public void createWhenAlreadyInOutbox() throws Exception {
+    when(pwaManifestService.isPwaEnabled()).thenReturn(true);
+    mockWebNotification();
+    when(pwaOutboxStorage.add(NOTIFICATION_ID)).thenThrow(new DataIntegrityViolationException("Duplicate notification"));
+
+    assertEquals(0, (int) pwaNotificationService.create(NOTIFICATION_ID).get());
+    verify(pwaOutboxStorage, never()).remove(eq(NOTIFICATION_ID), any());
+    verifyNoInteractions(pwaPushDeliveryService);
+  }
+
+  @Test
+  public void createWhenPushServiceUnavailable() throws Exception {
+    when(pwaManifestService.isPwaEnabled()).thenReturn(true);
+    mockWebNotification();
+    when(pwaSubscriptionService.getSubscriptions(TEST_USER)).thenReturn(Collections.singletonList(userPushSubscription));
+    when(pwaPushDeliveryService.send(any(), any(), any())).thenReturn(CompletableFuture.failedFuture(new PushServiceUnavailableException("https://push.test")));
+
+    CompletableFuture<Integer> future = pwaNotificationService.create(NOTIFICATION_ID);
+    assertEquals(0, (int) future.get());
+    verify(pwaOutboxStorage).defer(eq(NOTIFICATION_ID), eq(LEASE_TOKEN), anyLong());
+    verify(pwaOutboxStorage, never()).remove(eq(NOTIFICATION_ID), any());
+    verify(pwaSubscriptionService, never()).markFailed(any());
+    verify(listenerService, never()).broadcast(PWA_NOTIFICATION_CREATED, NOTIFICATION_ID, null);
+  }
+
+  @Test
+  @DirtiesContext
+  public void destroyAwaitsPendingResponses() throws Exception {
+    when(pwaManifestService.isPwaEnabled()).thenReturn(true);
+    mockWebNotification();
+    when(pwaSubscriptionService.getSubscriptions(TEST_USER)).thenReturn(Collections.singletonList(userPushSubscription));
+    CompletableFuture<HttpResponse> response = new CompletableFuture<>();
+    when(pwaPushDeliveryService.send(any(), any(), any())).thenReturn(response);
+    when(httpResponse.getStatusLine()).thenReturn(statusLine);
+    when(statusLine.getStatusCode()).thenReturn(201);
+
+    CompletableFuture<Integer> future = pwaNotificationService.create(NOTIFICATION_ID);
+    verify(pwaPushDeliveryService, timeout(5000)).send(eq(userPushSubscription), any(), any());
+    CompletableFuture.runAsync(() -> response.complete(httpResponse),
+                               CompletableFuture.delayedExecutor(200, TimeUnit.MILLISECONDS));
+
+    pwaNotificationService.destroy();
+    assertTrue(future.isDone());
+    assertEquals(1, (int) future.get());
+    verify(pwaOutboxStorage).remove(NOTIFICATION_ID, LEASE_TOKEN);
+  }
+
+  @Test
+  public void createCoalesced() throws Exception {
+    when(pwaManifestService.isPwaEnabled()).thenReturn(true);
+    mockWebNotification();
+    NotificationInfo otherNotification = mock(NotificationInfo.class);
+    when(webNotificationService.getNotificationInfo(String.valueOf(NOTIFICATION_ID + 1))).thenReturn(otherNotification);
+    when(otherNotification.getTo()).thenReturn(TEST_USER);
+    when(otherNotification.getId()).thenReturn(String.valueOf(NOTIFICATION_ID + 1));
+    when(pwaSubscriptionService.getSubscriptions(TEST_USER)).thenReturn(Collections.singletonList(userPushSubscription));
+    when(pwaPushDeliveryService.send(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(httpResponse));
+    when(httpResponse.getStatusLine()).thenReturn(statusLine);
+    when(statusLine.getStatusCode()).thenReturn(201);
+
+    CompletableFuture<Integer> future = pwaNotificationService.create(NOTIFICATION_ID);
+    CompletableFuture<Integer> otherFuture = pwaNotificationService.create(NOTIFICATION_ID + 1);
+    assertEquals(1, (int) future.get());
+    assertEquals(1, (int) otherFuture.get());
+    verify(pwaPushDeliveryService).send(eq(userPushSubscription),
+                                        argThat(payload -> new String(payload).startsWith("{")
+                                            && new String(payload).contains("\"version\":2")
+                                            && new String(payload).contains("\"id\":\"" + NOTIFICATION_ID + "\"")
+                                            && new String(payload).contains("\"id\":\"" + (NOTIFICATION_ID + 1) + "\"")),
+                                        any());
+    verify(listenerService).broadcast(PWA_NOTIFICATION_CREATED, NOTIFICATION_ID, null);
+    verify(listenerService).broadcast(PWA_NOTIFICATION_CREATED, NOTIFICATION_ID + 1, null);
+    verify(listenerService).broadcast(eq(EVENT_NOTIFICATION_SENT),
+                                      eq(TEST_USER),
+                                      ArgumentMatchers.<Map<String, Object>> argThat(params -> Long.valueOf(NOTIFICATION_ID)
+                                                                                                   .equals(params.get(EVENT_NOTIFICATION_ID_PARAM_NAME))));
+    verify(listenerService).broadcast(eq(EVENT_NOTIFICATION_SENT),
+                                      eq(TEST_USER),
+                                      ArgumentMatchers.<Map<String, Object>> argThat(params -> Long.valueOf(NOTIFICATION_ID + 1)
+                                                                                                   .equals(params.get(EVENT_NOTIFICATION_ID_PARAM_NAME))));
+    assertEquals(0, pwaNotificationService.getStatistics().get("dispatchQueueSize"));
+  }
+
+  @Test
+  public void createByPriority() throws Exception {
+    when(pwaManifestService.isPwaEnabled()).thenReturn(true);
+    mockWebNotification();
+    NotificationInfo otherNotification = mock(NotificationInfo.class);
+    UserPushSubscription otherSubscription = mock(UserPushSubscription.class);
+    when(webNotificationService.getNotificationInfo(String.valueOf(NOTIFICATION_ID + 1))).thenReturn(otherNotification);
+    when(otherNotification.getTo()).thenReturn("otherUser");
+    when(otherNotification.getId()).thenReturn(String.valueOf(NOTIFICATION_ID + 1));
+    when(pwaNotificationPluginRegistry.getPriority(notification)).thenReturn(PwaNotificationPriority.LOW);
+    when(pwaNotificationPluginRegistry.getTtl(notification)).thenReturn(-1);
+    when(pwaNotificationPluginRegistry.getPriority(otherNotification)).thenReturn(PwaNotificationPriority.HIGH);
+    when(pwaNotificationPluginRegistry.getTtl(otherNotification)).thenReturn(3600);
+    when(pwaSubscriptionService.getSubscriptions(TEST_USER)).thenReturn(Collections.singletonList(userPushSubscription));
+    when(pwaSubscriptionService.getSubscriptions("otherUser")).thenReturn(Collections.singletonList(otherSubscription));
+    when(pwaPushDeliveryService.send(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(httpResponse));
+    when(httpResponse.getStatusLine()).thenReturn(statusLine);
+    when(statusLine.getStatusCode()).thenReturn(201);
+
+    CompletableFuture<Integer> future = pwaNotificationService.create(NOTIFICATION_ID);
+    CompletableFuture<Integer> otherFuture = pwaNotificationService.create(NOTIFICATION_ID + 1);
+    assertEquals(1, (int) future.get());
+    assertEquals(1, (int) otherFuture.get());
+    // The high priority notification, created last, is sent first
+    InOrder inOrder = inOrder(pwaPushDeliveryService);
+    inOrder.verify(pwaPushDeliveryService)
+           .send(eq(otherSubscription),
+                 any(),
+                 argThat(headers -> headers.getPriority() == PwaNotificationPriority.HIGH && headers.getTtl() == 3600));
+    inOrder.verify(pwaPushDeliveryService)
+           .send(eq(userPushSubscription),
+                 any(),
+                 argThat(headers -> headers.getPriority() == PwaNotificationPriority.LOW && headers.getTtl() == -1));
+  }
+
+  @Test
+  public void createWithTopic() throws Exception {
+    when(pwaManifestService.isPwaEnabled()).thenReturn(true);
+    mockWebNotification();
+    mockUserLanguage();
+    when(notification.getKey()).thenReturn(PLUGIN_KEY);
+    when(pwaNotificationPluginRegistry.getTopic(notification)).thenReturn("TestPlugin-1");
+    PwaNotificationMessage message = new PwaNotificationMessage();
+    when(pwaNotificationPluginRegistry.process(eq(notification), any())).thenReturn(message);
+    when(pwaSubscriptionService.getSubscriptions(TEST_USER)).thenReturn(Collections.singletonList(userPushSubscription));
+    when(pwaPushDeliveryService.send(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(httpResponse));
+    when(httpResponse.getStatusLine()).thenReturn(statusLine);
+    when(statusLine.getStatusCode()).thenReturn(201);
+
+    assertEquals(1, (int) pwaNotificationService.create(NOTIFICATION_ID).get());
+    verify(pwaPushDeliveryService).send(eq(userPushSubscription),
+                                        any(),
+                                        argThat(headers -> "TestPlugin-1".equals(headers.getTopic())));
+    // The device replaces the displayed notification having the same topic
+    assertEquals("TestPlugin-1", message.getTag());
+  }
+
+  @Test
+  public void createWithFullPayload() throws Exception {
+    when(pwaManifestService.isPwaEnabled()).thenReturn(true);
+    mockWebNotification();
+    mockUserLanguage();
+    when(notification.getKey()).thenReturn(PLUGIN_KEY);
+    PwaNotificationMessage message = new PwaNotificationMessage();
+    message.setTitle("Notification Title");
+    when(pwaNotificationPluginRegistry.process(eq(notification), any())).thenReturn(message);
+    when(pwaSubscriptionService.getSubscriptions(TEST_USER)).thenReturn(Collections.singletonList(userPushSubscription));
+    when(pwaPushDeliveryService.send(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(httpResponse));
+    when(httpResponse.getStatusLine()).thenReturn(statusLine);
+    when(statusLine.getStatusCode()).thenReturn(201);
+
+    ReflectionTestUtils.setField(pwaNotificationService, "fullPayloadEnabled", true);
+    try {
+      assertEquals(1, (int) pwaNotificationService.create(NOTIFICATION_ID).get());
+      verify(pwaPushDeliveryService).send(eq(userPushSubscription),
+                                          argThat(payload -> new String(payload).startsWith("{")
+                                              && new String(payload).contains("\"Notification Title\"")),
+                                          any());
+
+      ReflectionTestUtils.setField(pwaNotificationService, "fullPayloadMaxSize", 10);
+      assertEquals(1, (int) pwaNotificationService.create(NOTIFICATION_ID).get());
+      verify(pwaPushDeliveryService).send(eq(userPushSubscription),
+                                          argThat(payload -> (NOTIFICATION_ID + ":" +
+                                              PWA_NOTIFICATION_OPEN_UI_ACTION).equals(new String(payload))),
+                                          any());
+    } finally {
+      ReflectionTestUtils.setField(pwaNotificationService, "fullPayloadEnabled", false);
+      ReflectionTestUtils.setField(pwaNotificationService, "fullPayloadMaxSize", 3800);
+    }
+  }
+
+  @Test
+  public void createWithDigest() throws Exception {
+    when(pwaManifestService.isPwaEnabled()).thenReturn(true);
+    mockWebNotification();
+    mockUserLanguage();
+    when(notification.getKey()).thenReturn(PLUGIN_KEY);
+    mockUserNotification(NOTIFICATION_ID + 1);
+    mockUserNotification(NOTIFICATION_ID + 2);
+    when(pwaNotificationPluginRegistry.process(any(NotificationInfo.class), any())).thenAnswer(invocation -> {
+      PwaNotificationMessage message = new PwaNotificationMessage();
+      message.setTitle("Notification Title");
+      return message;
+    });
+    when(resourceBundleService.getSharedString(eq("pwa.notification.digest.TestPlugin.title"),
+                                               any())).thenReturn("{0} new tests");
+    when(pwaSubscriptionService.getSubscriptions(TEST_USER)).thenReturn(Collections.singletonList(userPushSubscription));
+    when(pwaPushDeliveryService.send(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(httpResponse));
+    when(httpResponse.getStatusLine()).thenReturn(statusLine);
+    when(statusLine.getStatusCode()).thenReturn(201);
+
+    // Use a window which doesn't end during the test, the digest being
+    // flushed explicitly
+    ReflectionTestUtils.setField(pwaNotificationService, "digestEnabled", true);
+    ReflectionTestUtils.setField(pwaNotificationService, "digestWindow", 3600000l);
+    try {
+      CompletableFuture<Integer> future = pwaNotificationService.create(NOTIFICATION_ID);
+      CompletableFuture<Integer> secondFuture = pwaNotificationService.create(NOTIFICATION_ID + 1);
+      CompletableFuture<Integer> thirdFuture = pwaNotificationService.create(NOTIFICATION_ID + 2);
+      assertEquals(1, (int) future.get());
+      waitForDigestedNotifications(2);
+      assertFalse(secondFuture.isDone());
+      assertFalse(thirdFuture.isDone());
+
+      pwaNotificationService.flushDigests();
+      assertEquals(1, (int) secondFuture.get());
+      assertEquals(1, (int) thirdFuture.get());
+
+      verify(pwaPushDeliveryService).send(eq(userPushSubscription),
+                                          argThat(payload -> (NOTIFICATION_ID + ":" +
+                                              PWA_NOTIFICATION_OPEN_UI_ACTION).equals(new String(payload))),
+                                          any());
+      verify(pwaPushDeliveryService).send(eq(userPushSubscription),
+                                          argThat(payload -> new String(payload).startsWith("{")
+                                              && new String(payload).contains("\"id\":\"" + (NOTIFICATION_ID + 2) + "\"")
+                                              && new String(payload).contains("\"title\":\"3 new tests\"")
+                                              && new String(payload).contains("\"body\":\"Notification Title\"")
+                                              && new String(payload).contains("\"tag\":\"TestPlugin\"")),
+                                          any());
+      verify(pwaPushDeliveryService, times(2)).send(any(), any(), any());
+      verify(pwaNotificationMessageStorage).put(eq(NOTIFICATION_ID),
+                                                eq("fr"),
+                                                argThat(message -> "TestPlugin".equals(message.getTag())));
+      // The cached message of the notification isn't replaced by the summary
+      verify(pwaNotificationMessageStorage, never()).put(eq(NOTIFICATION_ID + 2), any(), any());
+      verify(listenerService).broadcast(PWA_NOTIFICATION_CREATED, NOTIFICATION_ID + 1, null);
+      verify(pwaOutboxStorage).remove(NOTIFICATION_ID + 1, LEASE_TOKEN);
+
+      // The next window counts its own notifications only
+      CompletableFuture<Integer> fourthFuture = pwaNotificationService.create(NOTIFICATION_ID + 1);
+      waitForDigestedNotifications(1);
+      pwaNotificationService.flushDigests();
+      assertEquals(1, (int) fourthFuture.get());
+      verify(pwaPushDeliveryService).send(eq(userPushSubscription),
+                                          argThat(payload -> new String(payload).contains("\"title\":\"1 new tests\"")),
+                                          any());
+    } finally {
+      ReflectionTestUtils.setField(pwaNotificationService, "digestEnabled", false);
+      ReflectionTestUtils.setField(pwaNotificationService, "digestWindow", 30000l);
+    }
+  }
+
+  @Test
+  public void createHeld() throws Exception {
+    when(pwaManifestService.isPwaEnabled()).thenReturn(true);
+    mockWebNotification();
+    when(pwaNotificationPolicy.decide(notification, TEST_USER)).thenReturn(PwaNotificationDecision.HOLD,
+                                                                          PwaNotificationDecision.SEND);
+    when(pwaSubscriptionService.getSubscriptions(TEST_USER)).thenReturn(Collections.singletonList(userPushSubscription));
+    when(pwaPushDeliveryService.send(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(httpResponse));
+    when(httpResponse.getStatusLine()).thenReturn(statusLine);
+    when(statusLine.getStatusCode()).thenReturn(201);
+
+    when(pwaOutboxStorage.hold(NOTIFICATION_ID, LEASE_TOKEN, 1, 100l)).thenReturn(true);
+    when(pwaOutboxStorage.reclaim(NOTIFICATION_ID)).thenReturn(RECLAIMED_LEASE_TOKEN);
+
+    ReflectionTestUtils.setField(pwaNotificationService, "holdDelay", 100l);
+    try {
+      assertEquals(1, (int) pwaNotificationService.create(NOTIFICATION_ID).get());
+      verify(pwaNotificationPolicy, times(2)).decide(notification, TEST_USER);
+      verify(pwaPushDeliveryService).send(eq(userPushSubscription), any(), any());
+      verify(pwaOutboxStorage).hold(NOTIFICATION_ID, LEASE_TOKEN, 1, 100l);
+      verify(pwaOutboxStorage).reclaim(NOTIFICATION_ID);
+      verify(pwaOutboxStorage).remove(NOTIFICATION_ID, RECLAIMED_LEASE_TOKEN);
+      assertEquals(0, pwaNotificationService.getStatistics().get("heldNotifications"));
+    } finally {
+      ReflectionTestUtils.setField(pwaNotificationService, "holdDelay", 30000l);
+    }
+  }
+
+  @Test
+  public void createHeldClaimedByAnotherNode() throws Exception {
+    when(pwaManifestService.isPwaEnabled()).thenReturn(true);
+    mockWebNotification();
+    when(pwaNotificationPolicy.decide(notification, TEST_USER)).thenReturn(PwaNotificationDecision.HOLD);
+    when(pwaOutboxStorage.hold(NOTIFICATION_ID, LEASE_TOKEN, 1, 100l)).thenReturn(true);
+    when(pwaOutboxStorage.reclaim(NOTIFICATION_ID)).thenReturn(null);
+
+    ReflectionTestUtils.setField(pwaNotificationService, "holdDelay", 100l);
+    try {
+      assertEquals(0, (int) pwaNotificationService.create(NOTIFICATION_ID).get());
+      verify(pwaNotificationPolicy).decide(notification, TEST_USER);
+      verify(pwaOutboxStorage, never()).remove(eq(NOTIFICATION_ID), any());
+      assertEquals(0, pwaNotificationService.getStatistics().get("heldNotifications"));
+    } finally {
+      ReflectionTestUtils.setField(pwaNotificationService, "holdDelay", 30000l);
+    }
+    verifyNoInteractions(pwaPushDeliveryService);
+  }
+
+  @Test
+  public void sendHeldFromOutboxAfterRestart() throws Exception {
+    when(pwaManifestService.isPwaEnabled()).thenReturn(true);
+    mockWebNotification();
+    // Notification held by a stopped node, claimed with its holds count
+    when(pwaOutboxStorage.claim(anyInt())).thenReturn(Collections.singletonList(new PwaOutboxEntry(NOTIFICATION_ID, 1, LEASE_TOKEN)),
+                                                      Collections.emptyList());
+    when(pwaNotificationPolicy.decide(notification, TEST_USER)).thenReturn(PwaNotificationDecision.SEND);
+    when(pwaSubscriptionService.getSubscriptions(TEST_USER)).thenReturn(Collections.singletonList(userPushSubscription));
+    when(pwaPushDeliveryService.send(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(httpResponse));
+    when(httpResponse.getStatusLine()).thenReturn(statusLine);
+    when(statusLine.getStatusCode()).thenReturn(201);
+
+    verify(pwaOutboxStorage, timeout(2000)).remove(NOTIFICATION_ID, LEASE_TOKEN);
+    verify(pwaPushDeliveryService).send(eq(userPushSubscription), any(), any());
+
+    // Held notification read meanwhile in the portal
+    when(notification.isRead()).thenReturn(true);
+    when(pwaOutboxStorage.claim(anyInt())).thenReturn(Collections.singletonList(new PwaOutboxEntry(NOTIFICATION_ID, 1, LEASE_TOKEN)),
+                                                      Collections.emptyList());
+    verify(pwaOutboxStorage, timeout(2000).times(2)).remove(NOTIFICATION_ID, LEASE_TOKEN);
+    verify(pwaPushDeliveryService).send(eq(userPushSubscription), any(), any());
+  }
+
+  @Test
+  public void createSkipped() throws Exception {
+    when(pwaManifestService.isPwaEnabled()).thenReturn(true);
+    mockWebNotification();
+    when(pwaNotificationPolicy.decide(notification, TEST_USER)).thenReturn(PwaNotificationDecision.SKIP);
+
+    assertEquals(0, (int) pwaNotificationService.create(NOTIFICATION_ID).get());
+    verify(pwaOutboxStorage).remove(NOTIFICATION_ID, LEASE_TOKEN);
+
+    // Held notification read meanwhile in the portal
+    when(pwaNotificationPolicy.decide(notification, TEST_USER)).thenReturn(PwaNotificationDecision.HOLD);
+    when(notification.isRead()).thenReturn(true);
+    ReflectionTestUtils.setField(pwaNotificationService, "holdDelay", 100l);
+    try {
+      assertEquals(0, (int) pwaNotificationService.create(NOTIFICATION_ID).get());
+      verify(pwaNotificationPolicy, times(2)).decide(notification, TEST_USER);
+    } finally {
+      ReflectionTestUtils.setField(pwaNotificationService, "holdDelay", 30000l);
+    }
+    verifyNoInteractions(pwaPushDeliveryService);
+  }
+
+  @Test
+  public void createWhenDispatchQueueIsFull() throws Exception {
+    when(pwaManifestService.isPwaEnabled()).thenReturn(true);
+    mockWebNotification();
+    when(pwaSubscriptionService.getSubscriptions(TEST_USER)).thenReturn(Collections.singletonList(userPushSubscription));
+    when(pwaPushDeliveryService.send(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(httpResponse));
+    when(httpResponse.getStatusLine()).thenReturn(statusLine);
+    when(statusLine.getStatusCode()).thenReturn(201);
+
+    ReflectionTestUtils.setField(pwaNotificationService, "dispatchQueueCapacity", 0);
+    try {
+      assertEquals(0, (int) pwaNotificationService.create(NOTIFICATION_ID).get());
+      verify(pwaOutboxStorage).release(NOTIFICATION_ID, LEASE_TOKEN);
+      verify(pwaOutboxStorage, never()).remove(eq(NOTIFICATION_ID), any());
+
+      ReflectionTestUtils.setField(pwaNotificationService, "dispatchOverflowPolicy", PwaNotificationService.OverflowPolicy.DROP);
+      assertEquals(0, (int) pwaNotificationService.create(NOTIFICATION_ID).get());
+      verify(pwaOutboxStorage).remove(NOTIFICATION_ID, LEASE_TOKEN);
+      verifyNoInteractions(pwaPushDeliveryService);
+
+      ReflectionTestUtils.setField(pwaNotificationService,
+                                   "dispatchOverflowPolicy",
+                                   PwaNotificationService.OverflowPolicy.CALLER_RUNS);
+      assertEquals(1, (int) pwaNotificationService.create(NOTIFICATION_ID).get());
+      verify(pwaPushDeliveryService).send(eq(userPushSubscription), any(), any());
+      assertEquals(3l, pwaNotificationService.getStatistics().get("dispatchQueueOverflows"));
+    } finally {
+      ReflectionTestUtils.setField(pwaNotificationService, "dispatchQueueCapacity", 10000);
+      ReflectionTestUtils.setField(pwaNotificationService, "dispatchOverflowPolicy", PwaNotificationService.OverflowPolicy.SPILL);
+    }
+  }
+
+  @Test
+  public void sendFromOutbox() throws Exception {
+    when(pwaManifestService.isPwaEnabled()).thenReturn(true);
+    mockWebNotification();
+    when(pwaOutboxStorage.claim(anyInt())).thenReturn(Collections.singletonList(new PwaOutboxEntry(NOTIFICATION_ID, 0, LEASE_TOKEN)),
+                                                      Collections.emptyList());
+    when(pwaSubscriptionService.getSubscriptions(TEST_USER)).thenReturn(Collections.singletonList(userPushSubscription));
+    when(pwaPushDeliveryService.send(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(httpResponse));
+    when(httpResponse.getStatusLine()).thenReturn(statusLine);
+    when(statusLine.getStatusCode()).thenReturn(201);
+
+    verify(pwaOutboxStorage, timeout(2000)).remove(NOTIFICATION_ID, LEASE_TOKEN);
+    verify(pwaPushDeliveryService).send(eq(userPushSubscription), any(), any());
+    verify(pwaOutboxStorage, never()).add(NOTIFICATION_ID);
+  }
+
+  @Test
+  public void createWithMultipleRecipients() throws Exception {
+    when(pwaManifestService.isPwaEnabled()).thenReturn(true);
+    when(webNotificationService.getNotificationInfo(String.valueOf(NOTIFICATION_ID))).thenReturn(notification);
+    when(notification.getId()).thenReturn(String.valueOf(NOTIFICATION_ID));
+    List<String> recipients = Arrays.asList(TEST_USER, "testUser2", "testUser3");
+    when(notification.getSendToUserIds()).thenReturn(recipients);
+
+    UserPushSubscription subscription1 = newSubscription("1", "https://push1.test/endpoint/1");
+    UserPushSubscription subscription2 = newSubscription("2", "https://push2.test/endpoint/2");
+    UserPushSubscription subscription3 = newSubscription("3", "https://push1.test/endpoint/3");
+    when(pwaSubscriptionService.getSubscriptions(recipients)).thenReturn(Map.of(TEST_USER,
+                                                                                Arrays.asList(subscription1, subscription2),
+                                                                                "testUser2",
+                                                                                Collections.singletonList(subscription3),
+                                                                                "testUser3",
+                                                                                Collections.emptyList()));
+    when(pwaUserLanguageStorage.get(ArgumentMatchers.<Collection<String>> argThat(usernames -> usernames.size() == 2
+        && usernames.containsAll(Arrays.asList(TEST_USER, "testUser2"))))).thenReturn(Map.of(TEST_USER, "fr", "testUser2", "en"));
+    LocaleConfigImpl frLocaleConfig = new LocaleConfigImpl();
+    frLocaleConfig.setLocale(Locale.FRENCH);
+    LocaleConfigImpl enLocaleConfig = new LocaleConfigImpl();
+    enLocaleConfig.setLocale(Locale.ENGLISH);
+    when(localeConfigService.getLocaleConfig("fr")).thenReturn(frLocaleConfig);
+    when(localeConfigService.getLocaleConfig("en")).thenReturn(enLocaleConfig);
+    when(pwaPushDeliveryService.send(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(httpResponse));
+    when(httpResponse.getStatusLine()).thenReturn(statusLine);
+    when(statusLine.getStatusCode()).thenReturn(201);
+
+    assertEquals(3, (int) pwaNotificationService.create(NOTIFICATION_ID).get());
+    verify(pwaSubscriptionService, never()).getSubscriptions(anyString());
+    verify(pwaPushDeliveryService).send(eq(subscription1), any(), any());
+    verify(pwaPushDeliveryService).send(eq(subscription2), any(), any());
+    verify(pwaPushDeliveryService).send(eq(subscription3),
+                                        argThat(payload -> (NOTIFICATION_ID + ":" +
+                                            PWA_NOTIFICATION_OPEN_UI_ACTION).equals(new String(payload))),
+                                        any());
+    verify(pwaNotificationPluginRegistry, times(2)).process(eq(notification), any());
+  }
+
+  private void waitForDigestedNotifications(int count) throws InterruptedException {
+    long timeout = System.currentTimeMillis() + 5000;
+    while (!Integer.valueOf(count).equals(pwaNotificationService.getStatistics().get("digestedNotifications"))
+        && System.currentTimeMillis() < timeout) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, pwaNotificationService.getStatistics().get("digestedNotifications"));
+  }
+
+  private UserPushSubscription newSubscription(String id, String endpoint) {
+    UserPushSubscription subscription = new UserPushSubscription();
+    subscription.setId(id);
+    subscription.setEndpoint(endpoint);
+    return subscription;
   }
 
-  @SneakyThrows
   private void mockUserLanguage() {
-    when(organizationService.getUserProfileHandler()).thenReturn(userProfileHandler);
-    when(userProfileHandler.findUserProfileByName(TEST_USER)).thenReturn(userProfile);
-    when(userProfile.getAttribute(Constants.USER_LANGUAGE)).thenReturn("fr");
+    when(pwaUserLanguageStorage.get(TEST_USER)).thenReturn("fr");
     LocaleConfigImpl localeConfig = new LocaleConfigImpl();
     localeConfig.setLocale(Locale.FRENCH);
     localeConfig.setOrientation(Orientation.LT);
@@ -233,6 +752,14 @@ public class PwaNotificationServiceTest {
     when(notification.getId()).thenReturn(String.valueOf(NOTIFICATION_ID));
   }
 
+  private void mockUserNotification(long webNotificationId) {
+    NotificationInfo userNotification = mock(NotificationInfo.class);
+    when(webNotificationService.getNotificationInfo(String.valueOf(webNotificationId))).thenReturn(userNotification);
+    when(userNotification.getTo()).thenReturn(TEST_USER);
+    when(userNotification.getId()).thenReturn(String.valueOf(webNotificationId));
+    when(userNotification.getKey()).thenReturn(PLUGIN_KEY);
+  }
+
   private void mockWebNotificationNoAccess() {
     when(webNotificationService.getNotificationInfo(String.valueOf(NOTIFICATION_ID))).thenReturn(notification);
     when(notification.getKey()).thenReturn(PLUGIN_KEY);
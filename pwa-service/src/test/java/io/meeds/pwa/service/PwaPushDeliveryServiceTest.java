@@ -0,0 +1,295 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.message.BasicHeader;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.meeds.pwa.model.PwaNotificationPriority;
+import io.meeds.pwa.model.PwaPushMessageHeaders;
+import io.meeds.pwa.model.UserPushSubscription;
+import io.meeds.pwa.service.PwaPushDeliveryService.DispatchMode;
+import io.meeds.pwa.service.PwaPushDeliveryService.PushServiceUnavailableException;
+
+import nl.martijndwars.webpush.Encoding;
+import nl.martijndwars.webpush.Notification;
+import nl.martijndwars.webpush.PushService;
+import nl.martijndwars.webpush.Urgency;
+
+@SpringBootTest(classes = {
+                            PwaPushDeliveryService.class,
+})
+public class PwaPushDeliveryServiceTest {
+
+  private static final String      SUBSCRIPTION_ENDPOINT = "https://push.localhost/endpoint";
+
+  private static final String      SUBSCRIPTION_ORIGIN   = "https://push.localhost";
+
+  @MockBean
+  private PwaSubscriptionService   pwaSubscriptionService;
+
+  @MockBean
+  private PushService              pushService;
+
+  @MockBean
+  private CloseableHttpAsyncClient pushHttpClient;
+
+  @Autowired
+  private PwaPushDeliveryService   pwaPushDeliveryService;
+
+  @Mock
+  private UserPushSubscription     userPushSubscription;
+
+  @Mock
+  private HttpPost                 httpPost;
+
+  @Mock
+  private HttpResponse             httpResponse;
+
+  @Mock
+  private StatusLine               statusLine;
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void send() throws Exception {
+    when(userPushSubscription.getEndpoint()).thenReturn(SUBSCRIPTION_ENDPOINT);
+    when(userPushSubscription.origin()).thenReturn(SUBSCRIPTION_ORIGIN);
+    when(pushService.preparePost(any(), eq(Encoding.AES128GCM))).thenReturn(httpPost);
+
+    CompletableFuture<HttpResponse> future = pwaPushDeliveryService.send(userPushSubscription, "payload".getBytes());
+    assertFalse(future.isDone());
+
+    ArgumentCaptor<FutureCallback<HttpResponse>> callbackCaptor = ArgumentCaptor.forClass(FutureCallback.class);
+    verify(pushHttpClient).execute(eq(httpPost), callbackCaptor.capture());
+    callbackCaptor.getValue().completed(httpResponse);
+    assertTrue(future.isDone());
+    assertEquals(httpResponse, future.get());
+
+    CompletableFuture<HttpResponse> failedFuture = pwaPushDeliveryService.send(userPushSubscription, "payload".getBytes());
+    verify(pushHttpClient, times(2)).execute(eq(httpPost), callbackCaptor.capture());
+    callbackCaptor.getValue().failed(new IllegalStateException());
+    assertThrows(ExecutionException.class, failedFuture::get);
+  }
+
+  @Test
+  public void sendWithHeaders() throws Exception {
+    when(userPushSubscription.getEndpoint()).thenReturn(SUBSCRIPTION_ENDPOINT);
+    when(userPushSubscription.origin()).thenReturn(SUBSCRIPTION_ORIGIN);
+    when(pushService.preparePost(any(), eq(Encoding.AES128GCM))).thenReturn(httpPost);
+
+    pwaPushDeliveryService.send(userPushSubscription,
+                                "payload".getBytes(),
+                                new PwaPushMessageHeaders(3600, PwaNotificationPriority.HIGH, "activityId-1"));
+    pwaPushDeliveryService.send(userPushSubscription,
+                                "payload".getBytes(),
+                                new PwaPushMessageHeaders(-1, PwaNotificationPriority.VERY_LOW, "topic with invalid characters"));
+    ArgumentCaptor<Notification> notificationCaptor = ArgumentCaptor.forClass(Notification.class);
+    verify(pushService, times(2)).preparePost(notificationCaptor.capture(), eq(Encoding.AES128GCM));
+
+    Notification notification = notificationCaptor.getAllValues().get(0);
+    assertEquals(3600, notification.getTTL());
+    assertEquals(Urgency.HIGH, notification.getUrgency());
+    assertEquals("activityId-1", notification.getTopic());
+
+    notification = notificationCaptor.getAllValues().get(1);
+    assertEquals(2419200, notification.getTTL());
+    assertEquals(Urgency.VERY_LOW, notification.getUrgency());
+    assertEquals(32, notification.getTopic().length());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void sendWithRetry() throws Exception {
+    when(userPushSubscription.getEndpoint()).thenReturn(SUBSCRIPTION_ENDPOINT);
+    // Use a dedicated origin to not throttle other tests sendings
+    when(userPushSubscription.origin()).thenReturn("https://throttled.localhost");
+    when(pushService.preparePost(any(), eq(Encoding.AES128GCM))).thenReturn(httpPost);
+    when(httpResponse.getStatusLine()).thenReturn(statusLine);
+    when(statusLine.getStatusCode()).thenReturn(429);
+    when(httpResponse.getFirstHeader(HttpHeaders.RETRY_AFTER)).thenReturn(new BasicHeader(HttpHeaders.RETRY_AFTER, "1"));
+
+    CompletableFuture<HttpResponse> future = pwaPushDeliveryService.send(userPushSubscription, "payload".getBytes());
+    ArgumentCaptor<FutureCallback<HttpResponse>> callbackCaptor = ArgumentCaptor.forClass(FutureCallback.class);
+    verify(pushHttpClient).execute(eq(httpPost), callbackCaptor.capture());
+    callbackCaptor.getValue().completed(httpResponse);
+    assertFalse(future.isDone());
+    assertEquals(1l, pwaPushDeliveryService.getStatistics().get("throttledOrigins"));
+
+    // Reattempted after the delay requested by the Push Service
+    verify(pushHttpClient, timeout(5000).times(2)).execute(eq(httpPost), callbackCaptor.capture());
+    when(statusLine.getStatusCode()).thenReturn(201);
+    callbackCaptor.getValue().completed(httpResponse);
+    assertTrue(future.isDone());
+    assertEquals(httpResponse, future.get());
+    assertEquals(1l, pwaPushDeliveryService.getStatistics().get("deliveryRetries"));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void sendWhenThrottledBeyondMaxDelay() throws Exception {
+    when(userPushSubscription.getEndpoint()).thenReturn(SUBSCRIPTION_ENDPOINT);
+    when(userPushSubscription.origin()).thenReturn("https://paused.localhost");
+    when(pushService.preparePost(any(), eq(Encoding.AES128GCM))).thenReturn(httpPost);
+    when(httpResponse.getStatusLine()).thenReturn(statusLine);
+    when(statusLine.getStatusCode()).thenReturn(429);
+    when(httpResponse.getFirstHeader(HttpHeaders.RETRY_AFTER)).thenReturn(new BasicHeader(HttpHeaders.RETRY_AFTER, "120"));
+
+    CompletableFuture<HttpResponse> future = pwaPushDeliveryService.send(userPushSubscription, "payload".getBytes());
+    ArgumentCaptor<FutureCallback<HttpResponse>> callbackCaptor = ArgumentCaptor.forClass(FutureCallback.class);
+    verify(pushHttpClient).execute(eq(httpPost), callbackCaptor.capture());
+    callbackCaptor.getValue().completed(httpResponse);
+    // Not reattempted since the requested delay exceeds the maximum one, but
+    // the origin is paused anyway
+    assertEquals(httpResponse, future.get());
+
+    future = pwaPushDeliveryService.send(userPushSubscription, "payload".getBytes());
+    ExecutionException exception = assertThrows(ExecutionException.class, future::get);
+    assertTrue(exception.getCause() instanceof PushServiceUnavailableException);
+    verify(pushHttpClient, times(1)).execute(eq(httpPost), any());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void sendWhenCircuitOpen() throws Exception {
+    String origin = "https://failing.localhost";
+    when(userPushSubscription.getEndpoint()).thenReturn(SUBSCRIPTION_ENDPOINT);
+    when(userPushSubscription.origin()).thenReturn(origin);
+    when(pushService.preparePost(any(), eq(Encoding.AES128GCM))).thenReturn(httpPost);
+    ArgumentCaptor<FutureCallback<HttpResponse>> callbackCaptor = ArgumentCaptor.forClass(FutureCallback.class);
+    for (int i = 0; i < 20; i++) {
+      pwaPushDeliveryService.send(userPushSubscription, "payload".getBytes());
+      verify(pushHttpClient, times(i + 1)).execute(eq(httpPost), callbackCaptor.capture());
+      callbackCaptor.getValue().failed(new IllegalStateException());
+    }
+
+    CompletableFuture<HttpResponse> future = pwaPushDeliveryService.send(userPushSubscription, "payload".getBytes());
+    assertTrue(future.isCompletedExceptionally());
+    verify(pushHttpClient, times(20)).execute(eq(httpPost), any());
+    Map<String, Object> originStatistics = (Map<String, Object>) ((Map<String, Object>) pwaPushDeliveryService.getStatistics()
+                                                                                                               .get("origins")).get(origin);
+    assertEquals("OPEN", originStatistics.get("state"));
+    assertEquals(100, originStatistics.get("errorRate"));
+  }
+
+  @Test
+  public void sendWhenEncryptionFails() throws Exception {
+    when(userPushSubscription.getEndpoint()).thenReturn(SUBSCRIPTION_ENDPOINT);
+    when(userPushSubscription.origin()).thenReturn(SUBSCRIPTION_ORIGIN);
+    when(pushService.preparePost(any(), eq(Encoding.AES128GCM))).thenThrow(IllegalStateException.class);
+
+    CompletableFuture<HttpResponse> future = pwaPushDeliveryService.send(userPushSubscription, "payload".getBytes());
+    assertTrue(future.isCompletedExceptionally());
+  }
+
+  @Test
+  public void sendWithVirtualThread() throws Exception {
+    when(userPushSubscription.getEndpoint()).thenReturn(SUBSCRIPTION_ENDPOINT);
+    when(userPushSubscription.origin()).thenReturn("https://virtual.localhost");
+    when(pushService.preparePost(any(), eq(Encoding.AES128GCM))).thenReturn(httpPost);
+    when(pushHttpClient.execute(eq(httpPost), any())).thenReturn(CompletableFuture.completedFuture(httpResponse));
+
+    ExecutorService virtualThreadExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    ReflectionTestUtils.setField(pwaPushDeliveryService, "dispatchMode", DispatchMode.VIRTUAL);
+    ReflectionTestUtils.setField(pwaPushDeliveryService, "virtualThreadExecutor", virtualThreadExecutor);
+    try {
+      CompletableFuture<HttpResponse> future = pwaPushDeliveryService.send(userPushSubscription, "payload".getBytes());
+      assertEquals(httpResponse, future.get(5, TimeUnit.SECONDS));
+      assertEquals("VIRTUAL", pwaPushDeliveryService.getStatistics().get("dispatchMode"));
+      assertEquals(Map.of("https://virtual.localhost", 0),
+                   pwaPushDeliveryService.getStatistics().get("inFlightMessages"));
+    } finally {
+      ReflectionTestUtils.setField(pwaPushDeliveryService, "dispatchMode", DispatchMode.POOL);
+      ReflectionTestUtils.setField(pwaPushDeliveryService, "virtualThreadExecutor", null);
+      virtualThreadExecutor.shutdown();
+    }
+  }
+
+  @Test
+  public void sendWithVirtualThreadRetry() throws Exception {
+    when(userPushSubscription.getEndpoint()).thenReturn(SUBSCRIPTION_ENDPOINT);
+    when(userPushSubscription.origin()).thenReturn("https://virtual-retry.localhost");
+    when(pushService.preparePost(any(), eq(Encoding.AES128GCM))).thenReturn(httpPost);
+    HttpResponse errorResponse = mock(HttpResponse.class);
+    StatusLine errorStatusLine = mock(StatusLine.class);
+    when(errorResponse.getStatusLine()).thenReturn(errorStatusLine);
+    when(errorStatusLine.getStatusCode()).thenReturn(503);
+    when(httpResponse.getStatusLine()).thenReturn(statusLine);
+    when(statusLine.getStatusCode()).thenReturn(201);
+    CompletableFuture<HttpResponse> pendingResponse = new CompletableFuture<>();
+    when(pushHttpClient.execute(eq(httpPost), any())).thenReturn(CompletableFuture.completedFuture(errorResponse),
+                                                                 pendingResponse);
+
+    ExecutorService virtualThreadExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    ReflectionTestUtils.setField(pwaPushDeliveryService, "dispatchMode", DispatchMode.VIRTUAL);
+    ReflectionTestUtils.setField(pwaPushDeliveryService, "virtualThreadExecutor", virtualThreadExecutor);
+    ReflectionTestUtils.setField(pwaPushDeliveryService, "retryInitialDelay", 2000l);
+    try {
+      CompletableFuture<HttpResponse> future = pwaPushDeliveryService.send(userPushSubscription, "payload".getBytes());
+      verify(pushHttpClient, timeout(5000)).execute(eq(httpPost), any());
+      Thread.sleep(200);
+      // The origin concurrency permit isn't held during the backoff delay
+      assertFalse(future.isDone());
+      assertEquals(Map.of("https://virtual-retry.localhost", 0),
+                   pwaPushDeliveryService.getStatistics().get("inFlightMessages"));
+
+      verify(pushHttpClient, timeout(5000).times(2)).execute(eq(httpPost), any());
+      assertEquals(Map.of("https://virtual-retry.localhost", 1),
+                   pwaPushDeliveryService.getStatistics().get("inFlightMessages"));
+      pendingResponse.complete(httpResponse);
+      assertEquals(httpResponse, future.get(5, TimeUnit.SECONDS));
+    } finally {
+      ReflectionTestUtils.setField(pwaPushDeliveryService, "dispatchMode", DispatchMode.POOL);
+      ReflectionTestUtils.setField(pwaPushDeliveryService, "virtualThreadExecutor", null);
+      ReflectionTestUtils.setField(pwaPushDeliveryService, "retryInitialDelay", 1000l);
+      virtualThreadExecutor.shutdown();
+    }
+  }
+
+}
@@ -0,0 +1,112 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+public class PwaPushExecutorTest {
+
+  @Test
+  void executeWhenQueueFull() throws Exception {
+    PwaPushExecutor executor = new PwaPushExecutor(1, 1, 100, Executors.defaultThreadFactory());
+    CountDownLatch blockingLatch = new CountDownLatch(1);
+    fillExecutor(executor, blockingLatch);
+
+    CountDownLatch rejectedLatch = new CountDownLatch(1);
+    // The producer waits for the offer timeout, then the task is rejected
+    // without being run in the caller thread
+    assertThrows(RejectedExecutionException.class, () -> executor.execute(rejectedLatch::countDown));
+    assertEquals(1, rejectedLatch.getCount());
+
+    Map<String, Object> statistics = executor.getStatistics();
+    assertEquals(1, statistics.get("queueSize"));
+    assertEquals(1, statistics.get("activeThreads"));
+    assertEquals(1l, statistics.get("blockedTasks"));
+    assertEquals(1l, statistics.get("rejectedTasks"));
+
+    blockingLatch.countDown();
+    assertTrue(executor.drain(10000));
+    assertEquals(1, rejectedLatch.getCount());
+    assertEquals(2l, executor.getStatistics().get("completedTasks"));
+  }
+
+  @Test
+  void executeWaitsForQueueRoom() throws Exception {
+    PwaPushExecutor executor = new PwaPushExecutor(1, 1, 10000, Executors.defaultThreadFactory());
+    CountDownLatch blockingLatch = new CountDownLatch(1);
+    fillExecutor(executor, blockingLatch);
+
+    Executors.newSingleThreadScheduledExecutor().schedule(blockingLatch::countDown, 200, TimeUnit.MILLISECONDS);
+    AtomicReference<Thread> blockedTaskThread = new AtomicReference<>();
+    CountDownLatch blockedLatch = new CountDownLatch(1);
+    executor.execute(() -> {
+      blockedTaskThread.set(Thread.currentThread());
+      blockedLatch.countDown();
+    });
+    assertTrue(blockedLatch.await(10, TimeUnit.SECONDS));
+    assertNotEquals(Thread.currentThread(), blockedTaskThread.get());
+    assertEquals(1l, executor.getStatistics().get("blockedTasks"));
+    assertEquals(0l, executor.getStatistics().get("rejectedTasks"));
+    assertTrue(executor.drain(10000));
+  }
+
+  @Test
+  void executeWhenDraining() throws Exception {
+    PwaPushExecutor executor = new PwaPushExecutor(1, 1, 10000, Executors.defaultThreadFactory());
+    assertTrue(executor.drain(10000));
+
+    CountDownLatch rejectedLatch = new CountDownLatch(1);
+    assertThrows(RejectedExecutionException.class, () -> executor.execute(rejectedLatch::countDown));
+    assertEquals(1, rejectedLatch.getCount());
+    assertEquals(0l, executor.getStatistics().get("blockedTasks"));
+    assertEquals(1l, executor.getStatistics().get("rejectedTasks"));
+  }
+
+  /**
+   * Blocks the single executor thread until the latch is released and fills
+   * its queue
+   */
+  private void fillExecutor(PwaPushExecutor executor, CountDownLatch blockingLatch) throws InterruptedException {
+    CountDownLatch startedLatch = new CountDownLatch(1);
+    executor.execute(() -> {
+      startedLatch.countDown();
+      try {
+        blockingLatch.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    assertTrue(startedLatch.await(10, TimeUnit.SECONDS));
+    executor.execute(() -> {
+    });
+  }
+
+}
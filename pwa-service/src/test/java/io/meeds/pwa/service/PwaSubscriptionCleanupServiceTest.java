@@ -0,0 +1,178 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import org.exoplatform.services.organization.OrganizationService;
+import org.exoplatform.services.organization.User;
+import org.exoplatform.services.organization.UserHandler;
+import org.exoplatform.services.organization.UserStatus;
+
+import io.meeds.pwa.model.PwaSubscriptionState;
+import io.meeds.pwa.storage.PwaJobStorage;
+import io.meeds.pwa.storage.PwaSubscriptionStorage;
+
+@SpringBootTest(classes = {
+                            PwaSubscriptionCleanupService.class,
+                            PwaSubscriptionCleaner.class,
+})
+public class PwaSubscriptionCleanupServiceTest {
+
+  private static final String           ACTIVE_USER   = "active";
+
+  private static final String           DISABLED_USER = "disabled";
+
+  private static final String           DELETED_USER  = "deleted";
+
+  @MockBean
+  private PwaSubscriptionStorage        pwaSubscriptionStorage;
+
+  @MockBean
+  private PwaSubscriptionService        pwaSubscriptionService;
+
+  @MockBean
+  private PwaNotificationService        pwaNotificationService;
+
+  @MockBean
+  private OrganizationService           organizationService;
+
+  @MockBean
+  private PwaJobStorage                 pwaJobStorage;
+
+  @Autowired
+  private PwaSubscriptionCleanupService pwaSubscriptionCleanupService;
+
+  @BeforeEach
+  void setup() throws Exception {
+    ReflectionTestUtils.setField(pwaSubscriptionCleanupService, "pageDelay", 0l);
+    ReflectionTestUtils.setField(pwaSubscriptionCleanupService, "pageSize", 2);
+    UserHandler userHandler = mock(UserHandler.class);
+    when(organizationService.getUserHandler()).thenReturn(userHandler);
+    User activeUser = mock(User.class);
+    when(activeUser.isEnabled()).thenReturn(true);
+    when(userHandler.findUserByName(ACTIVE_USER, UserStatus.ANY)).thenReturn(activeUser);
+    User disabledUser = mock(User.class);
+    when(userHandler.findUserByName(DISABLED_USER, UserStatus.ANY)).thenReturn(disabledUser);
+  }
+
+  @Test
+  void cleanup() throws Exception {
+    Date now = new Date();
+    Date yesterday = new Date(now.getTime() - TimeUnit.DAYS.toMillis(1));
+    Date expiredDate = new Date(now.getTime() - TimeUnit.DAYS.toMillis(91));
+    when(pwaSubscriptionStorage.getDuplicatedEndpointHashes("", 2)).thenReturn(Arrays.asList("duplicated", "shared"));
+    // Browser used by another user since
+    when(pwaSubscriptionStorage.getStates("duplicated")).thenReturn(Arrays.asList(state(1, "s1", ACTIVE_USER, yesterday, null, now),
+                                                                                  state(4, "s4", ACTIVE_USER, now, null, now)));
+    // Browser shared by users still using it
+    when(pwaSubscriptionStorage.getStates("shared")).thenReturn(Arrays.asList(state(8, "s8", ACTIVE_USER, expiredDate, now, null),
+                                                                              state(9, "s9", ACTIVE_USER, yesterday, null, null)));
+    when(pwaSubscriptionStorage.getStates(0, 2)).thenReturn(Arrays.asList(state(2, "s2", DISABLED_USER, now, null, now),
+                                                                          state(3, "s3", ACTIVE_USER, expiredDate, null, null)));
+    when(pwaSubscriptionStorage.getStates(3, 2)).thenReturn(Arrays.asList(state(5, "s5", DELETED_USER, now, null, now),
+                                                                          state(6, "s6", ACTIVE_USER, expiredDate, null, now)));
+    // Subscription without notifications but registered again recently
+    when(pwaSubscriptionStorage.getStates(6, 2)).thenReturn(Arrays.asList(state(7, "s7", ACTIVE_USER, now, null, now, 100),
+                                                                          state(10, "s10", ACTIVE_USER, expiredDate, now, null, 0)));
+
+    assertEquals(5, pwaSubscriptionCleanupService.cleanup());
+    verify(pwaSubscriptionService).flushDeliveries();
+    verify(pwaSubscriptionStorage).getDuplicatedEndpointHashes("shared", 2);
+    verify(pwaSubscriptionStorage).getStates(10, 2);
+    verify(pwaSubscriptionService).deleteSubscription("s1", ACTIVE_USER, false);
+    verify(pwaSubscriptionService).deleteSubscription("s2", DISABLED_USER, false);
+    verify(pwaSubscriptionService).deleteSubscription("s3", ACTIVE_USER, false);
+    verify(pwaSubscriptionService).deleteSubscription("s5", DELETED_USER, false);
+    verify(pwaSubscriptionService).deleteSubscription("s7", ACTIVE_USER, false);
+    verify(pwaSubscriptionService, never()).deleteSubscription(eq("s4"), anyString(), eq(false));
+    verify(pwaSubscriptionService, never()).deleteSubscription(eq("s6"), anyString(), eq(false));
+    verify(pwaSubscriptionService, never()).deleteSubscription(eq("s8"), anyString(), eq(false));
+    verify(pwaSubscriptionService, never()).deleteSubscription(eq("s9"), anyString(), eq(false));
+    verify(pwaSubscriptionService, never()).deleteSubscription(eq("s10"), anyString(), eq(false));
+
+    @SuppressWarnings("unchecked")
+    Map<String, Object> statistics = (Map<String, Object>) pwaSubscriptionCleanupService.getStatistics()
+                                                                                        .get("subscriptionsCleanup");
+    assertEquals(1l, statistics.get("duplicatedSubscriptions"));
+    assertEquals(2l, statistics.get("inactiveUserSubscriptions"));
+    assertEquals(1l, statistics.get("expiredSubscriptions"));
+    assertEquals(1l, statistics.get("failingSubscriptions"));
+  }
+
+  @Test
+  void cleanupWithoutExpiration() throws Exception {
+    ReflectionTestUtils.setField(pwaSubscriptionCleanupService, "expirationDays", 0);
+    try {
+      Date expiredDate = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(365));
+      when(pwaSubscriptionStorage.getStates(0, 2)).thenReturn(Collections.singletonList(state(1, "s1", ACTIVE_USER, expiredDate, null, null)));
+
+      assertEquals(0, pwaSubscriptionCleanupService.cleanup());
+      verify(pwaSubscriptionService, never()).deleteSubscription(anyString(), anyString(), eq(false));
+    } finally {
+      ReflectionTestUtils.setField(pwaSubscriptionCleanupService, "expirationDays", 90);
+    }
+  }
+
+  private PwaSubscriptionState state(long id, // NOSONAR
+                                     String subscriptionId,
+                                     String username,
+                                     Date createdDate,
+                                     Date lastSeenDate,
+                                     Date lastSuccessDate) {
+    return state(id, subscriptionId, username, createdDate, lastSeenDate, lastSuccessDate, 0);
+  }
+
+  private PwaSubscriptionState state(long id, // NOSONAR
+                                     String subscriptionId,
+                                     String username,
+                                     Date createdDate,
+                                     Date lastSeenDate,
+                                     Date lastSuccessDate,
+                                     int consecutiveFailures) {
+    return new PwaSubscriptionState(id,
+                                    subscriptionId,
+                                    username,
+                                    "hash" + id,
+                                    createdDate,
+                                    lastSeenDate,
+                                    lastSuccessDate,
+                                    consecutiveFailures);
+  }
+
+}
@@ -20,14 +20,30 @@ package io.meeds.pwa.service;
 
 import static io.meeds.pwa.service.PwaSubscriptionService.PWA_INSTALLED;
 import static io.meeds.pwa.service.PwaSubscriptionService.PWA_UNINSTALLED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.Security;
+import java.util.Base64;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
+import org.bouncycastle.jce.interfaces.ECPublicKey;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -36,8 +52,13 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 
 import org.exoplatform.services.listener.ListenerService;
 
+import io.meeds.pwa.model.PwaSubscriptionDelivery;
+import io.meeds.pwa.model.PwaSubscriptionDeliveryUpdate;
 import io.meeds.pwa.model.UserPushSubscription;
 import io.meeds.pwa.storage.PwaSubscriptionStorage;
+import io.meeds.pwa.utils.VapidKeysUtils;
+
+import nl.martijndwars.webpush.Utils;
 
 @SpringBootTest(classes = {
                             PwaSubscriptionService.class,
@@ -62,6 +83,11 @@ public class PwaSubscriptionServiceTest {
   @Mock
   private UserPushSubscription   userPushSubscription;
 
+  @BeforeAll
+  public static void initProvider() {
+    Security.addProvider(new BouncyCastleProvider());
+  }
+
   @Test
   public void getSubscriptions() {
     List<UserPushSubscription> subscriptions = pwaSubscriptionService.getSubscriptions(TEST_USER);
@@ -71,12 +97,13 @@ public class PwaSubscriptionServiceTest {
 
   @Test
   public void createSubscriptionWhenExists() {
-    when(pwaSubscriptionStorage.get(TEST_USER)).thenReturn(Collections.singletonList(userPushSubscription));
+    when(pwaSubscriptionStorage.exists(SUBSCRIPTION_ENDPOINT, TEST_USER)).thenReturn(true);
     when(userPushSubscription.getEndpoint()).thenReturn(SUBSCRIPTION_ENDPOINT);
     pwaSubscriptionService.createSubscription(userPushSubscription, TEST_USER);
     verify(pwaSubscriptionStorage, never()).create(userPushSubscription, TEST_USER);
+    verify(pwaSubscriptionStorage).markSeen(SUBSCRIPTION_ENDPOINT, TEST_USER);
 
-    when(pwaSubscriptionStorage.get(TEST_USER)).thenReturn(Collections.emptyList());
+    when(pwaSubscriptionStorage.exists(SUBSCRIPTION_ENDPOINT, TEST_USER)).thenReturn(false);
     pwaSubscriptionService.createSubscription(userPushSubscription, TEST_USER);
     verify(pwaSubscriptionStorage).create(userPushSubscription, TEST_USER);
     verify(listenerService).broadcast(PWA_INSTALLED, TEST_USER, userPushSubscription);
@@ -98,4 +125,69 @@ public class PwaSubscriptionServiceTest {
     verify(pwaSubscriptionStorage).delete(SUBSCRIPTION_ID, TEST_USER);
   }
 
+  @Test
+  public void flushDeliveries() {
+    UserPushSubscription subscription = new UserPushSubscription();
+    subscription.setEndpoint(SUBSCRIPTION_ENDPOINT);
+    pwaSubscriptionService.markFailed(subscription);
+    pwaSubscriptionService.markFailed(subscription);
+    assertEquals(2, pwaSubscriptionService.getConsecutiveFailures(subscription));
+
+    pwaSubscriptionService.markDelivered(subscription, 100);
+    pwaSubscriptionService.markDelivered(subscription, 200);
+    PwaSubscriptionDelivery delivery = pwaSubscriptionService.getDelivery(subscription);
+    assertEquals(0, delivery.getConsecutiveFailures());
+    assertEquals(120, delivery.getAverageLatency());
+    assertNotNull(delivery.getLastSuccessDate());
+    assertNotNull(delivery.getLastFailureDate());
+
+    pwaSubscriptionService.markFailed(subscription);
+    pwaSubscriptionService.flushDeliveries();
+    // Failures since the last success are flushed as an increment
+    verify(pwaSubscriptionStorage).updateDeliveries(argThat(deliveries -> {
+      PwaSubscriptionDeliveryUpdate update = deliveries.get(subscription.endpointHash());
+      return update.getAverageLatency() == 120 && update.getFailures() == 1 && update.getLastSuccessDate() != null;
+    }));
+
+    pwaSubscriptionService.flushDeliveries();
+    verify(pwaSubscriptionStorage, times(1)).updateDeliveries(any());
+  }
+
+  @Test
+  public void isSuspended() {
+    UserPushSubscription subscription = new UserPushSubscription();
+    subscription.setEndpoint(SUBSCRIPTION_ENDPOINT + "/suspended");
+    subscription.setDelivery(new PwaSubscriptionDelivery(null, new Date(), 9, 0));
+    assertFalse(pwaSubscriptionService.isSuspended(subscription));
+
+    pwaSubscriptionService.markFailed(subscription);
+    assertTrue(pwaSubscriptionService.isSuspended(subscription));
+    assertTrue(pwaSubscriptionService.isSuspended(subscription));
+    pwaSubscriptionService.markSkipped(subscription);
+    assertEquals(1l, pwaSubscriptionService.getStatistics().get("suspendedDeliveries"));
+
+    subscription = new UserPushSubscription();
+    subscription.setEndpoint(SUBSCRIPTION_ENDPOINT + "/retried");
+    subscription.setDelivery(new PwaSubscriptionDelivery(null, new Date(System.currentTimeMillis() - 3600001), 10, 0));
+    assertFalse(pwaSubscriptionService.isSuspended(subscription));
+  }
+
+  @Test
+  public void getPublicKey() throws Exception {
+    KeyPair keyPair = VapidKeysUtils.generateKeys();
+    UserPushSubscription subscription = new UserPushSubscription();
+    subscription.setId(SUBSCRIPTION_ID);
+    subscription.setEndpoint(SUBSCRIPTION_ENDPOINT);
+    subscription.setKey(Base64.getEncoder().encodeToString(Utils.encode((ECPublicKey) keyPair.getPublic())));
+    subscription.setAuth(Base64.getEncoder().encodeToString("auth".getBytes()));
+
+    PublicKey publicKey = pwaSubscriptionService.getPublicKey(subscription);
+    assertNotNull(publicKey);
+    assertSame(publicKey, pwaSubscriptionService.getPublicKey(subscription));
+    assertSame(pwaSubscriptionService.getAuth(subscription), pwaSubscriptionService.getAuth(subscription));
+
+    pwaSubscriptionService.deleteSubscription(SUBSCRIPTION_ID, TEST_USER);
+    assertNotSame(publicKey, pwaSubscriptionService.getPublicKey(subscription));
+  }
+
 }
@@ -0,0 +1,85 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.meeds.pwa.storage.PwaUserPresenceStorage;
+
+@SpringBootTest(classes = {
+                            PwaUserPresenceService.class,
+})
+public class PwaUserPresenceServiceTest {
+
+  private static final String    TEST_USER = "testUser";
+
+  @MockBean
+  private PwaUserPresenceStorage pwaUserPresenceStorage;
+
+  @Autowired
+  private PwaUserPresenceService pwaUserPresenceService;
+
+  @AfterEach
+  void teardown() {
+    ReflectionTestUtils.setField(pwaUserPresenceService, "enabled", false);
+  }
+
+  @Test
+  void markActiveWhenDisabled() {
+    assertEquals(0, pwaUserPresenceService.getHeartbeatInterval());
+    pwaUserPresenceService.markActive(TEST_USER);
+    verify(pwaUserPresenceStorage, never()).put(anyString(), anyLong());
+    when(pwaUserPresenceStorage.get(TEST_USER)).thenReturn(System.currentTimeMillis());
+    assertFalse(pwaUserPresenceService.isActive(TEST_USER));
+  }
+
+  @Test
+  void markActive() {
+    ReflectionTestUtils.setField(pwaUserPresenceService, "enabled", true);
+    assertEquals(30000, pwaUserPresenceService.getHeartbeatInterval());
+    assertFalse(pwaUserPresenceService.isActive(TEST_USER));
+
+    pwaUserPresenceService.markActive(TEST_USER);
+    verify(pwaUserPresenceStorage).put(anyString(), anyLong());
+
+    when(pwaUserPresenceStorage.get(TEST_USER)).thenReturn(System.currentTimeMillis() - 5000);
+    assertTrue(pwaUserPresenceService.isActive(TEST_USER));
+    pwaUserPresenceService.markActive(TEST_USER);
+    // Cache not updated more than once per quarter of the active delay
+    verify(pwaUserPresenceStorage).put(anyString(), anyLong());
+
+    when(pwaUserPresenceStorage.get(TEST_USER)).thenReturn(System.currentTimeMillis() - 61000);
+    assertFalse(pwaUserPresenceService.isActive(TEST_USER));
+  }
+
+}
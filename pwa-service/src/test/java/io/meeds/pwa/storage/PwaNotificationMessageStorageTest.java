@@ -0,0 +1,119 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.storage;
+
+import static io.meeds.pwa.storage.PwaNotificationMessageStorage.PWA_NOTIFICATION_MESSAGES_CACHE_NAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import org.exoplatform.services.cache.CacheService;
+import org.exoplatform.services.cache.ExoCache;
+
+import io.meeds.pwa.model.PwaNotificationMessage;
+
+@SpringBootTest(classes = {
+                            PwaNotificationMessageStorage.class,
+})
+public class PwaNotificationMessageStorageTest {
+
+  private static final long                                  NOTIFICATION_ID = 12l;
+
+  @MockBean
+  private CacheService                                       cacheService;
+
+  @Autowired
+  private PwaNotificationMessageStorage                      pwaNotificationMessageStorage;
+
+  private Map<Long, HashMap<String, PwaNotificationMessage>> cachedValues;
+
+  @BeforeEach
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  void setup() {
+    cachedValues = new ConcurrentHashMap<>();
+    ExoCache<Long, HashMap<String, PwaNotificationMessage>> cache = mock(ExoCache.class);
+    when(cache.get(any())).thenAnswer(invocation -> cachedValues.get(invocation.getArgument(0)));
+    doAnswer(invocation -> cachedValues.put(invocation.getArgument(0),
+                                            invocation.getArgument(1))).when(cache).putLocal(any(), any());
+    when(cache.remove(any())).thenAnswer(invocation -> cachedValues.remove(invocation.getArgument(0)));
+    when(cacheService.getCacheInstance(PWA_NOTIFICATION_MESSAGES_CACHE_NAME)).thenReturn((ExoCache) cache);
+    pwaNotificationMessageStorage.init();
+  }
+
+  @Test
+  void putAndRemove() {
+    ExoCache<Long, HashMap<String, PwaNotificationMessage>> cache =
+                                                                  cacheService.getCacheInstance(PWA_NOTIFICATION_MESSAGES_CACHE_NAME);
+    assertNull(pwaNotificationMessageStorage.get(NOTIFICATION_ID, "en"));
+
+    PwaNotificationMessage enMessage = new PwaNotificationMessage();
+    PwaNotificationMessage frMessage = new PwaNotificationMessage();
+    pwaNotificationMessageStorage.put(NOTIFICATION_ID, "en", enMessage);
+    pwaNotificationMessageStorage.put(NOTIFICATION_ID, "fr", frMessage);
+    assertEquals(enMessage, pwaNotificationMessageStorage.get(NOTIFICATION_ID, "en"));
+    assertEquals(frMessage, pwaNotificationMessageStorage.get(NOTIFICATION_ID, "fr"));
+    assertNull(pwaNotificationMessageStorage.get(NOTIFICATION_ID + 1, "en"));
+    // Rendered messages don't invalidate the other nodes cache
+    verify(cache, never()).put(any(), any());
+
+    pwaNotificationMessageStorage.remove(NOTIFICATION_ID);
+    assertNull(pwaNotificationMessageStorage.get(NOTIFICATION_ID, "en"));
+    assertNull(pwaNotificationMessageStorage.get(NOTIFICATION_ID, "fr"));
+  }
+
+  @Test
+  void putConcurrently() throws Exception {
+    ExecutorService executorService = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = IntStream.range(0, 50)
+                                         .mapToObj(i -> executorService.submit(() -> pwaNotificationMessageStorage.put(NOTIFICATION_ID,
+                                                                                                                       "lang" + i,
+                                                                                                                       new PwaNotificationMessage())))
+                                         .toList();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executorService.shutdown();
+    }
+    IntStream.range(0, 50).forEach(i -> assertNotNull(pwaNotificationMessageStorage.get(NOTIFICATION_ID, "lang" + i)));
+  }
+
+}
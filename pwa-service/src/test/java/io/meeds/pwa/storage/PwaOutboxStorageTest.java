@@ -0,0 +1,153 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import io.meeds.pwa.dao.PushOutboxDAO;
+import io.meeds.pwa.entity.PushOutboxEntity;
+import io.meeds.pwa.model.PwaOutboxEntry;
+
+@SpringBootTest(classes = {
+                            PwaOutboxStorage.class,
+})
+public class PwaOutboxStorageTest {
+
+  private static final long   NOTIFICATION_ID = 5l;
+
+  private static final String LEASE_TOKEN     = "leaseToken";
+
+  @MockBean
+  private PushOutboxDAO       pushOutboxDAO;
+
+  @Autowired
+  private PwaOutboxStorage    pwaOutboxStorage;
+
+  @Test
+  void add() {
+    String leaseToken = pwaOutboxStorage.add(NOTIFICATION_ID);
+    assertNotNull(leaseToken);
+    verify(pushOutboxDAO).save(argThat(entity -> entity.getNotificationId() == NOTIFICATION_ID
+                                                 && leaseToken.equals(entity.getLeaseToken())
+                                                 && entity.getLeaseExpiryDate().getTime() > System.currentTimeMillis()));
+  }
+
+  @Test
+  void release() {
+    assertFalse(pwaOutboxStorage.release(NOTIFICATION_ID, LEASE_TOKEN));
+
+    when(pushOutboxDAO.release(NOTIFICATION_ID, LEASE_TOKEN)).thenReturn(1);
+    assertTrue(pwaOutboxStorage.release(NOTIFICATION_ID, LEASE_TOKEN));
+  }
+
+  @Test
+  void defer() {
+    assertFalse(pwaOutboxStorage.defer(NOTIFICATION_ID, LEASE_TOKEN, 10000));
+    verify(pushOutboxDAO).defer(eq(NOTIFICATION_ID),
+                                eq(LEASE_TOKEN),
+                                argThat(date -> date.getTime() > System.currentTimeMillis() + 5000));
+
+    when(pushOutboxDAO.defer(eq(NOTIFICATION_ID), eq(LEASE_TOKEN), any())).thenReturn(1);
+    assertTrue(pwaOutboxStorage.defer(NOTIFICATION_ID, LEASE_TOKEN, 10000));
+  }
+
+  @Test
+  void renew() {
+    assertEquals(0, pwaOutboxStorage.renew(Collections.emptyList()));
+    verify(pushOutboxDAO, never()).renew(any(), any());
+
+    when(pushOutboxDAO.renew(any(), any())).thenReturn(2);
+    assertEquals(2, pwaOutboxStorage.renew(Arrays.asList(LEASE_TOKEN, "otherToken")));
+    verify(pushOutboxDAO).renew(eq(Arrays.asList(LEASE_TOKEN, "otherToken")),
+                                argThat(date -> date.getTime() > System.currentTimeMillis()));
+  }
+
+  @Test
+  void remove() {
+    assertFalse(pwaOutboxStorage.remove(NOTIFICATION_ID, LEASE_TOKEN));
+
+    when(pushOutboxDAO.remove(NOTIFICATION_ID, LEASE_TOKEN)).thenReturn(1);
+    assertTrue(pwaOutboxStorage.remove(NOTIFICATION_ID, LEASE_TOKEN));
+  }
+
+  @Test
+  void claim() {
+    assertTrue(pwaOutboxStorage.claim(10).isEmpty());
+    verify(pushOutboxDAO, never()).claim(any(), any(), any(), any());
+
+    List<Long> ids = Arrays.asList(1l, 2l);
+    when(pushOutboxDAO.findClaimableIds(any(), any())).thenReturn(ids);
+    assertTrue(pwaOutboxStorage.claim(10).isEmpty());
+
+    PushOutboxEntity entity = new PushOutboxEntity();
+    entity.setNotificationId(NOTIFICATION_ID);
+    entity.setHolds(2);
+    when(pushOutboxDAO.claim(eq(ids), anyString(), any(), any())).thenReturn(1);
+    when(pushOutboxDAO.findByLeaseToken(anyString())).thenReturn(Collections.singletonList(entity));
+    List<PwaOutboxEntry> entries = pwaOutboxStorage.claim(10);
+    assertEquals(1, entries.size());
+    assertEquals(NOTIFICATION_ID, entries.get(0).getNotificationId());
+    assertEquals(2, entries.get(0).getHolds());
+    verify(pushOutboxDAO).findByLeaseToken(entries.get(0).getLeaseToken());
+  }
+
+  @Test
+  void hold() {
+    assertFalse(pwaOutboxStorage.hold(NOTIFICATION_ID, LEASE_TOKEN, 1, 10000));
+
+    when(pushOutboxDAO.hold(eq(NOTIFICATION_ID), eq(LEASE_TOKEN), eq(1), any())).thenReturn(1);
+    assertTrue(pwaOutboxStorage.hold(NOTIFICATION_ID, LEASE_TOKEN, 1, 10000));
+    verify(pushOutboxDAO, times(2)).hold(eq(NOTIFICATION_ID),
+                                         eq(LEASE_TOKEN),
+                                         eq(1),
+                                         argThat(date -> date.getTime() > System.currentTimeMillis() + 5000));
+  }
+
+  @Test
+  void reclaim() {
+    assertNull(pwaOutboxStorage.reclaim(NOTIFICATION_ID));
+
+    when(pushOutboxDAO.reclaim(eq(NOTIFICATION_ID), anyString(), any())).thenReturn(1);
+    String leaseToken = pwaOutboxStorage.reclaim(NOTIFICATION_ID);
+    assertNotNull(leaseToken);
+    verify(pushOutboxDAO).reclaim(eq(NOTIFICATION_ID), eq(leaseToken), any());
+  }
+
+}
@@ -0,0 +1,211 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.storage;
+
+import static io.meeds.pwa.storage.PwaSubscriptionStorage.PWA_SUBSCRIPTIONS_CACHE_NAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import org.exoplatform.services.cache.CacheService;
+import org.exoplatform.services.cache.ExoCache;
+
+import io.meeds.pwa.dao.PushSubscriptionDAO;
+import io.meeds.pwa.entity.PushSubscriptionEntity;
+import io.meeds.pwa.model.PwaSubscriptionDeliveryUpdate;
+import io.meeds.pwa.model.PwaSubscriptionState;
+import io.meeds.pwa.model.UserPushSubscription;
+
+@SpringBootTest(classes = {
+                            PwaSubscriptionStorage.class,
+})
+public class PwaSubscriptionStorageTest {
+
+  private static final String                          USERNAME        = "test";
+
+  private static final String                          SUBSCRIPTION_ID = "1";
+
+  private static final String                          ENDPOINT        = "https://push.test:8443/endpoint/1";
+
+  @MockBean
+  private PushSubscriptionDAO                          pushSubscriptionDAO;
+
+  @MockBean
+  private CacheService                                 cacheService;
+
+  @Autowired
+  private PwaSubscriptionStorage                       pwaSubscriptionStorage;
+
+  private Map<String, ArrayList<UserPushSubscription>> cachedValues;
+
+  @BeforeEach
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  void setup() {
+    cachedValues = new HashMap<>();
+    ExoCache<String, ArrayList<UserPushSubscription>> cache = mock(ExoCache.class);
+    when(cache.get(anyString())).thenAnswer(invocation -> cachedValues.get(invocation.getArgument(0)));
+    doAnswer(invocation -> cachedValues.put(invocation.getArgument(0),
+                                            invocation.getArgument(1))).when(cache).putLocal(anyString(), any());
+    when(cache.remove(anyString())).thenAnswer(invocation -> cachedValues.remove(invocation.getArgument(0)));
+    when(cacheService.getCacheInstance(PWA_SUBSCRIPTIONS_CACHE_NAME)).thenReturn((ExoCache) cache);
+    pwaSubscriptionStorage.init();
+  }
+
+  @Test
+  void getWhenNoSubscription() {
+    assertTrue(pwaSubscriptionStorage.get(USERNAME).isEmpty());
+    assertTrue(pwaSubscriptionStorage.get(USERNAME).isEmpty());
+    verify(pushSubscriptionDAO, times(1)).findByUsername(USERNAME);
+  }
+
+  @Test
+  void getByUsernames() {
+    PushSubscriptionEntity entity = new PushSubscriptionEntity();
+    entity.setSubscriptionId(SUBSCRIPTION_ID);
+    entity.setUsername(USERNAME);
+    entity.setEndpoint(ENDPOINT);
+    List<String> usernames = Arrays.asList(USERNAME, "test2");
+    when(pushSubscriptionDAO.findByUsernameIn(usernames)).thenReturn(Collections.singletonList(entity));
+
+    Map<String, List<UserPushSubscription>> subscriptions = pwaSubscriptionStorage.get(usernames);
+    assertEquals(2, subscriptions.size());
+    assertEquals(ENDPOINT, subscriptions.get(USERNAME).get(0).getEndpoint());
+    assertTrue(subscriptions.get("test2").isEmpty());
+
+    assertEquals(subscriptions, pwaSubscriptionStorage.get(usernames));
+    assertEquals(1, pwaSubscriptionStorage.get(USERNAME).size());
+    verify(pushSubscriptionDAO, times(1)).findByUsernameIn(any());
+    verify(pushSubscriptionDAO, never()).findByUsername(any());
+  }
+
+  @Test
+  void createAndDelete() {
+    assertTrue(pwaSubscriptionStorage.get(USERNAME).isEmpty());
+
+    UserPushSubscription subscription = new UserPushSubscription();
+    subscription.setId(SUBSCRIPTION_ID);
+    subscription.setEndpoint(ENDPOINT);
+    subscription.setKey("key");
+    subscription.setAuth("auth");
+    pwaSubscriptionStorage.create(subscription, USERNAME);
+    verify(pushSubscriptionDAO).save(argThat(entity -> USERNAME.equals(entity.getUsername())
+                                                       && SUBSCRIPTION_ID.equals(entity.getSubscriptionId())
+                                                       && "https://push.test:8443".equals(entity.getOrigin())
+                                                       && subscription.endpointHash().equals(entity.getEndpointHash())
+                                                       && entity.getLastSeenDate() != null));
+
+    PushSubscriptionEntity entity = new PushSubscriptionEntity();
+    entity.setSubscriptionId(SUBSCRIPTION_ID);
+    entity.setUsername(USERNAME);
+    entity.setEndpoint(ENDPOINT);
+    when(pushSubscriptionDAO.findByUsername(USERNAME)).thenReturn(Collections.singletonList(entity));
+    when(pushSubscriptionDAO.findByUsernameAndSubscriptionId(USERNAME, SUBSCRIPTION_ID)).thenReturn(entity);
+
+    List<UserPushSubscription> subscriptions = pwaSubscriptionStorage.get(USERNAME);
+    assertEquals(1, subscriptions.size());
+    assertEquals(ENDPOINT, subscriptions.get(0).getEndpoint());
+    pwaSubscriptionStorage.get(USERNAME);
+    verify(pushSubscriptionDAO, times(2)).findByUsername(USERNAME);
+
+    assertEquals(ENDPOINT, pwaSubscriptionStorage.delete(SUBSCRIPTION_ID, USERNAME).getEndpoint());
+    verify(pushSubscriptionDAO).delete(entity);
+    pwaSubscriptionStorage.get(USERNAME);
+    verify(pushSubscriptionDAO, times(3)).findByUsername(USERNAME);
+  }
+
+  @Test
+  void getStates() {
+    PushSubscriptionEntity entity = new PushSubscriptionEntity();
+    entity.setId(3l);
+    entity.setSubscriptionId(SUBSCRIPTION_ID);
+    entity.setUsername(USERNAME);
+    entity.setEndpointHash("hash");
+    entity.setCreatedDate(new Date(1000));
+    entity.setLastSuccessDate(new Date(2000));
+    when(pushSubscriptionDAO.findByIdGreaterThanOrderByIdAsc(2l, PageRequest.of(0, 10))).thenReturn(Collections.singletonList(entity));
+
+    List<PwaSubscriptionState> states = pwaSubscriptionStorage.getStates(2l, 10);
+    assertEquals(1, states.size());
+    PwaSubscriptionState state = states.get(0);
+    assertEquals(3l, state.getId());
+    assertEquals(SUBSCRIPTION_ID, state.getSubscriptionId());
+    assertEquals(USERNAME, state.getUsername());
+    assertEquals("hash", state.getEndpointHash());
+    assertEquals(new Date(2000), state.getLastSuccessDate());
+    assertEquals(0, state.getConsecutiveFailures());
+  }
+
+  @Test
+  void markSeen() {
+    pwaSubscriptionStorage.markSeen(ENDPOINT, USERNAME);
+    verify(pushSubscriptionDAO).updateLastSeenDate(eq(USERNAME), eq(DigestUtils.sha256Hex(ENDPOINT)), any());
+  }
+
+  @Test
+  void updateDeliveries() {
+    Date date = new Date();
+    PushSubscriptionEntity deliveredEntity = new PushSubscriptionEntity();
+    deliveredEntity.setEndpointHash("delivered");
+    deliveredEntity.setConsecutiveFailures(3);
+    PushSubscriptionEntity failingEntity = new PushSubscriptionEntity();
+    failingEntity.setEndpointHash("failing");
+    failingEntity.setConsecutiveFailures(3);
+    failingEntity.setAverageLatency(40);
+    when(pushSubscriptionDAO.findByEndpointHashIn(any())).thenReturn(Arrays.asList(deliveredEntity, failingEntity));
+
+    pwaSubscriptionStorage.updateDeliveries(Map.of("delivered",
+                                                   new PwaSubscriptionDeliveryUpdate(date, date, 1, 50),
+                                                   "failing",
+                                                   new PwaSubscriptionDeliveryUpdate(null, date, 2, 0)));
+    verify(pushSubscriptionDAO).findByEndpointHashIn(argThat(hashes -> hashes.size() == 2));
+    verify(pushSubscriptionDAO).saveAll(Arrays.asList(deliveredEntity, failingEntity));
+    assertEquals(date, deliveredEntity.getLastSuccessDate());
+    assertEquals(1, deliveredEntity.getConsecutiveFailures());
+    assertEquals(50, deliveredEntity.getAverageLatency());
+    assertEquals(date, failingEntity.getLastFailureDate());
+    assertEquals(5, failingEntity.getConsecutiveFailures());
+    assertEquals(40, failingEntity.getAverageLatency());
+  }
+
+}
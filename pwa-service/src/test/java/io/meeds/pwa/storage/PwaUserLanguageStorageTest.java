@@ -0,0 +1,114 @@
+/**
+ * This file is part of the Meeds project (https://meeds.io/).
+ *
+ * Copyright (C) 2020 - 2024 Meeds Association contact@meeds.io
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package io.meeds.pwa.storage;
+
+import static io.meeds.pwa.storage.PwaUserLanguageStorage.PWA_USER_LANGUAGES_CACHE_NAME;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import org.exoplatform.portal.Constants;
+import org.exoplatform.services.cache.CacheService;
+import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.services.organization.OrganizationService;
+import org.exoplatform.services.organization.UserProfile;
+import org.exoplatform.services.organization.UserProfileHandler;
+
+@SpringBootTest(classes = {
+                            PwaUserLanguageStorage.class,
+})
+public class PwaUserLanguageStorageTest {
+
+  private static final String    USERNAME = "test";
+
+  @MockBean
+  private OrganizationService    organizationService;
+
+  @MockBean
+  private CacheService           cacheService;
+
+  @Autowired
+  private PwaUserLanguageStorage pwaUserLanguageStorage;
+
+  private UserProfileHandler     userProfileHandler;
+
+  private Map<String, String>    cachedValues;
+
+  @BeforeEach
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  void setup() {
+    cachedValues = new HashMap<>();
+    ExoCache<String, String> cache = mock(ExoCache.class);
+    when(cache.get(anyString())).thenAnswer(invocation -> cachedValues.get(invocation.getArgument(0)));
+    doAnswer(invocation -> cachedValues.put(invocation.getArgument(0),
+                                            invocation.getArgument(1))).when(cache).put(anyString(), any());
+    doAnswer(invocation -> cachedValues.put(invocation.getArgument(0),
+                                            invocation.getArgument(1))).when(cache).putLocal(anyString(), any());
+    when(cacheService.getCacheInstance(PWA_USER_LANGUAGES_CACHE_NAME)).thenReturn((ExoCache) cache);
+    userProfileHandler = mock(UserProfileHandler.class);
+    when(organizationService.getUserProfileHandler()).thenReturn(userProfileHandler);
+    pwaUserLanguageStorage.init();
+  }
+
+  @Test
+  void get() throws Exception {
+    ExoCache<String, String> cache = cacheService.getCacheInstance(PWA_USER_LANGUAGES_CACHE_NAME);
+    UserProfile userProfile = mock(UserProfile.class);
+    when(userProfile.getAttribute(Constants.USER_LANGUAGE)).thenReturn("fr");
+    when(userProfileHandler.findUserProfileByName(USERNAME)).thenReturn(userProfile);
+
+    assertEquals("fr", pwaUserLanguageStorage.get(USERNAME));
+    assertEquals("fr", pwaUserLanguageStorage.get(USERNAME));
+    assertNull(pwaUserLanguageStorage.get("test2"));
+    assertNull(pwaUserLanguageStorage.get("test2"));
+    verify(userProfileHandler, times(1)).findUserProfileByName(USERNAME);
+    verify(userProfileHandler, times(1)).findUserProfileByName("test2");
+    // Loaded languages don't invalidate the other nodes cache
+    verify(cache).putLocal(USERNAME, "fr");
+    verify(cache, never()).put(anyString(), any());
+
+    Map<String, String> languages = pwaUserLanguageStorage.get(Arrays.asList(USERNAME, "test2", USERNAME));
+    assertEquals(2, languages.size());
+    assertEquals("fr", languages.get(USERNAME));
+    assertNull(languages.get("test2"));
+
+    pwaUserLanguageStorage.put(USERNAME, "en");
+    verify(cache).put(USERNAME, "en");
+    assertEquals("en", pwaUserLanguageStorage.get(USERNAME));
+    verify(userProfileHandler, times(1)).findUserProfileByName(USERNAME);
+  }
+
+}
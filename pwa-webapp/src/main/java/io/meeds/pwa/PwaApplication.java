@@ -25,6 +25,7 @@ import org.springframework.boot.autoconfigure.liquibase.LiquibaseAutoConfigurati
 import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.PropertySource;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 
 import io.meeds.spring.AvailableIntegration;
 import io.meeds.spring.kernel.PortalApplicationContextInitializer;
@@ -32,6 +33,7 @@ import io.meeds.spring.kernel.PortalApplicationContextInitializer;
 @SpringBootApplication(scanBasePackages = {
     "io.meeds.pwa",
     AvailableIntegration.KERNEL_MODULE,
+    AvailableIntegration.JPA_MODULE,
     AvailableIntegration.WEB_MODULE,
   }, exclude = {
     LiquibaseAutoConfiguration.class,
@@ -40,6 +42,7 @@ import io.meeds.spring.kernel.PortalApplicationContextInitializer;
     HibernateJpaAutoConfiguration.class
 })
 @EnableCaching
+@EnableJpaRepositories(basePackages = "io.meeds.pwa")
 @PropertySource("classpath:application.properties")
 @PropertySource("classpath:application-common.properties")
 @PropertySource("classpath:pwa.properties")
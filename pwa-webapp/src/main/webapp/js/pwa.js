@@ -68,7 +68,20 @@
     initSubscription();
   });
 
+  // Register again the subscription daily, so that the server knows that it's
+  // still used and creates it again if it was deleted meanwhile
+  const SUBSCRIPTION_REFRESH_DELAY = 86400000;
+
+  let presenceInitialized = false;
+
   async function init() {
+    if (eXo.env.portal.userName
+      && eXo.env.portal.pwaEnabled
+      && eXo.env.portal.pwaPresenceInterval
+      && !presenceInitialized) {
+      presenceInitialized = true;
+      initPresence();
+    }
     if (isPwaDisplay()
       && eXo.env.portal.userName
       && eXo.env.portal.pwaEnabled
@@ -77,6 +90,25 @@
     }
   }
 
+  // Notify the server that the user is active while the page is visible, in
+  // order to hold the Push Notifications already displayed in the page
+  function initPresence() {
+    let lastPresenceTime = 0;
+    const sendPresence = () => {
+      if (document.visibilityState === 'visible'
+        && Date.now() - lastPresenceTime >= eXo.env.portal.pwaPresenceInterval) {
+        lastPresenceTime = Date.now();
+        fetch('/pwa/rest/presence', {
+          method: 'PUT',
+          credentials: 'include',
+        }).catch(() => lastPresenceTime = 0);
+      }
+    };
+    document.addEventListener('visibilitychange', sendPresence);
+    window.setInterval(sendPresence, eXo.env.portal.pwaPresenceInterval);
+    sendPresence();
+  }
+
   async function initSubscription() {
     try {
       let registration = await navigator.serviceWorker.getRegistration();
@@ -153,7 +185,8 @@
       });
     }
     if (isNew
-      || subscription.endpoint !== window.localStorage.getItem(`pwa.notification.endpoint-${eXo.env.portal.userName}`)) {
+      || subscription.endpoint !== window.localStorage.getItem(`pwa.notification.endpoint-${eXo.env.portal.userName}`)
+      || Date.now() - Number(window.localStorage.getItem(`pwa.notification.registered-${eXo.env.portal.userName}`) || 0) > SUBSCRIPTION_REFRESH_DELAY) {
       const key = subscription?.getKey?.('p256dh') || '';
       const auth = subscription?.getKey?.('auth') || '';
       await fetch('/pwa/rest/subscriptions', {
@@ -169,7 +202,14 @@
           auth: auth && btoa(String.fromCharCode.apply(null, new Uint8Array(auth))) || ''
         }),
       })
-        .then(() => window.localStorage.setItem(`pwa.notification.endpoint-${eXo.env.portal.userName}`, subscription.endpoint));
+        .then(resp => {
+          if (resp?.ok) {
+            window.localStorage.setItem(`pwa.notification.endpoint-${eXo.env.portal.userName}`, subscription.endpoint);
+            window.localStorage.setItem(`pwa.notification.registered-${eXo.env.portal.userName}`, String(Date.now()));
+          } else {
+            window.localStorage.removeItem(`pwa.notification.endpoint-${eXo.env.portal.userName}`);
+          }
+        });
     }
   }
 
@@ -192,6 +232,7 @@
           .finally(() => {
             window.localStorage.removeItem(`pwa.notification.subscription.id-${eXo.env.portal.userName}`);
             window.localStorage.removeItem(`pwa.notification.endpoint-${eXo.env.portal.userName}`);
+            window.localStorage.removeItem(`pwa.notification.registered-${eXo.env.portal.userName}`);
           });
       }
     }